@@ -1,25 +1,27 @@
 package dev.trickster12.runnerz;
 
 
-import dev.trickster12.runnerz.user.User;
 import dev.trickster12.runnerz.user.UserHttpClient;
-import dev.trickster12.runnerz.user.UserRestClient;
+import dev.trickster12.runnerz.user.UserHttpTransport;
 
-import org.springframework.boot.CommandLineRunner;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.support.RestClientAdapter;
 import org.springframework.web.service.invoker.HttpServiceProxyFactory;
 
-import java.util.List;
+import java.time.Duration;
+
 //is working correctly
 
 @SpringBootApplication
+@EnableScheduling
 public class RunnerzApplication {
 
-	// can be used for logging purposes (in command line runner)
+	// can be used for logging purposes
 	//private static final Logger log = LoggerFactory.getLogger(RunnerzApplication.class);
 
 
@@ -30,39 +32,19 @@ public class RunnerzApplication {
 	}
 
 
+	// no remote call at startup : UserWarmUp fetches the users in the background once the application is ready
+	// the only UserHttpClient bean, read through UserDirectory
+	// pooled keep-alive connections of a JDK HttpClient, with explicit timeouts (UserHttpTransport)
 	@Bean
-	UserHttpClient userHttpClient() {
-		RestClient restClient = RestClient.create("https://jsonplaceholder.typicode.com/");
+	UserHttpClient userHttpClient(@Value("${runnerz.users.base-url:https://jsonplaceholder.typicode.com/}") String baseUrl,
+								  @Value("${runnerz.users.http.connect-timeout:2s}") Duration connectTimeout,
+								  @Value("${runnerz.users.http.read-timeout:3s}") Duration readTimeout) {
+		RestClient restClient = RestClient.builder()
+				.baseUrl(baseUrl)
+				.requestFactory(UserHttpTransport.requestFactory(connectTimeout, readTimeout))
+				.build();
 		HttpServiceProxyFactory factory = HttpServiceProxyFactory.builderFor(RestClientAdapter.create(restClient)).build();
 		return factory.createClient(UserHttpClient.class);
 	}
 
-	// version with HttpClient Interface
-	@Bean
-	CommandLineRunner runner(UserHttpClient client) {
-		return args -> {
-			List<User> users = client.findAll();
-			System.out.println(users);
-
-			User user = client.findById(2);
-			System.out.println(user);
-		};
-	}
-
-
-
-	// version with RestClient
-	@Bean
-	CommandLineRunner runner2(UserRestClient client) {
-		return args -> {
-			List<User> users = client.findAll();
-			System.out.println(users);
-
-			User user = client.findById(2);
-			System.out.println(user);
-		};
-	}
-
 }
-
-
@@ -14,7 +14,7 @@ public class MainDatabaseConfig {
     @Primary // Marks this data source as the default one
     public DataSource mainDataSource() {
         return DataSourceBuilder.create()
-                .url("jdbc:postgresql://localhost:5432/runnerz") // Update with your main database
+                .url("jdbc:postgresql://localhost:5432/runnerz?reWriteBatchedInserts=true") // Update with your main database, batched inserts are sent as multi-row INSERTs
                 .username("trickster12")
                 .password("admin")
                 .driverClassName("org.postgresql.Driver")
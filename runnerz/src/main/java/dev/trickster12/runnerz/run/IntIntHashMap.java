@@ -0,0 +1,114 @@
+package dev.trickster12.runnerz.run;
+
+import java.util.Arrays;
+
+// int -> int map with open addressing (linear probing), no boxing : RunColumns keeps one entry per run and
+// RunScan one per group. Any key but Integer.MIN_VALUE, which marks a free slot. A removed key shifts the following
+// entries of its probe run back, so lookups never walk over tombstones
+final class IntIntHashMap {
+
+    static final int MISSING = -1;
+    private static final int FREE = Integer.MIN_VALUE;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    IntIntHashMap(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = newKeys(capacity);
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    int get(int key) {
+        for (int i = index(key); ; i = (i + 1) & mask) {
+            if (keys[i] == key) {
+                return values[i];
+            }
+            if (keys[i] == FREE) {
+                return MISSING;
+            }
+        }
+    }
+
+    void put(int key, int value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Key not supported: " + key);
+        }
+        int i = index(key);
+        while (keys[i] != FREE && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (keys[i] == FREE) {
+            keys[i] = key;
+            size++;
+        }
+        values[i] = value;
+        if (size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+    }
+
+    void remove(int key) {
+        int i = index(key);
+        while (keys[i] != key) {
+            if (keys[i] == FREE) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        // backward shift : an entry after the hole moves into it unless its home slot lies between the two
+        int hole = i;
+        for (int j = (hole + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+            int home = index(keys[j]);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = FREE;
+        size--;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(keys, FREE);
+        size = 0;
+    }
+
+    // bytes held by the two tables
+    long footprint() {
+        return 8L * keys.length;
+    }
+
+    private int index(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = newKeys(capacity);
+        values = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != FREE) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static int[] newKeys(int capacity) {
+        int[] keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        return keys;
+    }
+}
@@ -0,0 +1,13 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidCsvException extends RuntimeException{
+
+
+    public InvalidCsvException(String message){
+        super(message);
+    }
+}
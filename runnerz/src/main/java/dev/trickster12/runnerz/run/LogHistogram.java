@@ -0,0 +1,81 @@
+package dev.trickster12.runnerz.run;
+
+import java.util.Arrays;
+
+// Counts of non-negative longs in log-linear buckets, in the spirit of HdrHistogram : values below 128 have a bucket
+// each, above that every power of two is cut in 64 buckets. A quantile is answered with the middle of its bucket,
+// at most 1/128 (under 1%) away from the exact value. Values above MAX_VALUE are counted as MAX_VALUE
+// Unlike a t-digest, counts can be taken away exactly (a run deleted or updated) and two histograms merge exactly
+// The bucket array only grows up to the highest bucket used : a few hundred longs for miles or durations in seconds
+final class LogHistogram {
+
+    static final long MAX_VALUE = (1L << 40) - 1;
+
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int EXACT = 2 * SUB_BUCKETS;
+
+    private long[] counts = new long[0];
+    private long total;
+
+    void add(long value, long count) {
+        int index = index(Math.min(Math.max(value, 0), MAX_VALUE));
+        if (index >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(index + 1, counts.length + counts.length / 2));
+        }
+        counts[index] += count;
+        total += count;
+    }
+
+    void merge(LogHistogram other) {
+        if (other.counts.length > counts.length) {
+            counts = Arrays.copyOf(counts, other.counts.length);
+        }
+        for (int i = 0; i < other.counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+    }
+
+    long count() {
+        return total;
+    }
+
+    // the value at quantile q in [0, 1] : the smallest bucket holding the ceil(q * count)-th value, NaN when empty
+
+    double quantile(double q) {
+        if (total <= 0) {
+            return Double.NaN;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return value(i);
+            }
+        }
+        return value(counts.length - 1);
+    }
+
+    // run_histogram_bucket (V13 migration) computes the same bucket in SQL
+
+    static int index(long value) {
+        if (value < EXACT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return EXACT + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // middle of the bucket
+
+    static double value(int index) {
+        if (index < EXACT) {
+            return index;
+        }
+        int shift = (index - EXACT) / SUB_BUCKETS + 1;
+        long lowest = (long) ((index - EXACT) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + ((1L << shift) - 1) / 2.0;
+    }
+}
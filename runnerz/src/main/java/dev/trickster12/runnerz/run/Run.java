@@ -2,6 +2,7 @@ package dev.trickster12.runnerz.run;
 
 import jakarta.persistence.*;
 import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
 
 import jakarta.validation.constraints.Positive;
 
@@ -13,21 +14,33 @@ import java.util.Objects;
 
 public class Run {
 
+    // size of the id blocks reserved by one nextval('run_id_seq') call
+    static final int ID_ALLOCATION_SIZE = 50;
+
+    // IDENTITY ids force one INSERT round trip per row, a pooled sequence lets Hibernate batch inserts
+    // allocationSize must match the INCREMENT BY of run_id_seq (V1 migration)
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "run_id_seq")
+    @SequenceGenerator(name = "run_id_seq", sequenceName = "run_id_seq", allocationSize = ID_ALLOCATION_SIZE)
     private Integer id;
 
     @NotEmpty
     private String title;
 
+    // every column below is NOT NULL, started_on is also the partition key : a body without one of them is a 400,
+    // not a failed INSERT or UPDATE
+    @NotNull
     private LocalDateTime startedOn;
 
+    @NotNull
     @Column(name = "completed_on", nullable = false)
     private LocalDateTime completedOn;
 
+    @NotNull
     @Positive
     private Integer miles;
 
+    @NotNull
     @Enumerated(EnumType.STRING)
     private Location location;
     @Version
@@ -0,0 +1,295 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Cold storage of the runs moved out of PostgreSQL by RunArchiver : a directory of append-only RunSegment files
+// named runs-<sequence>.seg, never rewritten once renamed in place. Every segment is memory-mapped when it is opened
+// Archived runs are read-only : findById and the range listing fall back to them, update and delete do not
+// If a run is found in several segments (an archival that crashed after its segment was written and was run again)
+// the segment with the highest sequence wins
+// Once archived a run only exists here : the directory (runnerz.runs.archive.directory) must be an absolute path on
+// storage that outlives the containers and that every instance reads, a shared volume. One instance archives at a
+// time (RunArchiver), the others open the segments it wrote on their next read, at most once per REFRESH_INTERVAL
+// The number of archived runs is kept in PostgreSQL (run_archive_count, see RunCounter), not here. The stats
+// endpoints, the percentiles, the in-memory columns and the title suggestions only cover PostgreSQL
+@Component
+public class RunArchive {
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("runs-(\\d{16})\\.seg");
+    private static final Comparator<Run> PAGE_ORDER = Comparator.comparing(Run::getStartedOn).thenComparing(Run::getId);
+    private static final long REFRESH_INTERVAL = Duration.ofSeconds(1).toNanos();
+
+    private final boolean enabled;
+    // null when no directory is configured : nothing is archived and there is nothing to read
+    private final Path directory;
+    // oldest first, a new segment is appended at the end
+    private final List<RunSegment> segments = new CopyOnWriteArrayList<>();
+    // guards the segment list against concurrent appends and refreshes, readers never take it
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile long refreshedAt;
+
+    @Autowired
+    public RunArchive(@Value("${runnerz.runs.archive.enabled:false}") boolean enabled,
+                      @Value("${runnerz.runs.archive.directory:}") String directory) {
+        this(enabled, directory.isBlank() ? null : Path.of(directory));
+    }
+
+    // an enabled archive in directory, for tests
+
+    RunArchive(Path directory) {
+        this(true, directory);
+    }
+
+    // A relative directory would be resolved against the working directory of each container and be lost with it
+    // With archiving off an existing directory is still read, the runs archived before stay visible
+
+    private RunArchive(boolean enabled, Path directory) {
+        if (directory != null && !directory.isAbsolute()) {
+            throw new IllegalStateException("runnerz.runs.archive.directory must be an absolute path: " + directory);
+        }
+        if (enabled && directory == null) {
+            throw new IllegalStateException("runnerz.runs.archive.enabled needs runnerz.runs.archive.directory");
+        }
+        this.enabled = enabled;
+        this.directory = directory;
+        refresh();
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    // Opens the segment files not seen yet : all of them at startup, then the ones written by another instance
+
+    void refresh() {
+        lock.lock();
+        try {
+            openNewSegments();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // a read never waits for a segment being written, it looks again after the next interval
+
+    private void refreshIfStale() {
+        if (directory != null && System.nanoTime() - refreshedAt > REFRESH_INTERVAL && lock.tryLock()) {
+            try {
+                openNewSegments();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void openNewSegments() {
+        refreshedAt = System.nanoTime();
+        if (directory == null || !Files.isDirectory(directory)) {
+            return;
+        }
+        long last = lastSequence();
+        List<RunSegment> found = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches() && Long.parseLong(matcher.group(1)) > last) {
+                    found.add(RunSegment.open(file, Long.parseLong(matcher.group(1))));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the run archive " + directory, e);
+        }
+        found.sort(Comparator.comparingLong(RunSegment::sequence));
+        segments.addAll(found);
+    }
+
+    private long lastSequence() {
+        return segments.isEmpty() ? 0 : segments.get(segments.size() - 1).sequence();
+    }
+
+    // Writes runs to a new segment and makes it visible to readers
+    // The file is complete and on disk before it gets its final name, a crash never leaves half a segment behind
+    // Only called under the advisory lock of RunArchiver : no other instance writes meanwhile, so the segments it wrote
+    // before are opened first and the sequence is never taken twice, and the leftovers of an interrupted write can go
+
+    RunSegment append(List<Run> runs) {
+        if (!enabled) {
+            throw new IllegalStateException("Archiving is turned off (runnerz.runs.archive.enabled)");
+        }
+        lock.lock();
+        try {
+            openNewSegments();
+            long sequence = lastSequence() + 1;
+            Path target = directory.resolve(String.format("runs-%016d.seg", sequence));
+            Path temporary = directory.resolve(target.getFileName() + ".tmp");
+            try {
+                Files.createDirectories(directory);
+                deleteTemporaries();
+                RunSegment.write(temporary, runs);
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+                syncDirectory();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot write run segment " + target, e);
+            }
+            RunSegment segment = RunSegment.open(target, sequence);
+            segments.add(segment);
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void deleteTemporaries() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.seg.tmp")) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    // Counts the archived runs : an id found in several segments counts once, and not at all while PostgreSQL still
+    // has it (an archival that crashed between its segment and its commit). stillInPostgres is given the distinct
+    // ids of one block at a time and answers how many of them are in run
+    // Only needed once, to seed run_archive_count with the segments written before it existed (RunArchiver)
+
+    long reconcile(ToLongFunction<int[]> stillInPostgres) {
+        // ids come from a sequence, one bit per id up to the largest one archived
+        BitSet seen = new BitSet();
+        long[] counted = {0};
+        for (RunSegment segment : segments) {  // a snapshot, segments is copy-on-write
+            segment.forEachIdBlock(ids -> {
+                int[] distinct = new int[ids.length];
+                int size = 0;
+                for (int id : ids) {
+                    if (!seen.get(id)) {
+                        seen.set(id);
+                        distinct[size++] = id;
+                    }
+                }
+                if (size > 0) {
+                    int[] block = Arrays.copyOf(distinct, size);
+                    counted[0] += size - stillInPostgres.applyAsLong(block);
+                }
+            });
+        }
+        return counted[0];
+    }
+
+    // Drops a segment whose runs did not leave PostgreSQL after all (the archiving transaction rolled back)
+
+    void discard(RunSegment segment) {
+        lock.lock();
+        try {
+            segments.remove(segment);
+            Files.deleteIfExists(segment.path());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot delete run segment " + segment.path(), e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Optional<Run> findById(Integer id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        refreshIfStale();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            Optional<Run> run = segments.get(i).findById(id);
+            if (run.isPresent()) {
+                return run;
+            }
+        }
+        return Optional.empty();
+    }
+
+    // The first limit archived runs started in [from, to) coming after the cursor (null for the first page), in the
+    // (startedOn, id) order of the listings. Only the best limit runs are kept while the segments are read
+
+    public List<Run> findPageByStartedOnRange(LocalDateTime from, LocalDateTime to, RunCursor after, int limit) {
+        refreshIfStale();
+        if (segments.isEmpty()) {
+            return List.of();
+        }
+        LocalDateTime lower = after != null && after.startedOn().isAfter(from) ? after.startedOn() : from;
+        PriorityQueue<Run> best = new PriorityQueue<>(PAGE_ORDER.reversed());
+        Set<Integer> seen = new HashSet<>();
+        for (int i = segments.size() - 1; i >= 0; i--) {
+            segments.get(i).forEachInRange(lower, to, run -> {
+                if (after != null && (run.getStartedOn().isBefore(after.startedOn())
+                        || (run.getStartedOn().equals(after.startedOn()) && run.getId() <= after.id()))) {
+                    return;
+                }
+                if (!seen.add(run.getId())) {
+                    return;  // already taken from a newer segment
+                }
+                if (best.size() < limit) {
+                    best.add(run);
+                } else if (PAGE_ORDER.compare(run, best.peek()) < 0) {
+                    best.poll();
+                    best.add(run);
+                }
+            });
+        }
+        List<Run> page = new ArrayList<>(best);
+        page.sort(PAGE_ORDER);
+        return page;
+    }
+
+    // One page of the range listing over both storages : the page read from PostgreSQL merged with the archived runs
+    // of the same range, a run still present in PostgreSQL hides its archived copy
+
+    public List<Run> completeRange(List<Run> hot, LocalDateTime from, LocalDateTime to, RunCursor after, int limit) {
+        List<Run> archived = findPageByStartedOnRange(from, to, after, limit);
+        if (archived.isEmpty()) {
+            return hot;
+        }
+        Set<Integer> hotIds = new HashSet<>();
+        hot.forEach(run -> hotIds.add(run.getId()));
+        List<Run> merged = new ArrayList<>(hot);
+        archived.stream().filter(run -> !hotIds.contains(run.getId())).forEach(merged::add);
+        merged.sort(PAGE_ORDER);
+        return merged.size() > limit ? merged.subList(0, limit) : merged;
+    }
+
+    public int segments() {
+        return segments.size();
+    }
+
+    // makes the rename durable, not every platform lets a directory be opened for that
+
+    private void syncDirectory() {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException | UnsupportedOperationException e) {
+            // best effort
+        }
+    }
+}
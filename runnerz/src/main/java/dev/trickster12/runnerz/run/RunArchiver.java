@@ -0,0 +1,157 @@
+package dev.trickster12.runnerz.run;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+// Nightly job moving the runs older than runnerz.runs.archive.older-than out of PostgreSQL into RunArchive
+// Each batch is one transaction : the rows are deleted with DELETE ... RETURNING, written to a new segment that is
+// forced to disk, and only then is the DELETE committed. If the commit fails the segment is dropped again ; a crash
+// between the two leaves the runs in both places, the copy in PostgreSQL wins until the next archival moves it again
+// Months left empty afterwards are detached and dropped, so the table and its indexes only hold the recent runs
+// Off unless runnerz.runs.archive.enabled (see RunArchive for the directory). Every batch takes a transaction-level
+// advisory lock first : a batch of another instance holding it ends the run of this one, it has the work in hand
+// The number of archived runs is added to run_archive_count in the same transaction as the DELETE. Segments written
+// before that table existed are counted once against run at startup (RunArchive.reconcile), under the same lock
+// Each batch publishes RunChange.Archived : autocomplete, the in-memory columns and the percentiles only know the runs
+// in PostgreSQL, like after a restart
+@Component
+public class RunArchiver implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(RunArchiver.class);
+
+    // the oldest rows first, SKIP LOCKED leaves a run being updated for the next batch
+    private static final String ARCHIVE_SQL = """
+            DELETE FROM run WHERE (id, started_on) IN (
+                SELECT id, started_on FROM run WHERE started_on < :cutoff
+                ORDER BY started_on, id LIMIT :batchSize FOR UPDATE SKIP LOCKED)
+            RETURNING id, title, started_on, completed_on, miles, location, version""";
+
+    // key of the advisory lock taken by every archival transaction ("runarchv" in ASCII)
+    static final long ARCHIVE_LOCK = 0x72756e6172636876L;
+
+    private static final RowMapper<Run> RUN_MAPPER = new BeanPropertyRowMapper<>(Run.class);
+
+    private final JdbcClient jdbcClient;
+    private final TransactionTemplate transactionTemplate;
+    private final RunArchive runArchive;
+    private final RunPartitionMaintainer runPartitionMaintainer;
+    private final ApplicationEventPublisher events;
+    private final Duration olderThan;
+    private final int batchSize;
+
+    public RunArchiver(JdbcClient jdbcClient, PlatformTransactionManager transactionManager, RunArchive runArchive,
+                       RunPartitionMaintainer runPartitionMaintainer, ApplicationEventPublisher events,
+                       @Value("${runnerz.runs.archive.older-than:730d}") Duration olderThan,
+                       @Value("${runnerz.runs.archive.batch-size:100000}") int batchSize) {
+        this.jdbcClient = jdbcClient;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.runArchive = runArchive;
+        this.runPartitionMaintainer = runPartitionMaintainer;
+        this.events = events;
+        this.olderThan = olderThan;
+        this.batchSize = batchSize;
+    }
+
+    // only the first startup with segments and without run_archive_count reads them all
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (runArchive.segments() == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        Long archived = transactionTemplate.execute(status -> {
+            jdbcClient.sql("SELECT pg_advisory_xact_lock(:key)").param("key", ARCHIVE_LOCK).query().listOfRows();
+            if (jdbcClient.sql("SELECT count(*) FROM run_archive_count").query(Long.class).single() > 0) {
+                return null;
+            }
+            long counted = runArchive.reconcile(ids -> jdbcClient.sql("SELECT count(*) FROM run_id WHERE id = ANY(:ids)")
+                    .param("ids", ids)
+                    .query(Long.class)
+                    .single());
+            jdbcClient.sql("INSERT INTO run_archive_count (total) VALUES (:total)").param("total", counted).update();
+            return counted;
+        });
+        if (archived != null) {
+            log.info("Counted {} archived run(s) in {} segment(s) in {} ms", archived, runArchive.segments(),
+                    (System.nanoTime() - start) / 1_000_000);
+        }
+    }
+
+    @Scheduled(cron = "${runnerz.runs.archive.cron:0 30 3 * * *}")
+    public void archive() {
+        if (runArchive.enabled()) {
+            archive(LocalDateTime.now().minus(olderThan));
+        }
+    }
+
+    // archives every run started before cutoff, returns how many were moved
+
+    public long archive(LocalDateTime cutoff) {
+        long archived = 0;
+        int moved;
+        do {
+            moved = archiveBatch(cutoff);
+            if (moved < 0) {
+                log.info("Another instance is archiving runs, stopping after {} run(s)", archived);
+                return archived;
+            }
+            archived += moved;
+        } while (moved == batchSize);
+        List<String> dropped = runPartitionMaintainer.dropEmptyPartitionsBefore(cutoff);
+        if (archived > 0 || !dropped.isEmpty()) {
+            log.info("Archived {} run(s) started before {}, dropped partitions {}", archived, cutoff, dropped);
+        }
+        return archived;
+    }
+
+    // -1 when another instance holds the lock
+
+    private int archiveBatch(LocalDateTime cutoff) {
+        List<Run> runs = transactionTemplate.execute(status -> {
+            if (!jdbcClient.sql("SELECT pg_try_advisory_xact_lock(:key)").param("key", ARCHIVE_LOCK).query(Boolean.class).single()) {
+                return null;
+            }
+            List<Run> deleted = jdbcClient.sql(ARCHIVE_SQL)
+                    .param("cutoff", cutoff)
+                    .param("batchSize", batchSize)
+                    .query(RUN_MAPPER)
+                    .list();
+            if (!deleted.isEmpty()) {
+                RunSegment segment = runArchive.append(deleted);
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                    @Override
+                    public void afterCompletion(int completion) {
+                        if (completion != STATUS_COMMITTED) {
+                            runArchive.discard(segment);
+                        }
+                    }
+                });
+                jdbcClient.sql("""
+                                INSERT INTO run_archive_count (total) VALUES (:moved)
+                                ON CONFLICT (id) DO UPDATE SET total = run_archive_count.total + EXCLUDED.total""")
+                        .param("moved", deleted.size())
+                        .update();
+                events.publishEvent(new RunChange.Archived(deleted));
+            }
+            return deleted;
+        });
+        return runs == null ? -1 : runs.size();
+    }
+}
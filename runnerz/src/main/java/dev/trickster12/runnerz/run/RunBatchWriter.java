@@ -0,0 +1,44 @@
+package dev.trickster12.runnerz.run;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Bulk insert path behind POST /api/runs/saveAll
+// Runs are saved chunk by chunk : each chunk is flushed as JDBC batches (hibernate.jdbc.batch_size)
+// and the persistence context is cleared afterwards so it never holds more than one chunk
+// Returns the saved entities : a run sent with a version is merged into a copy, the one given keeps a null id
+// One RunChange.Saved carries every saved run, the in-memory stores add them once the transaction committed
+@Component
+public class RunBatchWriter {
+
+    private final RunRepository runRepository;
+    private final EntityManager entityManager;
+    private final ApplicationEventPublisher events;
+    private final int chunkSize;
+
+    public RunBatchWriter(RunRepository runRepository, EntityManager entityManager, ApplicationEventPublisher events,
+                          @Value("${runnerz.runs.save-all-chunk-size:500}") int chunkSize) {
+        this.runRepository = runRepository;
+        this.entityManager = entityManager;
+        this.events = events;
+        this.chunkSize = chunkSize;
+    }
+
+    @Transactional
+    public List<Run> saveAll(List<Run> runs) {
+        List<Run> saved = new ArrayList<>(runs.size());
+        for (int from = 0; from < runs.size(); from += chunkSize) {
+            saved.addAll(runRepository.saveAll(runs.subList(from, Math.min(from + chunkSize, runs.size()))));
+            entityManager.flush();
+            entityManager.clear();
+        }
+        events.publishEvent(new RunChange.Saved(saved));
+        return saved;
+    }
+}
@@ -0,0 +1,156 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Set-based delete for retention jobs : every run matching the filter goes in one DELETE statement
+// Filters are combined with AND, a filter that is not given does not restrict anything
+// A DELETE that removed runs publishes RunChange.BulkDeleted in its transaction
+@Component
+public class RunBulkDeleter {
+
+    // the branches of RunQuantiles, grouped by run_histogram_bucket (V13 migration)
+    private static final String QUANTILES = """
+
+            UNION ALL
+            SELECT 'miles', NULL, location, date_trunc('month', started_on), min(miles), count(*), NULL
+            FROM deleted GROUP BY 3, 4, run_histogram_bucket(miles)
+            UNION ALL
+            SELECT 'seconds', NULL, location, date_trunc('month', started_on),
+                   min(run_duration_seconds(started_on, completed_on)), count(*), NULL
+            FROM deleted GROUP BY 3, 4, run_histogram_bucket(run_duration_seconds(started_on, completed_on))""";
+
+    private final JdbcClient jdbcClient;
+    private final RunCache runCache;
+    private final RunColumns runColumns;
+    private final RunQuantiles runQuantiles;
+    private final ApplicationEventPublisher events;
+
+    public RunBulkDeleter(JdbcClient jdbcClient, RunCache runCache, RunColumns runColumns, RunQuantiles runQuantiles,
+                          ApplicationEventPublisher events) {
+        this.jdbcClient = jdbcClient;
+        this.runCache = runCache;
+        this.runColumns = runColumns;
+        this.runQuantiles = runQuantiles;
+        this.events = events;
+    }
+
+    // how many runs were deleted, how many of them carried each title, their ids (null when more than maxIds runs
+    // were deleted) and their values for RunQuantiles (null when it is off)
+
+    public record Result(int deleted, Map<String, Long> titles, int[] ids, RunQuantiles.Changes quantiles) {
+    }
+
+    // maxIds : only the stores kept by id need them, an int per deleted run. RunColumns needs all of them
+    // (Integer.MAX_VALUE), RunCache only below the size where it drops everything instead, 0 for none
+
+    @Transactional
+    public Result delete(Location location, LocalDateTime startedBefore, Integer minMiles, Integer maxMiles) {
+        return delete(location, startedBefore, minMiles, maxMiles,
+                runColumns.enabled() ? Integer.MAX_VALUE : runCache.maxDeletedFloors());
+    }
+
+    @Transactional
+    public Result delete(Location location, LocalDateTime startedBefore, Integer minMiles, Integer maxMiles, int maxIds) {
+        List<String> conditions = new ArrayList<>();
+        if (location != null) {
+            conditions.add("location = :location");
+        }
+        if (startedBefore != null) {
+            conditions.add("started_on < :startedBefore");
+        }
+        if (minMiles != null) {
+            conditions.add("miles >= :minMiles");
+        }
+        if (maxMiles != null) {
+            conditions.add("miles <= :maxMiles");
+        }
+        // never turn a forgotten query parameter into a DELETE of the whole table
+        if (conditions.isEmpty()) {
+            throw new MissingFilterException();
+        }
+
+        // The deleted rows never leave PostgreSQL : the DELETE is a CTE and the statement only returns what the in-memory
+        // stores need, aggregated. One summary row (the count, at most maxIds + 1 ids), one row per title, and when
+        // RunQuantiles is on one row per LogHistogram bucket of miles and of durations in every location and month (the
+        // lowest value stands for its bucket). pgjdbc buffers a whole result set, this one grows with the titles and
+        // months deleted, and with the runs only through the ids
+        boolean quantiles = runQuantiles.enabled();
+        JdbcClient.StatementSpec statement = jdbcClient.sql("""
+                WITH deleted AS (
+                    DELETE FROM run WHERE %s
+                    RETURNING id, title, started_on, completed_on, miles, location
+                )
+                SELECT 'deleted' AS kind, NULL AS title, NULL AS location, NULL::timestamp AS month, NULL::bigint AS value,
+                       count(*) AS runs, %s AS ids
+                FROM deleted
+                UNION ALL
+                SELECT 'title', title, NULL, NULL, NULL, count(*), NULL FROM deleted GROUP BY title%s"""
+                .formatted(String.join(" AND ", conditions), ids(maxIds), quantiles ? QUANTILES : ""));
+        if (location != null) {
+            statement = statement.param("location", location.name());
+        }
+        if (startedBefore != null) {
+            statement = statement.param("startedBefore", startedBefore);
+        }
+        if (minMiles != null) {
+            statement = statement.param("minMiles", minMiles);
+        }
+        if (maxMiles != null) {
+            statement = statement.param("maxMiles", maxMiles);
+        }
+        Map<String, Long> titles = new HashMap<>();
+        RunQuantiles.Changes changes = quantiles ? new RunQuantiles.Changes() : null;
+        int[] deleted = {0};
+        int[][] ids = {maxIds > 0 ? new int[0] : null};
+        statement.query(rs -> {
+            switch (rs.getString("kind")) {
+                case "deleted" -> {
+                    deleted[0] = rs.getInt("runs");
+                    Array array = rs.getArray("ids");
+                    if (array != null) {
+                        ids[0] = Arrays.stream((Integer[]) array.getArray()).mapToInt(Integer::intValue).toArray();
+                        array.free();
+                        if (ids[0].length > maxIds) {
+                            ids[0] = null;
+                        }
+                    }
+                }
+                case "title" -> titles.put(rs.getString("title"), rs.getLong("runs"));
+                case "miles" -> changes.removeMiles(Location.valueOf(rs.getString("location")),
+                        YearMonth.from(rs.getObject("month", LocalDateTime.class)), rs.getInt("value"), rs.getLong("runs"));
+                case "seconds" -> changes.removeDurations(Location.valueOf(rs.getString("location")),
+                        YearMonth.from(rs.getObject("month", LocalDateTime.class)), rs.getLong("value"), rs.getLong("runs"));
+                default -> throw new IllegalStateException("Unexpected row: " + rs.getString("kind"));
+            }
+        });
+        Result result = new Result(deleted[0], titles, ids[0], changes);
+        if (result.deleted() > 0) {
+            events.publishEvent(new RunChange.BulkDeleted(result));
+        }
+        return result;
+    }
+
+    // one id past maxIds tells that there were more, the rest are never aggregated
+
+    private static String ids(int maxIds) {
+        if (maxIds <= 0) {
+            return "NULL::int[]";
+        }
+        if (maxIds == Integer.MAX_VALUE) {
+            return "array_agg(id)";
+        }
+        return "(SELECT array_agg(id) FROM (SELECT id FROM deleted LIMIT " + (maxIds + 1) + ") AS first_ids)";
+    }
+}
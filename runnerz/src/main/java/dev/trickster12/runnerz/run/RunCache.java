@@ -0,0 +1,156 @@
+package dev.trickster12.runnerz.run;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Read-through cache in front of RunRepository.findById (then RunArchive.findById), bounded in size and time
+// Concurrent misses on the same id wait for a single query instead of all hitting the database
+// Writes invalidate with the version they produced (RunChange, once committed) : it is kept as the minimum acceptable
+// version of the id, so a slow reader that loaded the row before the write cannot put the old version back in the cache
+// A bulk delete larger than max-deleted-floors does not write one floor per run (they would evict each other and the
+// floors of concurrent writes) : it drops every run and moves the epoch on, a run loaded in an older epoch is never
+// served
+@Component
+public class RunCache {
+
+    // ids are never reused, a deleted run can never come back with any version
+    static final int DELETED = Integer.MAX_VALUE;
+
+    // a run and the epoch read before it was loaded
+
+    private record Loaded(Run run, long epoch) {
+    }
+
+    private final boolean enabled;
+    private final int maxDeletedFloors;
+    private final AtomicLong epoch = new AtomicLong();
+    private final LoadingCache<Integer, Loaded> runs;
+    private final Cache<Integer, Integer> minimumVersions;
+
+    public RunCache(RunRepository runRepository, RunArchive runArchive,
+                    @Value("${runnerz.runs.cache.maximum-size:10000}") long maximumSize,
+                    @Value("${runnerz.runs.cache.expire-after-write:10m}") Duration expireAfterWrite,
+                    @Value("${runnerz.runs.cache.max-deleted-floors:1000}") int maxDeletedFloors) {
+        this.enabled = maximumSize > 0;
+        this.maxDeletedFloors = enabled ? (int) Math.min(maxDeletedFloors, maximumSize) : 0;
+        // a null value means "not found" and is not cached
+        // runs moved to cold storage by RunArchiver are looked up there once PostgreSQL does not have them
+        this.runs = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build(id -> {
+                    long loadedIn = epoch.get();
+                    Run run = runRepository.findById(id).or(() -> runArchive.findById(id)).orElse(null);
+                    return run == null ? null : new Loaded(run, loadedIn);
+                });
+        // a stale load can only come from a query that started before the write, the cache TTL is more than enough
+        this.minimumVersions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .build();
+    }
+
+    // a maximum size of 0 turns the cache off : every read goes to the database and there is nothing to invalidate
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    public Optional<Run> findById(Integer id) {
+        Loaded loaded = runs.get(id);
+        if (loaded != null && isStale(id, loaded)) {
+            runs.invalidate(id);
+            loaded = runs.get(id);
+        }
+        return Optional.ofNullable(loaded).filter(l -> !isStale(id, l)).map(Loaded::run);
+    }
+
+    // the run now has this version in the database (or DELETED), older cached copies are dropped
+
+    public void invalidate(Integer id, int version) {
+        minimumVersions.asMap().merge(id, version, Math::max);
+        runs.invalidate(id);
+    }
+
+    // the most ids a bulk delete needs to collect for invalidateDeleted, 0 when the cache is off
+
+    public int maxDeletedFloors() {
+        return maxDeletedFloors;
+    }
+
+    // runs removed by a bulk delete : deleted of them, ids null when they were more than maxDeletedFloors
+
+    public void invalidateDeleted(int deleted, int[] ids) {
+        if (!enabled || deleted == 0) {
+            return;
+        }
+        if (ids == null || ids.length < deleted || deleted > maxDeletedFloors) {
+            invalidateAll();
+            return;
+        }
+        for (int id : ids) {
+            invalidate(id, DELETED);
+        }
+    }
+
+    // new runs have no cached copy, archived ones are still found in RunArchive
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onUpdated(RunChange.Updated change) {
+        invalidate(change.after().getId(), change.after().getVersion());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDeleted(RunChange.Deleted change) {
+        invalidate(change.run().getId(), DELETED);
+    }
+
+    // with the DELETED floor, not a plain eviction : a read that loaded one of them before the commit cannot put it
+    // back. Past maxDeletedFloors runs the whole cache is dropped instead
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onBulkDeleted(RunChange.BulkDeleted change) {
+        invalidateDeleted(change.result().deleted(), change.result().ids());
+    }
+
+    // every cached run is dropped, and so is a load that started before : the floors of the writes stay
+
+    public void invalidateAll() {
+        epoch.incrementAndGet();
+        runs.invalidateAll();
+    }
+
+    // for tests : forgets every run and every minimum version, as after a restart
+
+    void clear() {
+        runs.invalidateAll();
+        minimumVersions.invalidateAll();
+    }
+
+    public CacheStats stats() {
+        return runs.stats();
+    }
+
+    public long size() {
+        return runs.estimatedSize();
+    }
+
+    private boolean isStale(Integer id, Loaded loaded) {
+        if (loaded.epoch() < epoch.get()) {
+            return true;
+        }
+        Integer minimumVersion = minimumVersions.getIfPresent(id);
+        return minimumVersion != null && loaded.run().getVersion() != null && loaded.run().getVersion() < minimumVersion;
+    }
+}
@@ -0,0 +1,11 @@
+package dev.trickster12.runnerz.run;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+// Counters of the findById cache since startup
+public record RunCacheStats(long size, long hits, long misses, long evictions, double hitRate) {
+
+    static RunCacheStats of(CacheStats stats, long size) {
+        return new RunCacheStats(size, stats.hitCount(), stats.missCount(), stats.evictionCount(), stats.hitRate());
+    }
+}
@@ -0,0 +1,44 @@
+package dev.trickster12.runnerz.run;
+
+import java.util.List;
+import java.util.Map;
+
+// What one write did to run, published by the component that wrote it (RunWriter, RunBatchWriter, RunPatcher,
+// RunBulkDeleter, RunCsvImporter, RunArchiver) inside its transaction
+// The in-memory stores next to the table (RunCache, RunTitleIndex, RunColumns, RunQuantiles) subscribe with
+// @TransactionalEventListener(phase = AFTER_COMMIT) : they only hear of writes that committed, a rolled back one
+// never reaches them, and each listener runs on its own, one that throws does not keep the others from running
+// RunQuantiles listens BEFORE_COMMIT to read the id of the transaction while it loads, and applies after the commit
+public sealed interface RunChange {
+
+    // new rows as saved, with their id and version : create, saveAll
+
+    record Saved(List<Run> runs) implements RunChange {
+    }
+
+    // one row before and after a PUT or a PATCH
+
+    record Updated(Run before, Run after) implements RunChange {
+    }
+
+    // one row deleted by id, as it was
+
+    record Deleted(Run run) implements RunChange {
+    }
+
+    // rows deleted by filter, aggregated by PostgreSQL (see RunBulkDeleter.Result)
+
+    record BulkDeleted(RunBulkDeleter.Result result) implements RunChange {
+    }
+
+    // rows moved to RunArchive : they leave PostgreSQL, RunCache still finds them in the archive
+
+    record Archived(List<Run> runs) implements RunChange {
+    }
+
+    // rows written by COPY, without Run objects : runs per title, the rows for RunColumns (null when it is off) and
+    // their values for RunQuantiles
+
+    record Imported(Map<String, Long> titles, RunColumns.Batch rows, RunQuantiles.Changes quantiles) implements RunChange {
+    }
+}
@@ -0,0 +1,425 @@
+package dev.trickster12.runnerz.run;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+// Column-oriented copy of the run table in primitive arrays, for analytical scans over every run
+// One slot per run : id, miles, version, startedOn / completedOn in epoch seconds (the LocalDateTime read as UTC),
+// the location ordinal and a code into the title dictionary. With the id map and spare capacity that is about 55 bytes
+// per run where a Run with its LocalDateTimes and String takes over 230 (see RunColumnsBenchmarkTest)
+// Optional (runnerz.runs.columns.enabled) : loaded by a streaming query before the web server starts, then kept
+// current by RunChange like RunTitleIndex. Slots are not ordered, a removed run's slot goes to the last one
+// A write carrying an older version than the stored one is ignored, two updates finishing out of order keep the newest
+// The last REMOVED_FLOORS removed ids are remembered like RunCache's DELETED floor : an update that committed before
+// the delete of its run but reaches put after remove does not bring the run back. Ids are never reused, so a new run
+// is never refused
+// Scans only take the read lock and allocate nothing per run, see RunScan and RunQueryEngine
+@Component
+public class RunColumns implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(RunColumns.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // rows per round trip of the startup load, PostgreSQL only uses a cursor inside a transaction
+    private static final int LOAD_FETCH_SIZE = 10_000;
+    private static final Location[] LOCATIONS = Location.values();
+    // the race is between two commits and the in-memory writes that follow them, a few recent ids are enough
+    static final int REMOVED_FLOORS = 16_384;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int size;
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private int[] miles = new int[INITIAL_CAPACITY];
+    private int[] versions = new int[INITIAL_CAPACITY];
+    private long[] startedOn = new long[INITIAL_CAPACITY];
+    private long[] completedOn = new long[INITIAL_CAPACITY];
+    private byte[] locations = new byte[INITIAL_CAPACITY];
+    private int[] titles = new int[INITIAL_CAPACITY];
+    // id -> slot
+    private final IntIntHashMap slots = new IntIntHashMap(INITIAL_CAPACITY);
+    // a title keeps its code until restart, even once no run carries it anymore
+    private final List<String> titleDictionary = new ArrayList<>();
+    private final Map<String, Integer> titleCodes = new HashMap<>();
+    // removed id -> its place in removedRing, the oldest is forgotten first ; allocated by the first remove
+    private IntIntHashMap removed;
+    private int[] removedRing;
+    private int removedNext;
+
+    @Autowired
+    public RunColumns(DataSource dataSource, PlatformTransactionManager transactionManager,
+                      @Value("${runnerz.runs.columns.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(LOAD_FETCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+    }
+
+    // an empty store without database, for tests and benchmarks
+
+    RunColumns(boolean enabled) {
+        this.jdbcTemplate = null;
+        this.transactionTemplate = null;
+        this.enabled = enabled;
+    }
+
+    // called once every bean is ready but before the web server is started : no write can race the load
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        long start = System.nanoTime();
+        lock.writeLock().lock();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.query(
+                    "SELECT id, title, started_on, completed_on, miles, location, version FROM run",
+                    rs -> {
+                        store(rs.getInt("id"), rs.getString("title"),
+                                epochSecond(rs.getObject("started_on", LocalDateTime.class)),
+                                epochSecond(rs.getObject("completed_on", LocalDateTime.class)),
+                                rs.getInt("miles"), (byte) Location.valueOf(rs.getString("location")).ordinal(),
+                                rs.getInt("version"));
+                    }));
+        } finally {
+            lock.writeLock().unlock();
+        }
+        log.info("Loaded {} run(s) into memory columns in {} ms", size(), (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    // saved runs (their id and version are set), added or replacing the copy of the same id
+
+    public void put(Run run) {
+        put(List.of(run));
+    }
+
+    public void put(List<Run> runs) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (Run run : runs) {
+                store(run.getId(), run.getTitle(), epochSecond(run.getStartedOn()), epochSecond(run.getCompletedOn()),
+                        run.getMiles(), (byte) run.getLocation().ordinal(), run.getVersion() == null ? 0 : run.getVersion());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // runs written without a Run object (the CSV import), see Batch
+
+    public void put(Batch batch) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < batch.size; i++) {
+                store(batch.ids[i], batch.titles[i], batch.startedOn[i], batch.completedOn[i], batch.miles[i], batch.locations[i], 0);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Integer id) {
+        if (!enabled || id == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            removeSlot(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int[] removedIds) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            for (int id : removedIds) {
+                removeSlot(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(List<Run> runs) {
+        if (!enabled) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            runs.forEach(run -> removeSlot(run.getId()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onSaved(RunChange.Saved change) {
+        put(change.runs());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onUpdated(RunChange.Updated change) {
+        put(change.after());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDeleted(RunChange.Deleted change) {
+        remove(change.run().getId());
+    }
+
+    // RunBulkDeleter collects every id when the columns are on
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onBulkDeleted(RunChange.BulkDeleted change) {
+        if (change.result().ids() != null) {
+            remove(change.result().ids());
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onArchived(RunChange.Archived change) {
+        remove(change.runs());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onImported(RunChange.Imported change) {
+        if (change.rows() != null) {
+            put(change.rows());
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // bytes held by the arrays, the id map and the title dictionary (approximate for the strings)
+
+    public long footprint() {
+        lock.readLock().lock();
+        try {
+            long bytes = (long) ids.length * (4 + 4 + 4 + 8 + 8 + 1 + 4) + slots.footprint();
+            if (removed != null) {
+                bytes += 4L * removedRing.length + removed.footprint();
+            }
+            for (String title : titleDictionary) {
+                bytes += 40 + 2L * title.length() + 32;  // the String, its bytes and the map entry of its code
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // count, miles, longest run and total duration of the runs matching the filter, one pass on the calling thread
+    // RunQueryEngine runs the same scan split over several threads
+
+    public RunTotals totals(RunFilter filter) {
+        if (!enabled) {
+            throw new RunColumnsDisabledException();
+        }
+        RunScan scan = RunScan.totals(filter);
+        return read(columns -> scan.scan(columns, 0, columns.size()).totals());
+    }
+
+    // The arrays as they are, read by several threads at once : the read lock is held by the calling thread for the
+    // whole function, so no write can change them before it returns. Nothing may keep the view afterwards
+
+    record Columns(int size, int[] miles, long[] startedOn, long[] completedOn, byte[] locations) {
+    }
+
+    <R> R read(Function<Columns, R> reader) {
+        lock.readLock().lock();
+        try {
+            return reader.apply(new Columns(size, miles, startedOn, completedOn, locations));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // callers hold the write lock
+
+    private void store(int id, String title, long start, long end, int runMiles, byte location, int version) {
+        int slot = slots.get(id);
+        if (slot == IntIntHashMap.MISSING) {
+            if (removed != null && removed.get(id) != IntIntHashMap.MISSING) {
+                return;  // deleted after this write committed
+            }
+            if (size == ids.length) {
+                grow();
+            }
+            slot = size++;
+            slots.put(id, slot);
+        } else if (versions[slot] > version) {
+            return;  // a newer write of this run was applied already
+        }
+        ids[slot] = id;
+        miles[slot] = runMiles;
+        versions[slot] = version;
+        startedOn[slot] = start;
+        completedOn[slot] = end;
+        locations[slot] = location;
+        titles[slot] = titleCode(title);
+    }
+
+    // the last slot moves into the hole, the columns stay dense
+
+    private void removeSlot(int id) {
+        rememberRemoved(id);
+        int slot = slots.get(id);
+        if (slot == IntIntHashMap.MISSING) {
+            return;
+        }
+        slots.remove(id);
+        int last = --size;
+        if (slot != last) {
+            ids[slot] = ids[last];
+            miles[slot] = miles[last];
+            versions[slot] = versions[last];
+            startedOn[slot] = startedOn[last];
+            completedOn[slot] = completedOn[last];
+            locations[slot] = locations[last];
+            titles[slot] = titles[last];
+            slots.put(ids[slot], slot);
+        }
+    }
+
+    private void rememberRemoved(int id) {
+        if (removed == null) {
+            removed = new IntIntHashMap(REMOVED_FLOORS);
+            removedRing = new int[REMOVED_FLOORS];
+        }
+        if (removed.get(id) != IntIntHashMap.MISSING) {
+            return;
+        }
+        if (removed.size() == REMOVED_FLOORS) {
+            removed.remove(removedRing[removedNext]);
+        }
+        removedRing[removedNext] = id;
+        removed.put(id, removedNext);
+        removedNext = (removedNext + 1) % REMOVED_FLOORS;
+    }
+
+    private int titleCode(String title) {
+        Integer code = titleCodes.get(title);
+        if (code == null) {
+            code = titleDictionary.size();
+            titleDictionary.add(title);
+            titleCodes.put(title, code);
+        }
+        return code;
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1);
+        ids = Arrays.copyOf(ids, capacity);
+        miles = Arrays.copyOf(miles, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+        startedOn = Arrays.copyOf(startedOn, capacity);
+        completedOn = Arrays.copyOf(completedOn, capacity);
+        locations = Arrays.copyOf(locations, capacity);
+        titles = Arrays.copyOf(titles, capacity);
+    }
+
+    // for tests and benchmarks : the run in a slot, rebuilt from the columns
+    Run run(int slot) {
+        lock.readLock().lock();
+        try {
+            Run run = new Run(titleDictionary.get(titles[slot]), dateTime(startedOn[slot]), dateTime(completedOn[slot]),
+                    miles[slot], LOCATIONS[locations[slot]], versions[slot]);
+            run.setId(ids[slot]);
+            return run;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    static long epochSecond(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    static LocalDateTime dateTime(long epochSecond) {
+        return LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+    }
+
+    // Runs collected while they are written without a Run object (RunCsvImporter), handed over with put(Batch)
+    // once their transaction committed. Columns as well : a large import does not hold a Run per line
+
+    public static final class Batch {
+
+        private int size;
+        private int[] ids = new int[INITIAL_CAPACITY];
+        private int[] miles = new int[INITIAL_CAPACITY];
+        private long[] startedOn = new long[INITIAL_CAPACITY];
+        private long[] completedOn = new long[INITIAL_CAPACITY];
+        private byte[] locations = new byte[INITIAL_CAPACITY];
+        private String[] titles = new String[INITIAL_CAPACITY];
+
+        public void add(int id, String title, LocalDateTime start, LocalDateTime end, int runMiles, Location location) {
+            if (size == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                miles = Arrays.copyOf(miles, capacity);
+                startedOn = Arrays.copyOf(startedOn, capacity);
+                completedOn = Arrays.copyOf(completedOn, capacity);
+                locations = Arrays.copyOf(locations, capacity);
+                titles = Arrays.copyOf(titles, capacity);
+            }
+            ids[size] = id;
+            titles[size] = title;
+            startedOn[size] = epochSecond(start);
+            completedOn[size] = epochSecond(end);
+            miles[size] = runMiles;
+            locations[size] = (byte) location.ordinal();
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class RunColumnsDisabledException extends RuntimeException{
+
+
+    public RunColumnsDisabledException(){
+        super("In-memory run columns are disabled (runnerz.runs.columns.enabled)");
+    }
+}
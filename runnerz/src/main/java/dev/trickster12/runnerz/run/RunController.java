@@ -1,11 +1,25 @@
 package dev.trickster12.runnerz.run;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.YearMonth;
 import java.util.List;
 import java.util.Optional;
 // working with the run repository perfectly
@@ -15,18 +29,81 @@ import java.util.Optional;
 public class RunController {
 
 
+    // Listings are keyset paginated : the cursor of the next page is sent back in this header
+    // and is absent on the last page
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    static final int DEFAULT_PAGE_SIZE = 50;
+    static final int MAX_PAGE_SIZE = 500;
+    static final int DEFAULT_SUGGESTIONS = 10;
+    static final int MAX_SUGGESTIONS = 50;
+    static final int DEFAULT_MILES_BUCKET = 5;
+    // period of the stats when from / to are not given : every run, the bounds stay inside the PostgreSQL timestamp range
+    static final LocalDateTime STATS_FROM = LocalDateTime.of(1, 1, 1, 0, 0);
+    static final LocalDateTime STATS_TO = LocalDateTime.of(9999, 12, 31, 0, 0);
+
+    static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final RunRepository runRepository;
+    private final RunWriter runWriter;
+    private final RunExporter runExporter;
+    private final RunCounter runCounter;
+    private final RunCache runCache;
+    private final RunSearch runSearch;
+    private final RunTitleIndex runTitleIndex;
+    private final RunArchive runArchive;
+    private final RunRollups runRollups;
+    private final RunQueryEngine runQueryEngine;
+    private final RunQuantiles runQuantiles;
+    private final Duration exportTimeout;
 
     @Autowired
-    public RunController(RunRepository runRepository) {
+    public RunController(RunRepository runRepository, RunWriter runWriter, RunExporter runExporter, RunCounter runCounter,
+                         RunCache runCache, RunSearch runSearch, RunTitleIndex runTitleIndex, RunArchive runArchive,
+                         RunRollups runRollups, RunQueryEngine runQueryEngine, RunQuantiles runQuantiles,
+                         @Value("${runnerz.runs.export.timeout:30m}") Duration exportTimeout) {
         this.runRepository = runRepository;
+        this.runWriter = runWriter;
+        this.runExporter = runExporter;
+        this.runCounter = runCounter;
+        this.runCache = runCache;
+        this.runSearch = runSearch;
+        this.runTitleIndex = runTitleIndex;
+        this.runArchive = runArchive;
+        this.runRollups = runRollups;
+        this.runQueryEngine = runQueryEngine;
+        this.runQuantiles = runQuantiles;
+        this.exportTimeout = exportTimeout;
     }
 
     // Request to fetch all runs
 
     @GetMapping("")
-    public List<Run> findAll(){
-        return runRepository.findAll();
+    public ResponseEntity<List<Run>> findAll(@RequestParam(required = false) String cursor,
+                                             @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size){
+        int pageSize = pageSize(size);
+        List<Run> runs;
+        if (cursor == null) {
+            runs = runRepository.findPage(Limit.of(pageSize + 1));
+        } else {
+            RunCursor after = RunCursor.decode(cursor);
+            runs = runRepository.findPageAfter(after.startedOn(), after.id(), Limit.of(pageSize + 1));
+        }
+        return page(runs, pageSize);
+    }
+
+    // export every run (optionally only one location) as newline-delimited JSON
+    // rows are written while they are read, so the export never holds the whole table in memory
+    // the rows are written by the async task itself : its own timeout (runnerz.runs.export.timeout) bounds the whole
+    // export, the other async requests keep the default one
+
+    @GetMapping("/export")
+    public WebAsyncTask<Void> export(@RequestParam(required = false) Location location, HttpServletResponse response){
+        response.setContentType(APPLICATION_NDJSON.toString());
+        return new WebAsyncTask<>(exportTimeout.toMillis(), () -> {
+            runExporter.export(location, response.getOutputStream());
+            response.flushBuffer();
+            return null;
+        });
     }
 
     // Request to fetch a run by id
@@ -34,7 +111,7 @@ public class RunController {
     @GetMapping("/{id}")
     public Run findById(@PathVariable Integer id){
 
-        Optional<Run> run = runRepository.findById(id);
+        Optional<Run> run = runCache.findById(id);  // read through the cache, see RunCache
         if(run.isEmpty()){
             throw new RunNotFoundException();
         }
@@ -43,43 +120,55 @@ public class RunController {
 
     }
 
+    // hit / miss / eviction counters of the findById cache
+
+    @GetMapping("/cache/stats")
+    public RunCacheStats cacheStats(){
+        return RunCacheStats.of(runCache.stats(), runCache.size());
+    }
+
     // post create a run
 
     @ResponseStatus(HttpStatus.CREATED)
     @PostMapping("")
     public void create(@Valid @RequestBody Run run){
-        runRepository.save(run);
+        runWriter.create(run);
     }
 
     // put update a run
 
     @ResponseStatus(HttpStatus.OK)
     @PutMapping("/{id}")
-    public void update(@Valid @RequestBody Run run, @PathVariable Integer id) {
-        Optional<Run> existingRun = runRepository.findById(id);
-        if (existingRun.isEmpty()) {
-            throw new RunNotFoundException();
+    public RunVersion update(@Valid @RequestBody Run run, @PathVariable Integer id) {
+        // The version sent by the client is the one it read : the row is only updated if nobody changed it since
+        if (run.getVersion() == null) {
+            throw new MissingVersionException();
+        }
+        // checked before the UPDATE like RunPatcher : once the row is written the caches must follow it
+        // both dates are @NotNull, a body without one is already a 400
+        if (!run.getStartedOn().isBefore(run.getCompletedOn())) {
+            throw new InvalidRunDatesException();
         }
 
-        Run currentRun = existingRun.get();  // Get the existing entity from the database
-
-        // When I wanted to update a run the version was not incremented
-        // so I had to set the version of the run in the request body to the version of the run in the database to avoid the optimistic locking exception
-        // Problem solved with setting the version of the run in the request body to the version of the run in the database
-
-        // Update only the fields that are passed in the request body
-        currentRun.setTitle(run.getTitle());
-        currentRun.setStartedOn(run.getStartedOn());
-        currentRun.setCompletedOn(run.getCompletedOn());
-        currentRun.setMiles(run.getMiles());
-        currentRun.setLocation(run.getLocation());
+        // One UPDATE ... WHERE id = ? AND version = ?, no SELECT before : it returns the row as it was
+        Optional<Run> updated = runWriter.update(id, run);
+        if (updated.isEmpty()) {
+            // only the failure path pays for a second query, to tell a missing run from a stale version
+            if (!runRepository.existsById(id)) {
+                throw new RunNotFoundException();
+            }
+            throw new RunVersionConflictException();
+        }
+        return new RunVersion(id, updated.get().getVersion());
+    }
 
-        // Set the ID and version explicitly, if necessary
-        currentRun.setId(id);  // Just to be sure, set the ID (though it should already be set)
-        currentRun.setVersion(run.getVersion());  // Set the version to maintain consistency for optimistic locking
+    // patch a run with a JSON Merge Patch : only the fields present in the body are written
+    // the body must contain the current version, e.g. {"title": "Evening Run", "version": 3}
 
-        // Save the updated entity
-        runRepository.save(currentRun);  // Save the updated entity
+    @ResponseStatus(HttpStatus.OK)
+    @PatchMapping(value = "/{id}", consumes = "application/merge-patch+json")
+    public RunVersion patch(@RequestBody JsonNode patch, @PathVariable Integer id) {
+        return runWriter.patch(id, patch).version();
     }
 
     // delete delete a run
@@ -96,18 +185,32 @@ public class RunController {
         @ResponseStatus(HttpStatus.NO_CONTENT)
         @DeleteMapping("/{id}")
         public void delete(@PathVariable Integer id){
-            Optional<Run> existingRun = runRepository.findById(id);
-            if (existingRun.isEmpty()) {
+            // one DELETE statement, it returns the deleted row if the run existed
+            if (runWriter.delete(id).isEmpty()) {
                 throw new RunNotFoundException();
             }
-            runRepository.deleteById(id);
         }
 
-    // count all runs
+    // delete every run matching the filters in one statement, returns the number of deleted runs
+    // e.g. DELETE /api/runs?location=INDOOR&startedBefore=2024-01-01T00:00:00
+
+    @ResponseStatus(HttpStatus.OK)
+    @DeleteMapping("")
+    public int deleteAll(@RequestParam(required = false) Location location,
+                         @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startedBefore,
+                         @RequestParam(required = false) Integer minMiles,
+                         @RequestParam(required = false) Integer maxMiles){
+        return runWriter.deleteAll(location, startedBefore, minMiles, maxMiles).deleted();
+    }
+
+    // count all runs, read from the counter maintained by triggers instead of a count(*) scan
+    // ?approximate=true answers from the planner statistics, cheaper still but only as fresh as the last ANALYZE
+    // archived runs are included, once each and only when PostgreSQL no longer has them (RunCounter.archived) ; the
+    // stats endpoints cover PostgreSQL only
     @ResponseStatus(HttpStatus.OK)
     @GetMapping("/count")
-    public long count(){
-        return runRepository.count();
+    public long count(@RequestParam(defaultValue = "false") boolean approximate){
+        return (approximate ? runCounter.approximate() : runCounter.exact()) + runCounter.archived();
     }
 
     //create multiple runs
@@ -115,21 +218,197 @@ public class RunController {
     @ResponseStatus(HttpStatus.CREATED)
     @PostMapping("/saveAll")
     public void saveAll(@RequestBody List<Run> runs){
-        runRepository.saveAll(runs);
+        runWriter.saveAll(runs);
+    }
+
+    // import runs from a CSV file (title,startedOn,completedOn,miles,location) with PostgreSQL COPY
+    // invalid lines are skipped and listed in the report
+
+    @ResponseStatus(HttpStatus.OK)
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public RunImportReport importCsv(InputStream csv) throws IOException {
+        return runWriter.importCsv(csv);
+    }
 
+    // full-text search on titles, best matches first : stemmed ("runs" finds "Running"), several words, "quoted phrases"
+    // paginated like the other listings, the cursor of the next page comes in the X-Next-Cursor header
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/search")
+    public ResponseEntity<List<Run>> search(@RequestParam String q,
+                                            @RequestParam(required = false) String cursor,
+                                            @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size){
+        RunSearchCursor after = cursor == null ? null : RunSearchCursor.decode(cursor);
+        RunSearch.Page page = runSearch.search(q, after, pageSize(size));
+        if (page.nextCursor() == null) {
+            return ResponseEntity.ok(page.runs());
+        }
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, page.nextCursor())
+                .body(page.runs());
+    }
+
+    // type-ahead on titles : distinct titles starting with the prefix (any case), the most used first
+    // answered from RunTitleIndex in memory, the database is not queried
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/autocomplete")
+    public List<TitleSuggestion> autocomplete(@RequestParam(defaultValue = "") String prefix,
+                                              @RequestParam(defaultValue = "" + DEFAULT_SUGGESTIONS) int limit){
+        return runTitleIndex.suggest(prefix, Math.min(Math.max(limit, 1), MAX_SUGGESTIONS));
+    }
+
+    // fetch runs started in [from, to), e.g. this week : /api/runs/range?from=2024-06-03T00:00:00&to=2024-06-10T00:00:00
+    // only the monthly partitions of run covering the range are read, runs archived by RunArchiver are merged in
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/range")
+    public ResponseEntity<List<Run>> findByRange(@RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                 @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size){
+        if (!from.isBefore(to)) {
+            throw new InvalidRangeException();
+        }
+        int pageSize = pageSize(size);
+        List<Run> runs;
+        RunCursor after = cursor == null ? null : RunCursor.decode(cursor);
+        if (after == null) {
+            runs = runRepository.findPageByStartedOnRange(from, to, Limit.of(pageSize + 1));
+        } else {
+            runs = runRepository.findPageByStartedOnRangeAfter(from, to, after.startedOn(), after.id(), Limit.of(pageSize + 1));
+        }
+        return page(runArchive.completeRange(runs, from, to, after, pageSize + 1), pageSize);
+    }
+
+    // stats over the runs started in [from, to), every run by default. Periods of whole days (bounds at midnight)
+    // are read from the daily rollups of RunRollups, other periods are computed by GROUP BY queries on run
+    // Runs moved to the archive by RunArchiver are not included
+    // e.g. /api/runs/stats?from=2024-01-01T00:00:00&to=2025-01-01T00:00:00
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/stats")
+    public RunTotals stats(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                           @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to){
+        LocalDateTime lower = statsFrom(from, to);
+        LocalDateTime upper = statsTo(from, to);
+        if (wholeDays(lower, upper)) {
+            return runRollups.totals(lower.toLocalDate(), upper.toLocalDate());
+        }
+        return runRepository.totals(lower, upper);
+    }
+
+    // count, miles and longest run for each location
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/stats/locations")
+    public List<RunLocationStats> statsByLocation(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                                  @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to){
+        LocalDateTime lower = statsFrom(from, to);
+        LocalDateTime upper = statsTo(from, to);
+        if (wholeDays(lower, upper)) {
+            return runRollups.byLocation(lower.toLocalDate(), upper.toLocalDate());
+        }
+        return runRepository.statsByLocation(lower, upper);
+    }
+
+    // time spent running per day, week or month (?bucket=day|week|month), oldest first, periods without runs are absent
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/stats/durations")
+    public List<RunDurationBucket> durations(@RequestParam(defaultValue = "DAY") RunStatsBucket bucket,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                             @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to){
+        LocalDateTime lower = statsFrom(from, to);
+        LocalDateTime upper = statsTo(from, to);
+        if (wholeDays(lower, upper)) {
+            return runRollups.durations(bucket, lower.toLocalDate(), upper.toLocalDate());
+        }
+        return switch (bucket) {
+            case DAY -> runRepository.durationsByDay(lower, upper);
+            case WEEK -> runRepository.durationsByWeek(lower, upper);
+            case MONTH -> runRepository.durationsByMonth(lower, upper);
+        };
+    }
+
+    // ad hoc stats over any mix of location, miles range and start range, e.g. /api/runs/stats/scan?location=OUTDOOR&minMiles=10
+    // answered by scans of the in-memory columns (RunColumns), split over several threads by RunQueryEngine once the
+    // store is large enough. 503 when the columns are turned off
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/stats/scan")
+    public RunTotals scan(RunFilter filter){
+        return runQueryEngine.totals(checked(filter));
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/stats/scan/locations")
+    public List<RunLocationStats> scanByLocation(RunFilter filter){
+        return runQueryEngine.byLocation(checked(filter));
+    }
+
+    // histogram of the distances, ?width=5 gives the runs of 0-4 miles, 5-9 miles, ...
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/stats/scan/miles")
+    public List<RunMilesBucket> scanMilesHistogram(RunFilter filter,
+                                                   @RequestParam(defaultValue = "" + DEFAULT_MILES_BUCKET) int width){
+        return runQueryEngine.milesHistogram(checked(filter), Math.max(width, 1));
+    }
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/stats/scan/durations")
+    public List<RunDurationBucket> scanDurations(RunFilter filter,
+                                                 @RequestParam(defaultValue = "DAY") RunStatsBucket bucket){
+        return runQueryEngine.durations(checked(filter), bucket);
+    }
+
+    // median, 90th and 99th percentile of miles and duration, for one location and / or one month (all of them by default)
+    // e.g. /api/runs/stats/percentiles?location=OUTDOOR&month=2024-06, answered from the sketches of RunQuantiles
+    // 503 when they are turned off or still loading
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/stats/percentiles")
+    public RunPercentiles percentiles(@RequestParam(required = false) Location location,
+                                      @RequestParam(required = false) YearMonth month){
+        return runQuantiles.percentiles(location, month);
+    }
+
+    // rows of the daily rollups that disagree with run, an empty list when they are exact
+
+    @ResponseStatus(HttpStatus.OK)
+    @GetMapping("/stats/rollups/check")
+    public List<RunRollupDrift> checkRollups(){
+        return runRollups.check();
+    }
+
+    // recomputes the daily rollups from run (writes wait meanwhile), returns the number of (day, location) rows
+
+    @ResponseStatus(HttpStatus.OK)
+    @PostMapping("/stats/rollups/rebuild")
+    public long rebuildRollups(){
+        return runRollups.rebuild();
     }
 
     // fetch runs by location
 
     @ResponseStatus(HttpStatus.OK)
     @GetMapping("location/{location}")
-    public List<Run> findByLocation(@PathVariable Location location){
-
-        List<Run> run = runRepository.findByLocation(location);
+    public ResponseEntity<List<Run>> findByLocation(@PathVariable Location location,
+                                                    @RequestParam(required = false) String cursor,
+                                                    @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size){
+        int pageSize = pageSize(size);
+        List<Run> run;
+        if (cursor == null) {
+            run = runRepository.findPageByLocation(location, Limit.of(pageSize + 1));
+        } else {
+            RunCursor after = RunCursor.decode(cursor);
+            run = runRepository.findPageByLocationAfter(location, after.startedOn(), after.id(), Limit.of(pageSize + 1));
+        }
         if(run.isEmpty()){
             throw new RunNotFoundException();
         }
-        return run;
+        return page(run, pageSize);
 
     }
 
@@ -137,36 +416,68 @@ public class RunController {
 
     @ResponseStatus(HttpStatus.OK)
     @GetMapping("title/{title}")
-    public List<Run> findByTitle(@PathVariable String title){
-        List<Run> run = runRepository.findByTitle(title);
+    public ResponseEntity<List<Run>> findByTitle(@PathVariable String title,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size){
+        int pageSize = pageSize(size);
+        List<Run> run;
+        if (cursor == null) {
+            run = runRepository.findPageByTitle(title, Limit.of(pageSize + 1));
+        } else {
+            RunCursor after = RunCursor.decode(cursor);
+            run = runRepository.findPageByTitleAfter(title, after.startedOn(), after.id(), Limit.of(pageSize + 1));
+        }
         if(run.isEmpty()){
             throw new RunNotFoundException();
         }
-        return run;
+        return page(run, pageSize);
     }
 
     //fetch runs by miles
 
     @ResponseStatus(HttpStatus.OK)
     @GetMapping("miles/{miles}")
-    public List<Run> findByMiles(@PathVariable Integer miles){
-        List<Run> run = runRepository.findByMiles(miles);
+    public ResponseEntity<List<Run>> findByMiles(@PathVariable Integer miles,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size){
+        int pageSize = pageSize(size);
+        List<Run> run;
+        if (cursor == null) {
+            run = runRepository.findPageByMiles(miles, Limit.of(pageSize + 1));
+        } else {
+            RunCursor after = RunCursor.decode(cursor);
+            run = runRepository.findPageByMilesAfter(miles, after.startedOn(), after.id(), Limit.of(pageSize + 1));
+        }
         if(run.isEmpty()){
             throw new RunNotFoundException();
         }
-        return run;
+        return page(run, pageSize);
     }
 
-    //fetch runs by partial Title
+    //fetch runs by partial Title, ?ignoreCase=true to match regardless of case
 
     @ResponseStatus(HttpStatus.OK)
     @GetMapping("partial-title/{keyword}")
-    public List<Run> findByPartialTitle(@PathVariable String keyword) {
-        List<Run> runs = runRepository.findByTitleContaining(keyword);  // Appel direct au repository
+    public ResponseEntity<List<Run>> findByPartialTitle(@PathVariable String keyword,
+                                                        @RequestParam(defaultValue = "false") boolean ignoreCase,
+                                                        @RequestParam(required = false) String cursor,
+                                                        @RequestParam(defaultValue = "" + DEFAULT_PAGE_SIZE) int size) {
+        int pageSize = pageSize(size);
+        List<Run> runs;
+        if (cursor == null) {
+            runs = ignoreCase
+                    ? runRepository.findPageByTitleContainingIgnoreCase(keyword, Limit.of(pageSize + 1))
+                    : runRepository.findPageByTitleContaining(keyword, Limit.of(pageSize + 1));
+        } else {
+            RunCursor after = RunCursor.decode(cursor);
+            runs = ignoreCase
+                    ? runRepository.findPageByTitleContainingIgnoreCaseAfter(keyword, after.startedOn(), after.id(), Limit.of(pageSize + 1))
+                    : runRepository.findPageByTitleContainingAfter(keyword, after.startedOn(), after.id(), Limit.of(pageSize + 1));
+        }
         if (runs.isEmpty()) {
             throw new RunNotFoundException();  // Si aucune course n'est trouvée, on lance une exception
         }
-        return runs;
+        return page(runs, pageSize);
     }
 
     //fetch runs using a precise pattern : start with a ends with s and have 5 random characters in the middle
@@ -191,7 +502,48 @@ public class RunController {
         return run;
     }
 
+    // clamp the requested page size so a single request can never pull the whole table
 
+    private static int pageSize(int size) {
+        return Math.min(Math.max(size, 1), MAX_PAGE_SIZE);
+    }
+
+    // bounds of a stats period, either one may be left out
 
+    private static LocalDateTime statsFrom(LocalDateTime from, LocalDateTime to) {
+        LocalDateTime lower = from == null ? STATS_FROM : from;
+        if (!lower.isBefore(to == null ? STATS_TO : to)) {
+            throw new InvalidRangeException();
+        }
+        return lower;
+    }
+
+    private static LocalDateTime statsTo(LocalDateTime from, LocalDateTime to) {
+        return to == null ? STATS_TO : to;
+    }
+
+    private static RunFilter checked(RunFilter filter) {
+        if (filter.from() != null && filter.to() != null && !filter.from().isBefore(filter.to())) {
+            throw new InvalidRangeException();
+        }
+        return filter;
+    }
+
+    private static boolean wholeDays(LocalDateTime from, LocalDateTime to) {
+        return from.toLocalTime().equals(LocalTime.MIDNIGHT) && to.toLocalTime().equals(LocalTime.MIDNIGHT);
+    }
+
+    // runs were fetched with one extra row : if it is there, another page exists and its cursor
+    // is the position of the last row we actually return
+
+    private static ResponseEntity<List<Run>> page(List<Run> runs, int pageSize) {
+        if (runs.size() <= pageSize) {
+            return ResponseEntity.ok(runs);
+        }
+        List<Run> content = runs.subList(0, pageSize);
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, RunCursor.of(content.get(pageSize - 1)).encode())
+                .body(content);
+    }
 
 }
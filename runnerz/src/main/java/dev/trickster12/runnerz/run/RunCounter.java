@@ -0,0 +1,41 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+
+// Number of runs without a count(*) over the table
+// exact : sum of the run_count slots kept up to date by the triggers of the V1 migration, transactional like any row
+// approximate : PostgreSQL planner statistics (refreshed by ANALYZE / autovacuum), no locking at all
+// archived : runs moved to cold storage by RunArchiver, kept in run_archive_count (V10 migration)
+@Component
+public class RunCounter {
+
+    private final JdbcClient jdbcClient;
+
+    public RunCounter(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    public long exact() {
+        return jdbcClient.sql("SELECT COALESCE(SUM(total), 0) FROM run_count")
+                .query(Long.class)
+                .single();
+    }
+
+    public long archived() {
+        return jdbcClient.sql("SELECT COALESCE(SUM(total), 0) FROM run_archive_count")
+                .query(Long.class)
+                .single();
+    }
+
+    public long approximate() {
+        // run is partitioned (V7) : the statistics are kept per partition, the parent itself stores no rows
+        // reltuples is -1 until a partition has been analyzed once
+        return jdbcClient.sql("""
+                        SELECT COALESCE(SUM(GREATEST(c.reltuples, 0)), 0)::bigint
+                        FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                        WHERE i.inhparent = 'run'::regclass""")
+                .query(Long.class)
+                .single();
+    }
+}
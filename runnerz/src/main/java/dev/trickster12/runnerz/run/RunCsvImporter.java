@@ -0,0 +1,251 @@
+package dev.trickster12.runnerz.run;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Bulk import of runs from a CSV file with PostgreSQL COPY
+// Expected columns (first line is a header) : title,startedOn,completedOn,miles,location
+// Lines are validated with the same rules as Run while they are read, valid ones are streamed straight into
+// COPY ... FROM STDIN and invalid ones are reported without stopping the load
+// The COPY runs in the transaction of the import, which publishes RunChange.Imported with what the in-memory stores need
+@Component
+public class RunCsvImporter {
+
+    static final String HEADER = "title,startedOn,completedOn,miles,location";
+    static final int MAX_REPORTED_LINES = 1000;
+    // run.title is a VARCHAR(255), a longer title would make the whole COPY fail
+    static final int MAX_TITLE_LENGTH = 255;
+
+    private static final String COPY_SQL =
+            "COPY run (id, title, started_on, completed_on, miles, location, version) FROM STDIN WITH (FORMAT csv)";
+    // rows are buffered and handed to the driver in chunks of this many bytes
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+    // nextval() blocks fetched per round trip, each block holds Run.ID_ALLOCATION_SIZE ids
+    private static final int ID_BLOCKS_PER_FETCH = 20;
+
+    private final DataSource dataSource;
+    private final JdbcClient jdbcClient;
+    private final RunColumns runColumns;
+    private final ApplicationEventPublisher events;
+
+    public RunCsvImporter(DataSource dataSource, JdbcClient jdbcClient, RunColumns runColumns,
+                          ApplicationEventPublisher events) {
+        this.dataSource = dataSource;
+        this.jdbcClient = jdbcClient;
+        this.runColumns = runColumns;
+        this.events = events;
+    }
+
+    @Transactional
+    public RunImportReport importCsv(InputStream csv) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8));
+        String header = reader.readLine();
+        if (header == null || !HEADER.equalsIgnoreCase(header.strip())) {
+            throw new InvalidCsvException("CSV header must be: " + HEADER);
+        }
+
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                return copy(reader, copyIn);
+            } finally {
+                if (copyIn.isActive()) {
+                    copyIn.cancelCopy();
+                }
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("COPY into run failed", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    private RunImportReport copy(BufferedReader reader, CopyIn copyIn) throws IOException, SQLException {
+        List<RunImportReport.RejectedLine> rejectedLines = new ArrayList<>();
+        Deque<Integer> ids = new ArrayDeque<>();
+        // runs per title, handed to the autocomplete index once the import committed
+        Map<String, Long> titles = new HashMap<>();
+        // the imported rows themselves, only when the in-memory columns are on
+        RunColumns.Batch rows = runColumns.enabled() ? new RunColumns.Batch() : null;
+        RunQuantiles.Changes quantiles = new RunQuantiles.Changes();
+        StringBuilder buffer = new StringBuilder(COPY_BUFFER_SIZE + 1024);
+        long rejected = 0;
+        long lineNumber = 1;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            String error = appendRow(line, ids, buffer, titles, rows, quantiles);
+            if (error != null) {
+                rejected++;
+                if (rejectedLines.size() < MAX_REPORTED_LINES) {
+                    rejectedLines.add(new RunImportReport.RejectedLine(lineNumber, error));
+                }
+            }
+            if (buffer.length() >= COPY_BUFFER_SIZE) {
+                write(copyIn, buffer);
+            }
+        }
+        write(copyIn, buffer);
+        long imported = copyIn.endCopy();
+        events.publishEvent(new RunChange.Imported(titles, rows, quantiles));
+        return new RunImportReport(imported, rejected, rejectedLines);
+    }
+
+    // validates one CSV line and appends it to the COPY buffer, returns the rejection reason or null
+
+    private String appendRow(String line, Deque<Integer> ids, StringBuilder buffer, Map<String, Long> titles,
+                             RunColumns.Batch rows, RunQuantiles.Changes quantiles) {
+        List<String> fields = parseLine(line);
+        if (fields == null) {
+            return "Unbalanced quotes";
+        }
+        if (fields.size() != 5) {
+            return "Expected 5 columns but found " + fields.size();
+        }
+
+        String title = fields.get(0).strip();
+        if (title.isEmpty()) {
+            return "Title must not be empty";
+        }
+        if (title.length() > MAX_TITLE_LENGTH) {
+            return "Title must not be longer than " + MAX_TITLE_LENGTH + " characters";
+        }
+
+        LocalDateTime startedOn;
+        LocalDateTime completedOn;
+        try {
+            startedOn = LocalDateTime.parse(fields.get(1).strip());
+            completedOn = LocalDateTime.parse(fields.get(2).strip());
+        } catch (DateTimeParseException e) {
+            return "Invalid date: " + e.getParsedString();
+        }
+        if (!startedOn.isBefore(completedOn)) {
+            return "Start date must be before end date";
+        }
+
+        int miles;
+        try {
+            miles = Integer.parseInt(fields.get(3).strip());
+        } catch (NumberFormatException e) {
+            return "Invalid miles: " + fields.get(3);
+        }
+        if (miles <= 0) {
+            return "Miles must be positive";
+        }
+
+        Location location;
+        try {
+            location = Location.valueOf(fields.get(4).strip().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return "Invalid location: " + fields.get(4);
+        }
+
+        Integer id = nextId(ids);
+        buffer.append(id).append(',');
+        appendQuoted(buffer, title);
+        buffer.append(',').append(startedOn)
+                .append(',').append(completedOn)
+                .append(',').append(miles)
+                .append(',').append(location.name())
+                .append(",0\n");
+        titles.merge(title, 1L, Long::sum);
+        if (rows != null) {
+            rows.add(id, title, startedOn, completedOn, miles, location);
+        }
+        quantiles.add(location, startedOn, completedOn, miles);
+        return null;
+    }
+
+    // ids are reserved the same way Hibernate's pooled optimizer does it : every nextval() returns the
+    // highest id of a block of Run.ID_ALLOCATION_SIZE ids, so imported rows never collide with saved ones
+
+    private Integer nextId(Deque<Integer> ids) {
+        if (ids.isEmpty()) {
+            List<Integer> blocks = jdbcClient.sql("SELECT nextval('run_id_seq') FROM generate_series(1, :blocks)")
+                    .param("blocks", ID_BLOCKS_PER_FETCH)
+                    .query(Integer.class)
+                    .list();
+            for (Integer hi : blocks) {
+                // the very first value of a fresh sequence is 1, there is no block below it
+                for (int id = Math.max(1, hi - Run.ID_ALLOCATION_SIZE + 1); id <= hi; id++) {
+                    ids.add(id);
+                }
+            }
+        }
+        return ids.poll();
+    }
+
+    private static void write(CopyIn copyIn, StringBuilder buffer) throws SQLException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        byte[] bytes = buffer.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        buffer.setLength(0);
+    }
+
+    private static void appendQuoted(StringBuilder buffer, String value) {
+        buffer.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    // splits one CSV line, fields may be quoted with "" to escape a quote (RFC 4180, single line only)
+    // returns null when a quoted field is not closed
+
+    static List<String> parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+}
@@ -0,0 +1,34 @@
+package dev.trickster12.runnerz.run;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+// Position of the last run of a page, runs are always ordered by (startedOn, id)
+// The client only sees the encoded token, so the format can change without breaking anyone
+public record RunCursor(LocalDateTime startedOn, Integer id) {
+
+    public static RunCursor of(Run run) {
+        return new RunCursor(run.getStartedOn(), run.getId());
+    }
+
+    public String encode() {
+        String raw = startedOn + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static RunCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(',');
+            if (separator < 0) {
+                throw new InvalidCursorException();
+            }
+            return new RunCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Integer.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidCursorException();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package dev.trickster12.runnerz.run;
+
+import java.time.LocalDateTime;
+
+// One row of GET /api/runs/stats/durations : the runs started in the day, week (from Monday) or month beginning at start
+public record RunDurationBucket(LocalDateTime start, long runs, long totalMiles, long durationSeconds) {
+}
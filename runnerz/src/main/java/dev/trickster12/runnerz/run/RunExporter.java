@@ -0,0 +1,57 @@
+package dev.trickster12.runnerz.run;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import jakarta.persistence.EntityManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.stream.Stream;
+
+// Writes runs as newline-delimited JSON while they are read from the database cursor
+// Only one Run is alive at a time : each row is detached once written so the persistence context stays empty
+@Component
+public class RunExporter {
+
+    private final RunRepository runRepository;
+    private final EntityManager entityManager;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectWriter writer;
+
+    public RunExporter(RunRepository runRepository, EntityManager entityManager,
+                       PlatformTransactionManager transactionManager, ObjectMapper objectMapper) {
+        this.runRepository = runRepository;
+        this.entityManager = entityManager;
+        // the stream is consumed on the async response thread, so the transaction has to be opened here
+        // (PostgreSQL only uses a cursor for the fetch size when auto-commit is off)
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+        this.writer = objectMapper.writerFor(Run.class);
+    }
+
+    public void export(Location location, OutputStream out) {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<Run> runs = location == null
+                    ? runRepository.streamAll()
+                    : runRepository.streamByLocation(location)) {
+                runs.forEach(run -> {
+                    write(run, out);
+                    entityManager.detach(run);
+                });
+            }
+        });
+    }
+
+    private void write(Run run, OutputStream out) {
+        try {
+            out.write(writer.writeValueAsBytes(run));
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.format.annotation.DateTimeFormat;
+
+import java.time.LocalDateTime;
+
+// Runs selected by an in-memory scan of RunColumns, every part is optional and they are combined with AND
+// miles in [minMiles, maxMiles], startedOn in [from, to). Bound from the query parameters of the /stats/scan endpoints
+public record RunFilter(Location location, Integer minMiles, Integer maxMiles,
+                        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                        @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+}
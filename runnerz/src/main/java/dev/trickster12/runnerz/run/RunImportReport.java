@@ -0,0 +1,11 @@
+package dev.trickster12.runnerz.run;
+
+import java.util.List;
+
+// Result of a CSV import : how many rows went into the table and why the other ones were skipped
+// Only the first rejected lines are detailed, rejected always holds the full count
+public record RunImportReport(long imported, long rejected, List<RejectedLine> rejectedLines) {
+
+    public record RejectedLine(long line, String reason) {
+    }
+}
@@ -0,0 +1,5 @@
+package dev.trickster12.runnerz.run;
+
+// One row of GET /api/runs/stats/locations
+public record RunLocationStats(Location location, long runs, long totalMiles, Double averageMiles, Integer longestRun) {
+}
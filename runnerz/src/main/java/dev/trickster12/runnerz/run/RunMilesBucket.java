@@ -0,0 +1,5 @@
+package dev.trickster12.runnerz.run;
+
+// One bar of the miles histogram of GET /api/runs/stats/scan/miles : the runs of fromMiles up to (not including) toMiles
+public record RunMilesBucket(int fromMiles, int toMiles, long runs, long durationSeconds) {
+}
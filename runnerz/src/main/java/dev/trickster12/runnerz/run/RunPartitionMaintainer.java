@@ -0,0 +1,107 @@
+package dev.trickster12.runnerz.run;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+// Keeps the monthly partitions of run (V7 migration) ahead of the clock
+// At startup and every night the partitions of the current month and of the next months-ahead months are created,
+// as well as the ones of any month whose rows had to go to run_default meanwhile
+@Component
+public class RunPartitionMaintainer implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(RunPartitionMaintainer.class);
+
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyy_MM");
+
+    private final JdbcClient jdbcClient;
+    private final TransactionTemplate transactionTemplate;
+    private final int monthsAhead;
+
+    public RunPartitionMaintainer(JdbcClient jdbcClient, PlatformTransactionManager transactionManager,
+                                  @Value("${runnerz.runs.partitions.months-ahead:3}") int monthsAhead) {
+        this.jdbcClient = jdbcClient;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.monthsAhead = monthsAhead;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        createPartitions();
+    }
+
+    @Scheduled(cron = "${runnerz.runs.partitions.cron:0 0 3 * * *}")
+    public int createPartitions() {
+        int created = jdbcClient.sql("SELECT run_create_partitions(:monthsAhead)")
+                .param("monthsAhead", monthsAhead)
+                .query(Integer.class)
+                .single();
+        if (created > 0) {
+            log.info("Created {} partition(s) of run", created);
+        }
+        return created;
+    }
+
+    // takes one month out of run without deleting its rows, returns the name of the detached table
+
+    public Optional<String> detach(YearMonth month) {
+        return jdbcClient.sql("SELECT run_detach_partition(:month)")
+                .param("month", month.atDay(1).atStartOfDay())
+                .query(String.class)
+                .optional();
+    }
+
+    // Drops the partitions of the months that ended before cutoff and hold no run anymore (see RunArchiver)
+    // The partition is detached first and checked again under the lock of the detach : a run written to it in
+    // between rolls the whole thing back. Returns the names of the dropped partitions
+
+    public List<String> dropEmptyPartitionsBefore(LocalDateTime cutoff) {
+        List<String> partitions = jdbcClient.sql("""
+                        SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid
+                        WHERE i.inhparent = 'run'::regclass AND c.relname ~ '^run_[0-9]{4}_[0-9]{2}$'
+                        ORDER BY c.relname""")
+                .query(String.class)
+                .list();
+        List<String> dropped = new ArrayList<>();
+        for (String partition : partitions) {
+            YearMonth month = YearMonth.parse(partition.substring("run_".length()), PARTITION_MONTH);
+            if (month.plusMonths(1).atDay(1).atStartOfDay().isAfter(cutoff) || !isEmpty(partition)) {
+                continue;
+            }
+            Boolean done = transactionTemplate.execute(status -> {
+                detach(month);
+                if (!isEmpty(partition)) {
+                    status.setRollbackOnly();
+                    return false;
+                }
+                jdbcClient.sql("DROP TABLE \"" + partition + "\"").update();
+                return true;
+            });
+            if (Boolean.TRUE.equals(done)) {
+                dropped.add(partition);
+            }
+        }
+        return dropped;
+    }
+
+    // partition is a name read from pg_class and matching run_YYYY_MM, it cannot carry anything else
+
+    private boolean isEmpty(String partition) {
+        return jdbcClient.sql("SELECT NOT EXISTS (SELECT 1 FROM \"" + partition + "\")")
+                .query(Boolean.class)
+                .single();
+    }
+}
@@ -0,0 +1,182 @@
+package dev.trickster12.runnerz.run;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+// Applies a JSON Merge Patch (RFC 7396) to a run with one UPDATE that only sets the columns present in the patch
+// The patch must carry the version the client read, the UPDATE is guarded by it like PUT /api/runs/{id}
+// A patch that went through publishes RunChange.Updated in the transaction of its UPDATE
+@Component
+public class RunPatcher {
+
+    // patchable JSON fields and the column behind each of them
+    private static final Map<String, String> COLUMNS = new LinkedHashMap<>();
+
+    static {
+        COLUMNS.put("title", "title");
+        COLUMNS.put("startedOn", "started_on");
+        COLUMNS.put("completedOn", "completed_on");
+        COLUMNS.put("miles", "miles");
+        COLUMNS.put("location", "location");
+    }
+
+    private static final RowMapper<Run> RUN_MAPPER = new BeanPropertyRowMapper<>(Run.class);
+
+    private final JdbcClient jdbcClient;
+    private final ObjectMapper objectMapper;
+    private final ApplicationEventPublisher events;
+
+    public RunPatcher(JdbcClient jdbcClient, ObjectMapper objectMapper, ApplicationEventPublisher events) {
+        this.jdbcClient = jdbcClient;
+        this.objectMapper = objectMapper;
+        this.events = events;
+    }
+
+    // the row before and after the patch
+
+    public record Result(Run before, Run after) {
+
+        public RunVersion version() {
+            return new RunVersion(after.getId(), after.getVersion());
+        }
+    }
+
+    @Transactional
+    public Result patch(Integer id, JsonNode patch) {
+        if (patch == null || !patch.isObject()) {
+            throw new InvalidPatchException("Merge patch must be a JSON object");
+        }
+        JsonNode versionNode = patch.get("version");
+        if (versionNode == null || versionNode.isNull()) {
+            throw new MissingVersionException();
+        }
+        if (!versionNode.isIntegralNumber() || !versionNode.canConvertToInt()) {
+            throw new InvalidPatchException("version must be an integer");
+        }
+        int version = versionNode.intValue();
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            if (name.equals("version") || (name.equals("id") && id.equals(field.getValue().asInt()))) {
+                continue;
+            }
+            if (!COLUMNS.containsKey(name)) {
+                throw new InvalidPatchException("Field cannot be patched: " + name);
+            }
+            // every column of run is NOT NULL, so a null (remove) in the patch can never be applied
+            if (field.getValue().isNull()) {
+                throw new InvalidPatchException(name + " cannot be removed");
+            }
+            values.put(name, convert(name, field.getValue()));
+        }
+        if (values.isEmpty()) {
+            throw new InvalidPatchException("Merge patch does not change anything");
+        }
+
+        LocalDateTime startedOn = (LocalDateTime) values.get("startedOn");
+        LocalDateTime completedOn = (LocalDateTime) values.get("completedOn");
+        if (startedOn != null && completedOn != null && !startedOn.isBefore(completedOn)) {
+            throw new InvalidPatchException("Start date must be before end date");
+        }
+
+        List<String> assignments = new ArrayList<>();
+        values.keySet().forEach(name -> assignments.add(COLUMNS.get(name) + " = :" + name));
+        // joined to itself like RunWriteRepositoryImpl, RETURNING old.* gives the row as it was before the SET
+        // the month of the run comes from run_id : only its partition is read and written
+        StringBuilder sql = new StringBuilder("UPDATE run SET ")
+                .append(String.join(", ", assignments))
+                .append(", version = run.version + 1 FROM run old")
+                .append(" WHERE run.id = :id AND run.started_on = (SELECT started_on FROM run_id WHERE id = :id)")
+                .append(" AND run.version = :version")
+                .append(" AND old.id = run.id AND old.started_on = (SELECT started_on FROM run_id WHERE id = :id)");
+        // when only one bound of the run is patched, the other one is still in the row
+        if (startedOn != null && completedOn == null) {
+            sql.append(" AND run.completed_on > :startedOn");
+        } else if (completedOn != null && startedOn == null) {
+            sql.append(" AND run.started_on < :completedOn");
+        }
+        sql.append(" RETURNING old.id, old.title, old.started_on, old.completed_on, old.miles, old.location, old.version");
+
+        JdbcClient.StatementSpec statement = jdbcClient.sql(sql.toString())
+                .param("id", id)
+                .param("version", version);
+        for (Map.Entry<String, Object> value : values.entrySet()) {
+            statement = statement.param(value.getKey(), value.getValue());
+        }
+        Optional<Run> before = statement.query(RUN_MAPPER).optional();
+        if (before.isPresent()) {
+            Result result = new Result(before.get(), apply(before.get(), values));
+            events.publishEvent(new RunChange.Updated(result.before(), result.after()));
+            return result;
+        }
+
+        // nothing updated : find out why, this second query only runs on the failure path
+        Optional<Integer> currentVersion = jdbcClient.sql("""
+                        SELECT version FROM run
+                        WHERE id = :id AND started_on = (SELECT started_on FROM run_id WHERE id = :id)""")
+                .param("id", id)
+                .query(Integer.class)
+                .optional();
+        if (currentVersion.isEmpty()) {
+            throw new RunNotFoundException();
+        }
+        if (currentVersion.get() != version) {
+            throw new RunVersionConflictException();
+        }
+        throw new InvalidPatchException("Start date must be before end date");
+    }
+
+    private static Run apply(Run before, Map<String, Object> values) {
+        Run after = new Run(
+                (String) values.getOrDefault("title", before.getTitle()),
+                (LocalDateTime) values.getOrDefault("startedOn", before.getStartedOn()),
+                (LocalDateTime) values.getOrDefault("completedOn", before.getCompletedOn()),
+                (Integer) values.getOrDefault("miles", before.getMiles()),
+                values.containsKey("location") ? Location.valueOf((String) values.get("location")) : before.getLocation(),
+                before.getVersion() + 1);
+        after.setId(before.getId());
+        return after;
+    }
+
+    private Object convert(String name, JsonNode value) {
+        try {
+            return switch (name) {
+                case "title" -> {
+                    String title = value.asText();
+                    if (!value.isTextual() || title.isEmpty()) {
+                        throw new InvalidPatchException("title must not be empty");
+                    }
+                    yield title;
+                }
+                case "startedOn", "completedOn" -> objectMapper.convertValue(value, LocalDateTime.class);
+                case "miles" -> {
+                    if (!value.isIntegralNumber() || !value.canConvertToInt() || value.intValue() <= 0) {
+                        throw new InvalidPatchException("miles must be positive");
+                    }
+                    yield value.intValue();
+                }
+                // stored as a string like @Enumerated(EnumType.STRING) does
+                default -> objectMapper.convertValue(value, Location.class).name();
+            };
+        } catch (IllegalArgumentException e) {
+            throw new InvalidPatchException("Invalid value for " + name);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package dev.trickster12.runnerz.run;
+
+import java.time.YearMonth;
+
+// Answer of GET /api/runs/stats/percentiles : location and month are null when every location / month is included
+// The quantiles are null when no run matches
+public record RunPercentiles(Location location, YearMonth month, long runs, Quantiles miles, Quantiles durationSeconds) {
+
+    public record Quantiles(double p50, double p90, double p99) {
+    }
+}
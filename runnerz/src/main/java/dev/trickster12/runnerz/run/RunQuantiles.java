@@ -0,0 +1,409 @@
+package dev.trickster12.runnerz.run;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Distribution of miles and of durations (seconds) behind GET /api/runs/stats/percentiles
+// One pair of LogHistograms per location and month of startedOn, loaded by a streaming query and then kept current by
+// RunChange like RunTitleIndex : a write adds the values of its new rows and takes away the ones of its old rows.
+// A query merges the cells it covers, its cost depends on the number of months, never on the number of runs, and so
+// does the memory held
+// Optional (runnerz.runs.quantiles.enabled). The load reads every run, it starts once the application is ready on a
+// thread of its own : startup never waits on it, percentiles answer 503 until it is done. It takes no lock, writes go
+// on while it scans a REPEATABLE READ snapshot. Until it is done every write reads its transaction id just before it
+// commits, and its change is kept aside once committed : the load replays the ones its snapshot did not see, a write
+// the snapshot saw is already counted by the scan, however late its change arrives
+@Component
+public class RunQuantiles implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(RunQuantiles.class);
+
+    private static final int LOAD_FETCH_SIZE = 10_000;
+    private static final Location[] LOCATIONS = Location.values();
+    // the transaction of a change is not known : it committed after the load was done
+    private static final long UNKNOWN = -1;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final ExecutorService executor;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // key : month * number of locations + location ordinal, see Changes.key ; replaced by the load
+    private Map<Integer, Cell> cells = new HashMap<>();
+    // written under the write lock, false until the load is done ; read without it before a write commits
+    private volatile boolean loaded;
+    // the transactions the scan of the load saw, null until the load is done (and in the test constructor)
+    private Snapshot snapshot;
+    // changes committed while loading, with their transaction
+    private final List<Pending> pending = new ArrayList<>();
+    private volatile CompletableFuture<Void> load;
+
+    @Autowired
+    public RunQuantiles(DataSource dataSource, PlatformTransactionManager transactionManager,
+                        @Value("${runnerz.runs.quantiles.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(LOAD_FETCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.transactionTemplate.setReadOnly(true);
+        this.enabled = enabled;
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "run-quantiles-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.load = enabled ? new CompletableFuture<>() : CompletableFuture.completedFuture(null);
+    }
+
+    // empty, loaded and without database, for tests
+
+    RunQuantiles() {
+        this.jdbcTemplate = null;
+        this.transactionTemplate = null;
+        this.enabled = true;
+        this.executor = null;
+        this.loaded = true;
+        this.load = CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (enabled) {
+            load = CompletableFuture.runAsync(this::load, executor);
+        }
+    }
+
+    public boolean enabled() {
+        return enabled;
+    }
+
+    // completes once the percentiles can be served (at once when they are off), for tests
+
+    CompletableFuture<Void> loaded() {
+        return load;
+    }
+
+    private void load() {
+        load(() -> {
+        });
+    }
+
+    // inSnapshot runs once the snapshot is taken, before the scan : tests commit writes there
+
+    void load(Runnable inSnapshot) {
+        long start = System.nanoTime();
+        Changes scanned = new Changes();
+        try {
+            Snapshot seen = transactionTemplate.execute(status -> {
+                // the first statement takes the snapshot of the whole transaction, the scan reads the same one
+                Snapshot taken = Snapshot.parse(jdbcTemplate.queryForObject("SELECT pg_current_snapshot()::text", String.class));
+                inSnapshot.run();
+                jdbcTemplate.query("SELECT started_on, completed_on, miles, location FROM run",
+                        rs -> {
+                            scanned.add(Location.valueOf(rs.getString("location")), rs.getObject("started_on", LocalDateTime.class),
+                                    rs.getObject("completed_on", LocalDateTime.class), rs.getInt("miles"));
+                        });
+                return taken;
+            });
+            Map<Integer, Cell> fresh = new HashMap<>();
+            merge(fresh, scanned);
+            lock.writeLock().lock();
+            try {
+                for (Pending change : pending) {
+                    if (!seen.sees(change.transactionId())) {
+                        merge(fresh, change.changes());
+                    }
+                }
+                pending.clear();
+                cells = fresh;
+                snapshot = seen;
+                loaded = true;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not load the distribution of the runs, percentiles stay unavailable", e);
+            throw e;
+        }
+        log.info("Loaded the distribution of {} run(s) in {} ms", scanned.runs, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    public void add(Run run) {
+        add(List.of(run));
+    }
+
+    public void add(List<Run> runs) {
+        apply(added(runs));
+    }
+
+    public void remove(Run run) {
+        remove(List.of(run));
+    }
+
+    public void remove(List<Run> runs) {
+        apply(removed(runs));
+    }
+
+    // the same run before and after an update
+
+    public void replace(Run before, Run after) {
+        apply(replaced(before, after));
+    }
+
+    // without its transaction : dropped until the load is done
+
+    public void apply(Changes changes) {
+        apply(changes, UNKNOWN);
+    }
+
+    // kept aside while loading, skipped once loaded when the scan of the load saw its transaction
+
+    private void apply(Changes changes, long transactionId) {
+        lock.writeLock().lock();
+        try {
+            if (!loaded) {
+                if (transactionId != UNKNOWN) {
+                    pending.add(new Pending(transactionId, changes));
+                }
+            } else if (transactionId == UNKNOWN || snapshot == null || !snapshot.sees(transactionId)) {
+                merge(cells, changes);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static Changes added(List<Run> runs) {
+        Changes changes = new Changes();
+        runs.forEach(changes::add);
+        return changes;
+    }
+
+    private static Changes removed(List<Run> runs) {
+        Changes changes = new Changes();
+        runs.forEach(changes::remove);
+        return changes;
+    }
+
+    private static Changes replaced(Run before, Run after) {
+        Changes changes = new Changes();
+        changes.remove(before);
+        changes.add(after);
+        return changes;
+    }
+
+    private static void merge(Map<Integer, Cell> cells, Changes changes) {
+        changes.cells.forEach((key, delta) -> {
+            Cell cell = cells.computeIfAbsent(key, k -> new Cell());
+            cell.merge(delta);
+            if (cell.miles.count() == 0) {
+                cells.remove(key);
+            }
+        });
+    }
+
+    // The listeners run in the writing transaction, just before it commits : while loading they read its id there.
+    // The change itself is applied after the commit like in the other stores, never for a write rolled back
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onSaved(RunChange.Saved change) {
+        afterCommit(() -> added(change.runs()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onUpdated(RunChange.Updated change) {
+        afterCommit(() -> replaced(change.before(), change.after()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onDeleted(RunChange.Deleted change) {
+        afterCommit(() -> removed(List.of(change.run())));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onBulkDeleted(RunChange.BulkDeleted change) {
+        afterCommit(change.result()::quantiles);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onArchived(RunChange.Archived change) {
+        afterCommit(() -> removed(change.runs()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.BEFORE_COMMIT)
+    public void onImported(RunChange.Imported change) {
+        afterCommit(change::quantiles);
+    }
+
+    // Nothing when the percentiles are off. Once loaded the id is not read : a write that had not committed yet is
+    // not in the snapshot of the load, whatever its id
+    private void afterCommit(Supplier<Changes> changes) {
+        if (!enabled) {
+            return;
+        }
+        Changes applied = changes.get();
+        long transactionId = loaded ? UNKNOWN
+                : jdbcTemplate.queryForObject("SELECT pg_current_xact_id()::text::bigint", Long.class);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(applied, transactionId);
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    // p50 / p90 / p99 of one location and / or one month, null for all of them
+
+    public RunPercentiles percentiles(Location location, YearMonth month) {
+        Cell merged = new Cell();
+        lock.readLock().lock();
+        try {
+            if (!loaded) {
+                throw new RunQuantilesUnavailableException(enabled);
+            }
+            cells.forEach((key, cell) -> {
+                if ((location == null || Math.floorMod(key, LOCATIONS.length) == location.ordinal())
+                        && (month == null || Math.floorDiv(key, LOCATIONS.length) == Changes.month(month))) {
+                    merged.merge(cell);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        long runs = merged.miles.count();
+        return new RunPercentiles(location, month, runs, quantiles(merged.miles), quantiles(merged.durations));
+    }
+
+    private static RunPercentiles.Quantiles quantiles(LogHistogram histogram) {
+        if (histogram.count() == 0) {
+            return null;
+        }
+        return new RunPercentiles.Quantiles(histogram.quantile(0.5), histogram.quantile(0.9), histogram.quantile(0.99));
+    }
+
+    private record Pending(long transactionId, Changes changes) {
+    }
+
+    // pg_current_snapshot() as text, "xmin:xmax:xip,..." : a transaction below xmin had committed when it was taken,
+    // one from xmax on had not started, one in between had committed unless it is in the list of those still running
+
+    private record Snapshot(long xmin, long xmax, Set<Long> running) {
+
+        static Snapshot parse(String text) {
+            String[] parts = text.split(":", -1);
+            Set<Long> running = new HashSet<>();
+            for (String id : parts[2].split(",")) {
+                if (!id.isEmpty()) {
+                    running.add(Long.parseLong(id));
+                }
+            }
+            return new Snapshot(Long.parseLong(parts[0]), Long.parseLong(parts[1]), running);
+        }
+
+        boolean sees(long transactionId) {
+            return transactionId < xmin || (transactionId < xmax && !running.contains(transactionId));
+        }
+    }
+
+    private static final class Cell {
+
+        private final LogHistogram miles = new LogHistogram();
+        private final LogHistogram durations = new LogHistogram();
+
+        void merge(Cell other) {
+            miles.merge(other.miles);
+            durations.merge(other.durations);
+        }
+    }
+
+    // Values added and taken away by one write, collected without the lock and applied at once with apply
+    // A CSV import or a bulk delete fills one while its rows stream by, its size depends on the months touched only
+
+    public static final class Changes {
+
+        private final Map<Integer, Cell> cells = new HashMap<>();
+        private long runs;
+
+        public void add(Run run) {
+            add(run.getLocation(), run.getStartedOn(), run.getCompletedOn(), run.getMiles());
+        }
+
+        public void remove(Run run) {
+            remove(run.getLocation(), run.getStartedOn(), run.getCompletedOn(), run.getMiles());
+        }
+
+        public void add(Location location, LocalDateTime startedOn, LocalDateTime completedOn, int miles) {
+            record(location, startedOn, completedOn, miles, 1);
+        }
+
+        public void remove(Location location, LocalDateTime startedOn, LocalDateTime completedOn, int miles) {
+            record(location, startedOn, completedOn, miles, -1);
+        }
+
+        // values already counted by the database (RunBulkDeleter) : count runs of the location and month with these
+        // miles, or with this duration. The two histograms of a cell are independent, so they are taken away apart
+
+        public void removeMiles(Location location, YearMonth month, int miles, long count) {
+            cells.computeIfAbsent(key(location, month), k -> new Cell()).miles.add(miles, -count);
+            runs -= count;
+        }
+
+        public void removeDurations(Location location, YearMonth month, long seconds, long count) {
+            cells.computeIfAbsent(key(location, month), k -> new Cell()).durations.add(seconds, -count);
+        }
+
+        private void record(Location location, LocalDateTime startedOn, LocalDateTime completedOn, int miles, int count) {
+            Cell cell = cells.computeIfAbsent(key(location, YearMonth.from(startedOn)), k -> new Cell());
+            cell.miles.add(miles, count);
+            // whole seconds of both ends, like run_duration_seconds (V11 migration)
+            cell.durations.add(completedOn.toEpochSecond(ZoneOffset.UTC) - startedOn.toEpochSecond(ZoneOffset.UTC), count);
+            runs += count;
+        }
+
+        private static int key(Location location, YearMonth month) {
+            return month(month) * LOCATIONS.length + location.ordinal();
+        }
+
+        private static int month(YearMonth month) {
+            return month.getYear() * 12 + month.getMonthValue() - 1;
+        }
+    }
+}
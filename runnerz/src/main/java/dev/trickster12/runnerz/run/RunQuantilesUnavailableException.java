@@ -0,0 +1,14 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class RunQuantilesUnavailableException extends RuntimeException{
+
+
+    public RunQuantilesUnavailableException(boolean enabled){
+        super(enabled ? "Run percentiles are still loading"
+                : "Run percentiles are disabled (runnerz.runs.quantiles.enabled)");
+    }
+}
@@ -0,0 +1,95 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Filter + aggregate queries over RunColumns split across cores with fork/join
+// The slots are cut in halves until a piece holds at most parallel-threshold runs, each piece is scanned into its own
+// RunScan.Groups and the halves are merged on the way back. A store of at most parallel-threshold runs is scanned
+// on the calling thread : below that, handing the work to other threads costs more than it saves
+// A pool of its own (runnerz.runs.query.parallelism, all cores by default) keeps these scans off the common pool
+// The read lock of RunColumns is held by the calling thread while the pool works, see RunColumns.read
+@Component
+public class RunQueryEngine implements DisposableBean {
+
+    private final RunColumns runColumns;
+    private final ForkJoinPool pool;
+    private final int parallelThreshold;
+
+    public RunQueryEngine(RunColumns runColumns,
+                          @Value("${runnerz.runs.query.parallelism:0}") int parallelism,
+                          @Value("${runnerz.runs.query.parallel-threshold:100000}") int parallelThreshold) {
+        this.runColumns = runColumns;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.parallelThreshold = Math.max(1, parallelThreshold);
+    }
+
+    public RunTotals totals(RunFilter filter) {
+        return execute(RunScan.totals(filter)).totals();
+    }
+
+    public List<RunLocationStats> byLocation(RunFilter filter) {
+        return execute(RunScan.byLocation(filter)).locations();
+    }
+
+    public List<RunMilesBucket> milesHistogram(RunFilter filter, int width) {
+        return execute(RunScan.milesHistogram(filter, width)).milesHistogram(width);
+    }
+
+    public List<RunDurationBucket> durations(RunFilter filter, RunStatsBucket bucket) {
+        RunScan scan = RunScan.byPeriod(filter, bucket);
+        return execute(scan).periods(scan);
+    }
+
+    public int parallelism() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdown();
+    }
+
+    private RunScan.Groups execute(RunScan scan) {
+        if (!runColumns.enabled()) {
+            throw new RunColumnsDisabledException();
+        }
+        return runColumns.read(columns -> columns.size() <= parallelThreshold
+                ? scan.scan(columns, 0, columns.size())
+                : pool.invoke(new ScanTask(scan, columns, 0, columns.size(), parallelThreshold)));
+    }
+
+    private static final class ScanTask extends RecursiveTask<RunScan.Groups> {
+
+        private final RunScan scan;
+        private final RunColumns.Columns columns;
+        private final int from;
+        private final int to;
+        private final int threshold;
+
+        ScanTask(RunScan scan, RunColumns.Columns columns, int from, int to, int threshold) {
+            this.scan = scan;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected RunScan.Groups compute() {
+            if (to - from <= threshold) {
+                return scan.scan(columns, from, to);
+            }
+            int middle = (from + to) >>> 1;
+            ScanTask left = new ScanTask(scan, columns, from, middle, threshold);
+            left.fork();
+            RunScan.Groups right = new ScanTask(scan, columns, middle, to, threshold).compute();
+            return left.join().merge(right);
+        }
+    }
+}
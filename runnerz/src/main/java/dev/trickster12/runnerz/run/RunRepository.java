@@ -1,15 +1,22 @@
 package dev.trickster12.runnerz.run;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface RunRepository extends JpaRepository<Run, Integer> {
+public interface RunRepository extends JpaRepository<Run, Integer>, RunWriteRepository {
 
 
     List<Run> findByMiles(Integer miles);
@@ -26,5 +33,127 @@ public interface RunRepository extends JpaRepository<Run, Integer> {
     @Query("SELECT r FROM Run r WHERE r.title LIKE %:pattern%")
     List<Run> findByPattern(@Param("pattern") String pattern);
 
+    // By id, the month of the run is read from run_id (V12 migration) first : the scalar subquery runs before any
+    // partition is read, PostgreSQL reads the partition of that month only instead of the index of every month
+
+    @Query(value = """
+            SELECT id, title, started_on, completed_on, miles, location, version FROM run
+            WHERE id = :id AND started_on = (SELECT started_on FROM run_id WHERE id = :id)""", nativeQuery = true)
+    Optional<Run> findById(@Param("id") Integer id);
+
+    @Query(value = "SELECT EXISTS (SELECT 1 FROM run_id WHERE id = :id)", nativeQuery = true)
+    boolean existsById(@Param("id") Integer id);
+
+    // Keyset pagination : every page is ordered by (startedOn, id) and the next page starts right after the last row
+    // of the previous one, so deep pages cost the same as the first one (no OFFSET to skip)
+    // The row comparison (startedOn, id) > (?, ?) is a range condition on the (..., started_on, id) indexes
+
+    @Query("SELECT r FROM Run r ORDER BY r.startedOn, r.id")
+    List<Run> findPage(Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE (r.startedOn, r.id) > (:startedOn, :id) ORDER BY r.startedOn, r.id")
+    List<Run> findPageAfter(@Param("startedOn") LocalDateTime startedOn, @Param("id") Integer id, Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE r.location = :location ORDER BY r.startedOn, r.id")
+    List<Run> findPageByLocation(@Param("location") Location location, Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE r.location = :location AND (r.startedOn, r.id) > (:startedOn, :id) ORDER BY r.startedOn, r.id")
+    List<Run> findPageByLocationAfter(@Param("location") Location location, @Param("startedOn") LocalDateTime startedOn, @Param("id") Integer id, Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE r.title = :title ORDER BY r.startedOn, r.id")
+    List<Run> findPageByTitle(@Param("title") String title, Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE r.title = :title AND (r.startedOn, r.id) > (:startedOn, :id) ORDER BY r.startedOn, r.id")
+    List<Run> findPageByTitleAfter(@Param("title") String title, @Param("startedOn") LocalDateTime startedOn, @Param("id") Integer id, Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE r.miles = :miles ORDER BY r.startedOn, r.id")
+    List<Run> findPageByMiles(@Param("miles") Integer miles, Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE r.miles = :miles AND (r.startedOn, r.id) > (:startedOn, :id) ORDER BY r.startedOn, r.id")
+    List<Run> findPageByMilesAfter(@Param("miles") Integer miles, @Param("startedOn") LocalDateTime startedOn, @Param("id") Integer id, Limit limit);
+
+    // Runs started in [from, to) : run is partitioned by month on started_on (V7 migration), so only the partitions
+    // of the months in the range are read, through their (started_on, id) index
+
+    @Query("SELECT r FROM Run r WHERE r.startedOn >= :from AND r.startedOn < :to ORDER BY r.startedOn, r.id")
+    List<Run> findPageByStartedOnRange(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to, Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE r.startedOn >= :from AND r.startedOn < :to AND (r.startedOn, r.id) > (:startedOn, :id) ORDER BY r.startedOn, r.id")
+    List<Run> findPageByStartedOnRangeAfter(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to, @Param("startedOn") LocalDateTime startedOn, @Param("id") Integer id, Limit limit);
+
+    // Substring search, served by the trigram index on title (V4 migration)
+    // % and _ typed by the user are escaped, they match literally like in findByTitleContaining
+
+    @Query("SELECT r FROM Run r WHERE r.title LIKE %:#{escape(#keyword)}% ESCAPE :#{escapeCharacter()} ORDER BY r.startedOn, r.id")
+    List<Run> findPageByTitleContaining(@Param("keyword") String keyword, Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE r.title LIKE %:#{escape(#keyword)}% ESCAPE :#{escapeCharacter()} AND (r.startedOn, r.id) > (:startedOn, :id) ORDER BY r.startedOn, r.id")
+    List<Run> findPageByTitleContainingAfter(@Param("keyword") String keyword, @Param("startedOn") LocalDateTime startedOn, @Param("id") Integer id, Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE r.title ILIKE %:#{escape(#keyword)}% ESCAPE :#{escapeCharacter()} ORDER BY r.startedOn, r.id")
+    List<Run> findPageByTitleContainingIgnoreCase(@Param("keyword") String keyword, Limit limit);
+
+    @Query("SELECT r FROM Run r WHERE r.title ILIKE %:#{escape(#keyword)}% ESCAPE :#{escapeCharacter()} AND (r.startedOn, r.id) > (:startedOn, :id) ORDER BY r.startedOn, r.id")
+    List<Run> findPageByTitleContainingIgnoreCaseAfter(@Param("keyword") String keyword, @Param("startedOn") LocalDateTime startedOn, @Param("id") Integer id, Limit limit);
+
+    // Export streams : rows are pulled from a server-side cursor in chunks of the fetch size instead of being
+    // materialized in one list. They must be consumed inside a transaction and closed afterwards
+
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT r FROM Run r ORDER BY r.id")
+    Stream<Run> streamAll();
+
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT r FROM Run r WHERE r.location = :location ORDER BY r.id")
+    Stream<Run> streamByLocation(@Param("location") Location location);
+
+    // Aggregates behind /api/runs/stats : the GROUP BY runs in PostgreSQL and only the aggregated rows come back
+    // Every query is restricted to runs started in [from, to), so only the partitions of that period are read
+    // The duration of a run is the seconds between startedOn and completedOn truncated to the second, like
+    // run_duration_seconds (V11 migration) behind the daily rollups and the in-memory stores
+
+    @Query("SELECT new dev.trickster12.runnerz.run.RunTotals(COUNT(r), COALESCE(SUM(r.miles), 0), AVG(r.miles), MAX(r.miles), " +
+            "COALESCE(SUM((truncate(r.completedOn, second) - truncate(r.startedOn, second)) by second), 0)) " +
+            "FROM Run r WHERE r.startedOn >= :from AND r.startedOn < :to")
+    RunTotals totals(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("SELECT new dev.trickster12.runnerz.run.RunLocationStats(r.location, COUNT(r), SUM(r.miles), AVG(r.miles), MAX(r.miles)) " +
+            "FROM Run r WHERE r.startedOn >= :from AND r.startedOn < :to GROUP BY r.location ORDER BY r.location")
+    List<RunLocationStats> statsByLocation(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("SELECT new dev.trickster12.runnerz.run.RunDurationBucket(truncate(r.startedOn, day), COUNT(r), SUM(r.miles), " +
+            "SUM((truncate(r.completedOn, second) - truncate(r.startedOn, second)) by second)) " +
+            "FROM Run r WHERE r.startedOn >= :from AND r.startedOn < :to " +
+            "GROUP BY truncate(r.startedOn, day) ORDER BY truncate(r.startedOn, day)")
+    List<RunDurationBucket> durationsByDay(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("SELECT new dev.trickster12.runnerz.run.RunDurationBucket(truncate(r.startedOn, week), COUNT(r), SUM(r.miles), " +
+            "SUM((truncate(r.completedOn, second) - truncate(r.startedOn, second)) by second)) " +
+            "FROM Run r WHERE r.startedOn >= :from AND r.startedOn < :to " +
+            "GROUP BY truncate(r.startedOn, week) ORDER BY truncate(r.startedOn, week)")
+    List<RunDurationBucket> durationsByWeek(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    @Query("SELECT new dev.trickster12.runnerz.run.RunDurationBucket(truncate(r.startedOn, month), COUNT(r), SUM(r.miles), " +
+            "SUM((truncate(r.completedOn, second) - truncate(r.startedOn, second)) by second)) " +
+            "FROM Run r WHERE r.startedOn >= :from AND r.startedOn < :to " +
+            "GROUP BY truncate(r.startedOn, month) ORDER BY truncate(r.startedOn, month)")
+    List<RunDurationBucket> durationsByMonth(@Param("from") LocalDateTime from, @Param("to") LocalDateTime to);
+
+    // Distinct titles with the number of runs carrying each, read once at startup by RunTitleIndex
+    // GROUP BY title is answered by an index-only scan of the (title, started_on, id) index
+
+    @QueryHints({
+            @QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = AvailableHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT new dev.trickster12.runnerz.run.TitleSuggestion(r.title, COUNT(r)) FROM Run r GROUP BY r.title")
+    Stream<TitleSuggestion> streamTitleCounts();
+
 
 }
@@ -0,0 +1,12 @@
+package dev.trickster12.runnerz.run;
+
+import java.time.LocalDate;
+
+// One (day, location) where run_daily_rollup disagrees with the run table, see RunRollups.check
+// expected* is computed from run, actual* read from the rollup, null when the row is missing on that side
+public record RunRollupDrift(LocalDate day, Location location,
+                             Long expectedRuns, Long actualRuns,
+                             Long expectedMiles, Long actualMiles,
+                             Long expectedDurationSeconds, Long actualDurationSeconds,
+                             Integer expectedMaxMiles, Integer actualMaxMiles) {
+}
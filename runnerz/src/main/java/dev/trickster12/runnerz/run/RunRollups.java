@@ -0,0 +1,94 @@
+package dev.trickster12.runnerz.run;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.List;
+
+// Stats of whole days read from run_daily_rollup (V8 migration) : one row per day and location, kept exact by the
+// triggers of run in the transaction of every write, so a year of stats reads a few hundred rows whatever the
+// number of runs. The periods of these queries are [from, to) in days
+// rebuild recomputes the table from run, check lists the rows where it drifted from run (both scan every run)
+@Component
+public class RunRollups {
+
+    private static final Logger log = LoggerFactory.getLogger(RunRollups.class);
+
+    private final JdbcClient jdbcClient;
+
+    public RunRollups(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    public RunTotals totals(LocalDate from, LocalDate to) {
+        return jdbcClient.sql("""
+                        SELECT COALESCE(SUM(runs), 0) AS runs, COALESCE(SUM(miles), 0) AS total_miles,
+                               SUM(miles)::float8 / NULLIF(SUM(runs), 0) AS average_miles, MAX(max_miles) AS longest_run,
+                               COALESCE(SUM(duration_seconds), 0) AS duration_seconds
+                        FROM run_daily_rollup WHERE day >= :from AND day < :to""")
+                .param("from", from)
+                .param("to", to)
+                .query(RunTotals.class)
+                .single();
+    }
+
+    public List<RunLocationStats> byLocation(LocalDate from, LocalDate to) {
+        return jdbcClient.sql("""
+                        SELECT location, SUM(runs) AS runs, SUM(miles) AS total_miles,
+                               SUM(miles)::float8 / SUM(runs) AS average_miles, MAX(max_miles) AS longest_run
+                        FROM run_daily_rollup WHERE day >= :from AND day < :to
+                        GROUP BY location ORDER BY location""")
+                .param("from", from)
+                .param("to", to)
+                .query(RunLocationStats.class)
+                .list();
+    }
+
+    // weeks start on Monday, like date_trunc('week') in the queries of RunRepository
+
+    public List<RunDurationBucket> durations(RunStatsBucket bucket, LocalDate from, LocalDate to) {
+        return jdbcClient.sql("""
+                        SELECT date_trunc(:unit, day::timestamp) AS start, SUM(runs) AS runs, SUM(miles) AS total_miles,
+                               SUM(duration_seconds) AS duration_seconds
+                        FROM run_daily_rollup WHERE day >= :from AND day < :to
+                        GROUP BY 1 ORDER BY 1""")
+                .param("unit", bucket.name().toLowerCase())
+                .param("from", from)
+                .param("to", to)
+                .query(RunDurationBucket.class)
+                .list();
+    }
+
+    // recomputes the rollup from run, writes to run wait until it is done, returns the number of (day, location) rows
+
+    public long rebuild() {
+        long groups = jdbcClient.sql("SELECT run_rollup_rebuild()")
+                .query(Long.class)
+                .single();
+        log.info("Rebuilt run_daily_rollup : {} row(s)", groups);
+        return groups;
+    }
+
+    // the (day, location) rows where the rollup and run disagree, empty when the rollup is exact
+    // a single statement reads both tables in the same snapshot, a write committed meanwhile is no drift
+
+    public List<RunRollupDrift> check() {
+        return jdbcClient.sql("SELECT * FROM run_rollup_drift ORDER BY day, location")
+                .query(RunRollupDrift.class)
+                .list();
+    }
+
+    // weekly by default, only reports : a drift means something wrote to run behind the triggers, rebuild fixes it
+
+    @Scheduled(cron = "${runnerz.runs.rollups.check-cron:0 0 4 * * SUN}")
+    public void checkAndReport() {
+        List<RunRollupDrift> drifts = check();
+        if (!drifts.isEmpty()) {
+            log.warn("run_daily_rollup differs from run on {} (day, location) row(s), first one {}", drifts.size(), drifts.get(0));
+        }
+    }
+}
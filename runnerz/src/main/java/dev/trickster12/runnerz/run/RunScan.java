@@ -0,0 +1,210 @@
+package dev.trickster12.runnerz.run;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// One filter + group + aggregate query over RunColumns, compiled to primitive bounds
+// scan reads the slots [from, to) of the columns into Groups : count, miles, duration and longest run per group key.
+// Groups of different slot ranges merge, which is how RunQueryEngine spreads a scan over several threads
+// Group keys : the location ordinal, miles / width, days since 1970-01-01, Monday-based weeks, or year * 12 + month
+final class RunScan {
+
+    enum Grouping {
+        NONE, LOCATION, MILES, DAY, WEEK, MONTH
+    }
+
+    private static final long SECONDS_PER_DAY = 86_400;
+    private static final Location[] LOCATIONS = Location.values();
+
+    private final Grouping grouping;
+    private final int width;
+    private final int location;
+    private final int minMiles;
+    private final int maxMiles;
+    private final long from;
+    private final long to;
+
+    private RunScan(RunFilter filter, Grouping grouping, int width) {
+        this.grouping = grouping;
+        this.width = width;
+        this.location = filter.location() == null ? -1 : filter.location().ordinal();
+        this.minMiles = filter.minMiles() == null ? Integer.MIN_VALUE : filter.minMiles();
+        this.maxMiles = filter.maxMiles() == null ? Integer.MAX_VALUE : filter.maxMiles();
+        this.from = filter.from() == null ? Long.MIN_VALUE : RunColumns.epochSecond(filter.from());
+        this.to = filter.to() == null ? Long.MAX_VALUE : RunColumns.epochSecond(filter.to());
+    }
+
+    static RunScan totals(RunFilter filter) {
+        return new RunScan(filter, Grouping.NONE, 1);
+    }
+
+    static RunScan byLocation(RunFilter filter) {
+        return new RunScan(filter, Grouping.LOCATION, 1);
+    }
+
+    static RunScan milesHistogram(RunFilter filter, int width) {
+        return new RunScan(filter, Grouping.MILES, width);
+    }
+
+    static RunScan byPeriod(RunFilter filter, RunStatsBucket bucket) {
+        return new RunScan(filter, switch (bucket) {
+            case DAY -> Grouping.DAY;
+            case WEEK -> Grouping.WEEK;
+            case MONTH -> Grouping.MONTH;
+        }, 1);
+    }
+
+    Groups scan(RunColumns.Columns columns, int fromSlot, int toSlot) {
+        int[] miles = columns.miles();
+        long[] startedOn = columns.startedOn();
+        long[] completedOn = columns.completedOn();
+        byte[] locations = columns.locations();
+        Groups groups = new Groups();
+        for (int i = fromSlot; i < toSlot; i++) {
+            int m = miles[i];
+            long start = startedOn[i];
+            if (m < minMiles || m > maxMiles || start < from || start >= to
+                    || (location >= 0 && locations[i] != location)) {
+                continue;
+            }
+            int key = switch (grouping) {
+                case NONE -> 0;
+                case LOCATION -> locations[i];
+                case MILES -> Math.floorDiv(m, width);
+                case DAY -> (int) Math.floorDiv(start, SECONDS_PER_DAY);
+                // 1970-01-01 was a Thursday, 3 days after a Monday
+                case WEEK -> (int) Math.floorDiv(Math.floorDiv(start, SECONDS_PER_DAY) + 3, 7);
+                case MONTH -> month(Math.floorDiv(start, SECONDS_PER_DAY));
+            };
+            groups.add(key, m, completedOn[i] - start);
+        }
+        return groups;
+    }
+
+    // year * 12 + month - 1 of a day counted from 1970-01-01, integer arithmetic only (H. Hinnant's civil_from_days)
+
+    static int month(long epochDay) {
+        long z = epochDay + 719_468;
+        long era = Math.floorDiv(z, 146_097);
+        long dayOfEra = z - era * 146_097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1_460 + dayOfEra / 36_524 - dayOfEra / 146_096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;  // March is 0
+        long month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+        return (int) (year * 12 + month - 1);
+    }
+
+    LocalDateTime periodStart(int key) {
+        return switch (grouping) {
+            case DAY -> LocalDate.ofEpochDay(key).atStartOfDay();
+            case WEEK -> LocalDate.ofEpochDay(7L * key - 3).atStartOfDay();
+            case MONTH -> LocalDate.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1, 1).atStartOfDay();
+            default -> throw new IllegalStateException("Not grouped by period: " + grouping);
+        };
+    }
+
+    // Aggregates per group key, in parallel arrays indexed through an IntIntHashMap. Consecutive runs usually fall in
+    // the same group (no grouping at all, or runs stored in time order) : the last group is checked before the map
+
+    static final class Groups {
+
+        private final IntIntHashMap index = new IntIntHashMap(16);
+        private int size;
+        private int[] keys = new int[16];
+        private long[] runs = new long[16];
+        private long[] miles = new long[16];
+        private long[] durations = new long[16];
+        private int[] longest = new int[16];
+        private int lastKey;
+        private int lastGroup = -1;
+
+        void add(int key, int runMiles, long duration) {
+            int group = lastGroup >= 0 && lastKey == key ? lastGroup : group(key);
+            runs[group]++;
+            miles[group] += runMiles;
+            durations[group] += duration;
+            longest[group] = Math.max(longest[group], runMiles);
+        }
+
+        Groups merge(Groups other) {
+            for (int g = 0; g < other.size; g++) {
+                int group = group(other.keys[g]);
+                runs[group] += other.runs[g];
+                miles[group] += other.miles[g];
+                durations[group] += other.durations[g];
+                longest[group] = Math.max(longest[group], other.longest[g]);
+            }
+            return this;
+        }
+
+        private int group(int key) {
+            int group = index.get(key);
+            if (group == IntIntHashMap.MISSING) {
+                if (size == keys.length) {
+                    int capacity = size * 2;
+                    keys = Arrays.copyOf(keys, capacity);
+                    runs = Arrays.copyOf(runs, capacity);
+                    miles = Arrays.copyOf(miles, capacity);
+                    durations = Arrays.copyOf(durations, capacity);
+                    longest = Arrays.copyOf(longest, capacity);
+                }
+                group = size++;
+                keys[group] = key;
+                longest[group] = Integer.MIN_VALUE;
+                index.put(key, group);
+            }
+            lastKey = key;
+            lastGroup = group;
+            return group;
+        }
+
+        // groups in key order
+        private int[] sorted() {
+            Integer[] order = new Integer[size];
+            for (int g = 0; g < size; g++) {
+                order[g] = g;
+            }
+            Arrays.sort(order, (a, b) -> Integer.compare(keys[a], keys[b]));
+            int[] groups = new int[size];
+            for (int g = 0; g < size; g++) {
+                groups[g] = order[g];
+            }
+            return groups;
+        }
+
+        RunTotals totals() {
+            if (size == 0) {
+                return new RunTotals(0, 0, null, null, 0);
+            }
+            return new RunTotals(runs[0], miles[0], (double) miles[0] / runs[0], longest[0], durations[0]);
+        }
+
+        List<RunLocationStats> locations() {
+            List<RunLocationStats> stats = new ArrayList<>();
+            for (int g : sorted()) {
+                stats.add(new RunLocationStats(LOCATIONS[keys[g]], runs[g], miles[g], (double) miles[g] / runs[g], longest[g]));
+            }
+            return stats;
+        }
+
+        List<RunMilesBucket> milesHistogram(int width) {
+            List<RunMilesBucket> buckets = new ArrayList<>();
+            for (int g : sorted()) {
+                buckets.add(new RunMilesBucket(keys[g] * width, keys[g] * width + width, runs[g], durations[g]));
+            }
+            return buckets;
+        }
+
+        List<RunDurationBucket> periods(RunScan scan) {
+            List<RunDurationBucket> buckets = new ArrayList<>();
+            for (int g : sorted()) {
+                buckets.add(new RunDurationBucket(scan.periodStart(keys[g]), runs[g], miles[g], durations[g]));
+            }
+            return buckets;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Ranked full-text search over run titles
+// The query is parsed with websearch_to_tsquery ("morning run", -treadmill, trail or road) and matched against the
+// stemmed title_search column (V5 migration, GIN index in V6). Hits come best first and are keyset paginated on
+// (rank DESC, id), the rank being recomputed identically on every page for the same query
+@Component
+public class RunSearch {
+
+    private static final String SEARCH_SQL = """
+            SELECT * FROM (
+                SELECT r.id, r.title, r.started_on, r.completed_on, r.miles, r.location, r.version,
+                       ts_rank(r.title_search, q) AS rank
+                FROM run r, websearch_to_tsquery('english', :query) q
+                WHERE r.title_search @@ q
+            ) hits
+            """;
+
+    private static final RowMapper<Run> RUN_MAPPER = new BeanPropertyRowMapper<>(Run.class);
+
+    private final JdbcClient jdbcClient;
+
+    public RunSearch(JdbcClient jdbcClient) {
+        this.jdbcClient = jdbcClient;
+    }
+
+    // one page of hits, nextCursor is null on the last page
+
+    public record Page(List<Run> runs, String nextCursor) {
+    }
+
+    public Page search(String query, RunSearchCursor after, int pageSize) {
+        JdbcClient.StatementSpec statement;
+        if (after == null) {
+            statement = jdbcClient.sql(SEARCH_SQL + "ORDER BY rank DESC, id LIMIT :limit");
+        } else {
+            statement = jdbcClient.sql(SEARCH_SQL
+                            + "WHERE rank < CAST(:rank AS real) OR (rank = CAST(:rank AS real) AND id > :id) "
+                            + "ORDER BY rank DESC, id LIMIT :limit")
+                    .param("rank", after.rank())
+                    .param("id", after.id());
+        }
+        // one extra row tells whether another page exists
+        List<Hit> hits = statement
+                .param("query", query)
+                .param("limit", pageSize + 1)
+                .query((rs, rowNum) -> new Hit(RUN_MAPPER.mapRow(rs, rowNum), rs.getFloat("rank")))
+                .list();
+
+        List<Run> runs = new ArrayList<>(Math.min(hits.size(), pageSize));
+        for (int i = 0; i < hits.size() && i < pageSize; i++) {
+            runs.add(hits.get(i).run());
+        }
+        String nextCursor = null;
+        if (hits.size() > pageSize) {
+            Hit last = hits.get(pageSize - 1);
+            nextCursor = new RunSearchCursor(last.rank(), last.run().getId()).encode();
+        }
+        return new Page(runs, nextCursor);
+    }
+
+    private record Hit(Run run, float rank) {
+    }
+}
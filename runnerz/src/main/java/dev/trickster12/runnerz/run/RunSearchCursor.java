@@ -0,0 +1,28 @@
+package dev.trickster12.runnerz.run;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Position of the last hit of a search page, hits are ordered by (rank DESC, id)
+// rank is the exact real returned by ts_rank, Float.toString gives it back without loss
+public record RunSearchCursor(float rank, Integer id) {
+
+    public String encode() {
+        String raw = rank + "," + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static RunSearchCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf(',');
+            if (separator < 0) {
+                throw new InvalidCursorException();
+            }
+            return new RunSearchCursor(Float.parseFloat(raw.substring(0, separator)),
+                    Integer.valueOf(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException();
+        }
+    }
+}
@@ -0,0 +1,412 @@
+package dev.trickster12.runnerz.run;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// One immutable file of archived runs (see RunArchive), written once and then only read through a memory mapping
+//
+// Layout : [block]... [index] [footer]
+// - rows are sorted by id and cut in blocks of BLOCK_ROWS, each block is deflated on its own
+// - inside a block the rows are stored column by column, every column encoded for what it holds :
+//   ids as varint deltas, started_on as zig-zag varint deltas of epoch microseconds, the duration instead of
+//   completed_on, miles and version as varints, location as one byte, titles as a block dictionary + references
+// - the index has one fixed size entry per block (id and started_on bounds, position) : it is the sparse id index,
+//   a lookup binary searches it and inflates a single block ; range reads skip the blocks outside the range
+// - the fixed size footer at the end locates the index, so the file is written in one pass
+final class RunSegment {
+
+    static final int BLOCK_ROWS = 4096;
+
+    private static final long MAGIC = 0x52554E5345473031L;  // "RUNSEG01"
+    private static final int INDEX_ENTRY_SIZE = 4 + 4 + 8 + 8 + 8 + 4 + 4 + 4;
+    private static final int FOOTER_SIZE = 8 + 8 + 4 + 4 + 8 + 8;
+    private static final Location[] LOCATIONS = Location.values();
+
+    private final Path path;
+    private final long sequence;
+    private final MappedByteBuffer data;
+    private final int rows;
+    private final long minStartedOn;
+    private final long maxStartedOn;
+    // sparse index, one slot per block
+    private final int[] firstIds;
+    private final int[] lastIds;
+    private final long[] blockMinStartedOn;
+    private final long[] blockMaxStartedOn;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final int[] rawLengths;
+
+    private RunSegment(Path path, long sequence, MappedByteBuffer data) {
+        this.path = path;
+        this.sequence = sequence;
+        this.data = data;
+        ByteBuffer footer = data.duplicate().order(ByteOrder.BIG_ENDIAN).position(data.capacity() - FOOTER_SIZE);
+        if (footer.getLong() != MAGIC) {
+            throw new IllegalStateException("Not a run segment: " + path);
+        }
+        long indexOffset = footer.getLong();
+        this.rows = footer.getInt();
+        int blocks = footer.getInt();
+        this.minStartedOn = footer.getLong();
+        this.maxStartedOn = footer.getLong();
+
+        this.firstIds = new int[blocks];
+        this.lastIds = new int[blocks];
+        this.blockMinStartedOn = new long[blocks];
+        this.blockMaxStartedOn = new long[blocks];
+        this.offsets = new long[blocks];
+        this.lengths = new int[blocks];
+        this.rawLengths = new int[blocks];
+        ByteBuffer index = data.duplicate().position((int) indexOffset);
+        for (int i = 0; i < blocks; i++) {
+            firstIds[i] = index.getInt();
+            lastIds[i] = index.getInt();
+            blockMinStartedOn[i] = index.getLong();
+            blockMaxStartedOn[i] = index.getLong();
+            offsets[i] = index.getLong();
+            lengths[i] = index.getInt();
+            rawLengths[i] = index.getInt();
+            index.getInt();  // rows of the block, implied by the block itself
+        }
+    }
+
+    static RunSegment open(Path path, long sequence) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping stays valid once the channel is closed
+            return new RunSegment(path, sequence, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open run segment " + path, e);
+        }
+    }
+
+    // writes runs to a new file and forces it to disk, runs must have an id
+
+    static void write(Path path, List<Run> runs) throws IOException {
+        List<Run> sorted = new ArrayList<>(runs);
+        sorted.sort(Comparator.comparing(Run::getId));
+        int blocks = (sorted.size() + BLOCK_ROWS - 1) / BLOCK_ROWS;
+        ByteBuffer index = ByteBuffer.allocate(blocks * INDEX_ENTRY_SIZE);
+        long minStartedOn = Long.MAX_VALUE;
+        long maxStartedOn = Long.MIN_VALUE;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long offset = 0;
+            Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+            try {
+                for (int from = 0; from < sorted.size(); from += BLOCK_ROWS) {
+                    List<Run> block = sorted.subList(from, Math.min(from + BLOCK_ROWS, sorted.size()));
+                    byte[] raw = encode(block);
+                    byte[] compressed = deflate(deflater, raw);
+                    long blockMin = Long.MAX_VALUE;
+                    long blockMax = Long.MIN_VALUE;
+                    for (Run run : block) {
+                        long startedOn = micros(run.getStartedOn());
+                        blockMin = Math.min(blockMin, startedOn);
+                        blockMax = Math.max(blockMax, startedOn);
+                    }
+                    minStartedOn = Math.min(minStartedOn, blockMin);
+                    maxStartedOn = Math.max(maxStartedOn, blockMax);
+                    index.putInt(block.get(0).getId())
+                            .putInt(block.get(block.size() - 1).getId())
+                            .putLong(blockMin)
+                            .putLong(blockMax)
+                            .putLong(offset)
+                            .putInt(compressed.length)
+                            .putInt(raw.length)
+                            .putInt(block.size());
+                    writeFully(channel, ByteBuffer.wrap(compressed));
+                    offset += compressed.length;
+                }
+            } finally {
+                deflater.end();
+            }
+            writeFully(channel, index.flip());
+            ByteBuffer footer = ByteBuffer.allocate(FOOTER_SIZE)
+                    .putLong(MAGIC)
+                    .putLong(offset)
+                    .putInt(sorted.size())
+                    .putInt(blocks)
+                    .putLong(minStartedOn)
+                    .putLong(maxStartedOn);
+            writeFully(channel, footer.flip());
+            channel.force(true);
+        }
+    }
+
+    Path path() {
+        return path;
+    }
+
+    long sequence() {
+        return sequence;
+    }
+
+    int rows() {
+        return rows;
+    }
+
+    Optional<Run> findById(int id) {
+        int low = 0;
+        int high = firstIds.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lastIds[mid] < id) {
+                low = mid + 1;
+            } else if (firstIds[mid] > id) {
+                high = mid - 1;
+            } else {
+                Block block = block(mid);
+                int row = Arrays.binarySearch(block.ids, id);
+                return row < 0 ? Optional.empty() : Optional.of(block.run(row));
+            }
+        }
+        return Optional.empty();
+    }
+
+    // the ids of every block, each array sorted
+
+    void forEachIdBlock(Consumer<int[]> action) {
+        for (int i = 0; i < firstIds.length; i++) {
+            action.accept(block(i).ids);
+        }
+    }
+
+    // every run started in [from, to), in no particular order
+
+    void forEachInRange(LocalDateTime from, LocalDateTime to, Consumer<Run> action) {
+        long lower = micros(from);
+        long upper = micros(to);
+        if (rows == 0 || maxStartedOn < lower || minStartedOn >= upper) {
+            return;
+        }
+        for (int i = 0; i < firstIds.length; i++) {
+            if (blockMaxStartedOn[i] < lower || blockMinStartedOn[i] >= upper) {
+                continue;
+            }
+            Block block = block(i);
+            for (int row = 0; row < block.ids.length; row++) {
+                if (block.startedOn[row] >= lower && block.startedOn[row] < upper) {
+                    action.accept(block.run(row));
+                }
+            }
+        }
+    }
+
+    private Block block(int i) {
+        ByteBuffer compressed = data.slice((int) offsets[i], lengths[i]);
+        byte[] raw = new byte[rawLengths[i]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            int read = 0;
+            while (read < raw.length && !inflater.finished()) {
+                read += inflater.inflate(raw, read, raw.length - read);
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupted block " + i + " in " + path, e);
+        } finally {
+            inflater.end();
+        }
+        return Block.decode(raw);
+    }
+
+    // one block, decoded column by column
+
+    private static final class Block {
+        int[] ids;
+        long[] startedOn;
+        long[] durations;
+        int[] miles;
+        byte[] locations;
+        int[] versions;
+        String[] dictionary;
+        int[] titles;
+
+        static Block decode(byte[] raw) {
+            Reader reader = new Reader(raw);
+            int rows = (int) reader.varLong();
+            Block block = new Block();
+            block.ids = new int[rows];
+            int id = 0;
+            for (int row = 0; row < rows; row++) {
+                id += (int) reader.varLong();
+                block.ids[row] = id;
+            }
+            block.startedOn = new long[rows];
+            long startedOn = 0;
+            for (int row = 0; row < rows; row++) {
+                startedOn += reader.zigZag();
+                block.startedOn[row] = startedOn;
+            }
+            block.durations = new long[rows];
+            for (int row = 0; row < rows; row++) {
+                block.durations[row] = reader.varLong();
+            }
+            block.miles = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                block.miles[row] = (int) reader.varLong();
+            }
+            block.locations = new byte[rows];
+            for (int row = 0; row < rows; row++) {
+                block.locations[row] = raw[reader.position++];
+            }
+            block.versions = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                block.versions[row] = (int) reader.varLong();
+            }
+            block.dictionary = new String[(int) reader.varLong()];
+            for (int i = 0; i < block.dictionary.length; i++) {
+                int length = (int) reader.varLong();
+                block.dictionary[i] = new String(raw, reader.position, length, StandardCharsets.UTF_8);
+                reader.position += length;
+            }
+            block.titles = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                block.titles[row] = (int) reader.varLong();
+            }
+            return block;
+        }
+
+        Run run(int row) {
+            Run run = new Run(dictionary[titles[row]], dateTime(startedOn[row]), dateTime(startedOn[row] + durations[row]),
+                    miles[row], LOCATIONS[locations[row]], versions[row]);
+            run.setId(ids[row]);
+            return run;
+        }
+    }
+
+    private static byte[] encode(List<Run> block) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(block.size() * 16);
+        writeVarLong(out, block.size());
+        int previousId = 0;
+        for (Run run : block) {
+            writeVarLong(out, run.getId() - previousId);
+            previousId = run.getId();
+        }
+        long previousStart = 0;
+        for (Run run : block) {
+            long startedOn = micros(run.getStartedOn());
+            writeZigZag(out, startedOn - previousStart);
+            previousStart = startedOn;
+        }
+        for (Run run : block) {
+            writeVarLong(out, micros(run.getCompletedOn()) - micros(run.getStartedOn()));
+        }
+        for (Run run : block) {
+            writeVarLong(out, run.getMiles());
+        }
+        for (Run run : block) {
+            out.write(run.getLocation().ordinal());
+        }
+        for (Run run : block) {
+            writeVarLong(out, run.getVersion());
+        }
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> titles = new ArrayList<>();
+        for (Run run : block) {
+            dictionary.computeIfAbsent(run.getTitle(), title -> {
+                titles.add(title);
+                return titles.size() - 1;
+            });
+        }
+        writeVarLong(out, titles.size());
+        for (String title : titles) {
+            byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length);
+            out.writeBytes(bytes);
+        }
+        for (Run run : block) {
+            writeVarLong(out, dictionary.get(run.getTitle()));
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2 + 64);
+        byte[] chunk = new byte[8192];
+        while (!deflater.finished()) {
+            out.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return out.toByteArray();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    // timestamps are stored as microseconds, the precision of a PostgreSQL TIMESTAMP
+
+    static long micros(LocalDateTime dateTime) {
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1_000_000L + dateTime.getNano() / 1_000;
+    }
+
+    static LocalDateTime dateTime(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeZigZag(ByteArrayOutputStream out, long value) {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long varLong() {
+            long value = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                value |= (long) (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+
+        long zigZag() {
+            long value = varLong();
+            return (value >>> 1) ^ -(value & 1);
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package dev.trickster12.runnerz.run;
+
+// Width of the buckets of GET /api/runs/stats/durations
+public enum RunStatsBucket {
+    DAY, WEEK, MONTH
+}
@@ -0,0 +1,16 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+
+// ?bucket=day|week|month : the buckets are taken in any case, anything else is still a 400
+@Component
+public class RunStatsBucketConverter implements Converter<String, RunStatsBucket> {
+
+    @Override
+    public RunStatsBucket convert(String source) {
+        return RunStatsBucket.valueOf(source.trim().toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,156 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+// Titles behind GET /api/runs/autocomplete, answered from memory so type-ahead never reaches the database
+// Loaded once at startup from the title counts of the run table, then kept current by the RunChange of every committed
+// write : each of them tells the index which titles it added and which ones it took away
+// Suggestions only take the read lock, so concurrent keystrokes never wait on each other
+@Component
+public class RunTitleIndex implements SmartInitializingSingleton {
+
+    private final RunRepository runRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final TitleTrie trie = new TitleTrie();
+
+    public RunTitleIndex(RunRepository runRepository, PlatformTransactionManager transactionManager) {
+        this.runRepository = runRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setReadOnly(true);
+    }
+
+    // called once every bean is ready but before the web server is started : no write can race the load
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        transactionTemplate.executeWithoutResult(status -> {
+            try (Stream<TitleSuggestion> titles = runRepository.streamTitleCounts()) {
+                titles.forEach(title -> add(title.title(), title.runs()));
+            }
+        });
+    }
+
+    public List<TitleSuggestion> suggest(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            return trie.suggest(prefix, limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void add(String title) {
+        add(title, 1);
+    }
+
+    public void remove(String title) {
+        add(title, -1);
+    }
+
+    // a run kept its id but may have changed its title
+
+    public void replace(String oldTitle, String newTitle) {
+        if (oldTitle != null && oldTitle.equals(newTitle)) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            trie.add(oldTitle, -1);
+            trie.add(newTitle, 1);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addAll(List<Run> runs) {
+        lock.writeLock().lock();
+        try {
+            runs.forEach(run -> trie.add(run.getTitle(), 1));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // title -> number of runs carrying it, for the paths that write many runs at once (CSV import, bulk delete)
+
+    public void addCounts(Map<String, Long> counts) {
+        lock.writeLock().lock();
+        try {
+            counts.forEach(trie::add);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeCounts(Map<String, Long> counts) {
+        lock.writeLock().lock();
+        try {
+            counts.forEach((title, runs) -> trie.add(title, -runs));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onSaved(RunChange.Saved change) {
+        addAll(change.runs());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onUpdated(RunChange.Updated change) {
+        replace(change.before().getTitle(), change.after().getTitle());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onDeleted(RunChange.Deleted change) {
+        remove(change.run().getTitle());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onBulkDeleted(RunChange.BulkDeleted change) {
+        removeCounts(change.result().titles());
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onArchived(RunChange.Archived change) {
+        Map<String, Long> titles = new HashMap<>();
+        change.runs().forEach(run -> titles.merge(run.getTitle(), 1L, Long::sum));
+        removeCounts(titles);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onImported(RunChange.Imported change) {
+        addCounts(change.titles());
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return trie.titles();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void add(String title, long delta) {
+        lock.writeLock().lock();
+        try {
+            trie.add(title, delta);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package dev.trickster12.runnerz.run;
+
+// Answer of GET /api/runs/stats : aggregates over every run of the period, averageMiles and longestRun are null
+// when the period has no run
+public record RunTotals(long runs, long totalMiles, Double averageMiles, Integer longestRun, long durationSeconds) {
+}
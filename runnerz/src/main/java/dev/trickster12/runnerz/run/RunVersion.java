@@ -0,0 +1,5 @@
+package dev.trickster12.runnerz.run;
+
+// Answer of a successful write : the version the client must send with its next update
+public record RunVersion(Integer id, Integer version) {
+}
@@ -0,0 +1,13 @@
+package dev.trickster12.runnerz.run;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class RunVersionConflictException extends RuntimeException{
+
+
+    public RunVersionConflictException(){
+        super("Run was modified by someone else");
+    }
+}
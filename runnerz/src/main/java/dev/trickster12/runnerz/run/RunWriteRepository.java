@@ -0,0 +1,18 @@
+package dev.trickster12.runnerz.run;
+
+import java.util.Optional;
+
+// Single-statement writes of RunRepository that hand back the row as it was before the statement, so whatever
+// is kept in memory next to the table (RunTitleIndex) knows what to take out without reading the row first
+// Implemented with SQL in RunWriteRepositoryImpl, JPQL has no RETURNING
+public interface RunWriteRepository {
+
+    // Optimistic update : the version check and the increment happen in the UPDATE itself
+    // empty means the id does not exist or the version is stale
+
+    Optional<Run> updateIfVersionMatches(Integer id, Run run);
+
+    // empty when the id does not exist
+
+    Optional<Run> deleteRunById(Integer id);
+}
@@ -0,0 +1,70 @@
+package dev.trickster12.runnerz.run;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Optional;
+
+// The UPDATE joins the row to itself : "old" is read from the statement snapshot, so RETURNING old.* gives the
+// values from before the SET. The version predicate makes sure the row did not change in between
+// Like @Modifying(flushAutomatically = true, clearAutomatically = true) the persistence context is flushed before
+// the statement and cleared after it, so no managed Run keeps the old values
+// Both statements read the month of the run from run_id first (V12) : only its partition is read and written
+public class RunWriteRepositoryImpl implements RunWriteRepository {
+
+    static final String UPDATE_SQL = """
+            UPDATE run SET title = :title, started_on = :startedOn, completed_on = :completedOn,
+                           miles = :miles, location = :location, version = run.version + 1
+            FROM run old
+            WHERE run.id = :id AND run.started_on = (SELECT started_on FROM run_id WHERE id = :id)
+              AND run.version = :version
+              AND old.id = run.id AND old.started_on = (SELECT started_on FROM run_id WHERE id = :id)
+            RETURNING old.id, old.title, old.started_on, old.completed_on, old.miles, old.location, old.version""";
+
+    static final String DELETE_SQL = """
+            DELETE FROM run WHERE id = :id AND started_on = (SELECT started_on FROM run_id WHERE id = :id)
+            RETURNING id, title, started_on, completed_on, miles, location, version""";
+
+    private static final RowMapper<Run> RUN_MAPPER = new BeanPropertyRowMapper<>(Run.class);
+
+    private final JdbcClient jdbcClient;
+    private final EntityManager entityManager;
+
+    public RunWriteRepositoryImpl(JdbcClient jdbcClient, EntityManager entityManager) {
+        this.jdbcClient = jdbcClient;
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    @Transactional
+    public Optional<Run> updateIfVersionMatches(Integer id, Run run) {
+        entityManager.flush();
+        Optional<Run> previous = jdbcClient.sql(UPDATE_SQL)
+                .param("id", id)
+                .param("version", run.getVersion())
+                .param("title", run.getTitle())
+                .param("startedOn", run.getStartedOn())
+                .param("completedOn", run.getCompletedOn())
+                .param("miles", run.getMiles())
+                .param("location", run.getLocation().name())
+                .query(RUN_MAPPER)
+                .optional();
+        entityManager.clear();
+        return previous;
+    }
+
+    @Override
+    @Transactional
+    public Optional<Run> deleteRunById(Integer id) {
+        entityManager.flush();
+        Optional<Run> deleted = jdbcClient.sql(DELETE_SQL)
+                .param("id", id)
+                .query(RUN_MAPPER)
+                .optional();
+        entityManager.clear();
+        return deleted;
+    }
+}
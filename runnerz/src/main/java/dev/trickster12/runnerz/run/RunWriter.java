@@ -0,0 +1,89 @@
+package dev.trickster12.runnerz.run;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+// Every write behind /api/runs. The single-run ones are here, the set-based ones stay in their own component
+// (RunBatchWriter, RunPatcher, RunBulkDeleter, RunCsvImporter). Each write publishes a RunChange in its transaction,
+// the in-memory stores follow it once committed : nothing here or in RunController updates them by hand
+@Component
+public class RunWriter {
+
+    private final RunRepository runRepository;
+    private final RunBatchWriter runBatchWriter;
+    private final RunPatcher runPatcher;
+    private final RunBulkDeleter runBulkDeleter;
+    private final RunCsvImporter runCsvImporter;
+    private final ApplicationEventPublisher events;
+
+    public RunWriter(RunRepository runRepository, RunBatchWriter runBatchWriter, RunPatcher runPatcher,
+                     RunBulkDeleter runBulkDeleter, RunCsvImporter runCsvImporter, ApplicationEventPublisher events) {
+        this.runRepository = runRepository;
+        this.runBatchWriter = runBatchWriter;
+        this.runPatcher = runPatcher;
+        this.runBulkDeleter = runBulkDeleter;
+        this.runCsvImporter = runCsvImporter;
+        this.events = events;
+    }
+
+    // a run carrying a version is merged into a copy : only the returned entity has the id
+
+    @Transactional
+    public Run create(Run run) {
+        Run saved = runRepository.save(run);
+        events.publishEvent(new RunChange.Saved(List.of(saved)));
+        return saved;
+    }
+
+    public List<Run> saveAll(List<Run> runs) {
+        return runBatchWriter.saveAll(runs);
+    }
+
+    // The row as it is now, empty when the id does not exist or the version is stale (one UPDATE, see
+    // RunWriteRepository.updateIfVersionMatches). The run given is left as the client sent it
+
+    @Transactional
+    public Optional<Run> update(Integer id, Run run) {
+        return runRepository.updateIfVersionMatches(id, run).map(before -> {
+            Run after = new Run();
+            after.setId(id);
+            after.setTitle(run.getTitle());
+            after.setStartedOn(run.getStartedOn());
+            after.setCompletedOn(run.getCompletedOn());
+            after.setMiles(run.getMiles());
+            after.setLocation(run.getLocation());
+            after.setVersion(run.getVersion() + 1);
+            events.publishEvent(new RunChange.Updated(before, after));
+            return after;
+        });
+    }
+
+    public RunPatcher.Result patch(Integer id, JsonNode patch) {
+        return runPatcher.patch(id, patch);
+    }
+
+    // the deleted row, empty when the id does not exist
+
+    @Transactional
+    public Optional<Run> delete(Integer id) {
+        Optional<Run> deleted = runRepository.deleteRunById(id);
+        deleted.ifPresent(run -> events.publishEvent(new RunChange.Deleted(run)));
+        return deleted;
+    }
+
+    public RunBulkDeleter.Result deleteAll(Location location, LocalDateTime startedBefore, Integer minMiles, Integer maxMiles) {
+        return runBulkDeleter.delete(location, startedBefore, minMiles, maxMiles);
+    }
+
+    public RunImportReport importCsv(InputStream csv) throws IOException {
+        return runCsvImporter.importCsv(csv);
+    }
+}
@@ -0,0 +1,5 @@
+package dev.trickster12.runnerz.run;
+
+// One autocomplete suggestion : a distinct run title and how many runs carry it
+public record TitleSuggestion(String title, long runs) {
+}
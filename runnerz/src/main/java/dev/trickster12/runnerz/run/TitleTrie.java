@@ -0,0 +1,233 @@
+package dev.trickster12.runnerz.run;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+// Radix tree of the distinct run titles with the number of runs carrying each of them
+// Keys are the lower-cased titles so "morn" suggests "Morning Run" ; an edge holds a whole run of characters
+// shared by its titles instead of one node per character, and a node disappears once no title goes through it
+// Every node also keeps the highest count found below it : suggestions are taken best first and only the
+// branches that can still beat what was found are opened, instead of walking the whole subtree of the prefix
+// Not thread-safe, RunTitleIndex guards it
+class TitleTrie {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    // most frequent first, a title before a subtree with the same score so it is emitted as soon as possible
+    private static final Comparator<Candidate> BEST_FIRST = Comparator.comparingLong(Candidate::score).reversed()
+            .thenComparing(Candidate::terminal, Comparator.reverseOrder());
+
+    private final Node root = new Node("");
+    private int titles;
+    private int nodes = 1;
+
+    private static final class Node {
+        String label;            // characters on the edge from the parent
+        Node[] children = NO_CHILDREN;  // sorted by the first character of their label
+        String title;            // the title as first seen, null when no title ends here
+        long count;              // runs carrying this exact title
+        long max;                // highest count of this node and everything below it
+
+        Node(String label) {
+            this.label = label;
+        }
+    }
+
+    private record Candidate(Node node, boolean terminal, long score) {
+    }
+
+    // adds delta runs to a title (negative to take runs away), a title whose count reaches 0 is removed
+
+    void add(String title, long delta) {
+        if (title == null || delta == 0) {
+            return;
+        }
+        update(root, key(title), 0, title, delta);
+    }
+
+    // at most limit titles starting with prefix (ignoring case), most frequent first
+
+    List<TitleSuggestion> suggest(String prefix, int limit) {
+        if (limit <= 0) {
+            return List.of();
+        }
+        String key = key(prefix);
+        Node node = root;
+        int from = 0;
+        while (from < key.length()) {
+            int i = indexOf(node.children, key.charAt(from));
+            if (i < 0) {
+                return List.of();
+            }
+            Node child = node.children[i];
+            int common = commonLength(child.label, key, from);
+            if (from + common == key.length()) {
+                // the prefix ends on this edge, everything below the child starts with it
+                node = child;
+                break;
+            }
+            if (common < child.label.length()) {
+                return List.of();
+            }
+            node = child;
+            from += common;
+        }
+
+        List<TitleSuggestion> suggestions = new ArrayList<>(Math.min(limit, 16));
+        PriorityQueue<Candidate> queue = new PriorityQueue<>(BEST_FIRST);
+        queue.add(new Candidate(node, false, node.max));
+        while (!queue.isEmpty() && suggestions.size() < limit) {
+            Candidate candidate = queue.poll();
+            Node next = candidate.node();
+            if (candidate.terminal()) {
+                suggestions.add(new TitleSuggestion(next.title, next.count));
+                continue;
+            }
+            if (next.title != null) {
+                queue.add(new Candidate(next, true, next.count));
+            }
+            for (Node child : next.children) {
+                queue.add(new Candidate(child, false, child.max));
+            }
+        }
+        return suggestions;
+    }
+
+    int titles() {
+        return titles;
+    }
+
+    int nodes() {
+        return nodes;
+    }
+
+    // applies delta below node, whose label is already matched up to key[from]
+    // returns the node that must take its place in the parent : itself, its only child when it became a plain
+    // pass-through, or null when nothing is left below it
+
+    private Node update(Node node, String key, int from, String title, long delta) {
+        if (from == key.length()) {
+            if (node.title == null) {
+                if (delta < 0) {
+                    return node;  // removing a title that is not there
+                }
+                node.title = title;
+                titles++;
+            }
+            node.count = Math.max(0, node.count + delta);
+            if (node.count == 0) {
+                node.title = null;
+                titles--;
+            }
+        } else {
+            int i = indexOf(node.children, key.charAt(from));
+            if (i < 0) {
+                if (delta < 0) {
+                    return node;
+                }
+                Node leaf = new Node(key.substring(from));
+                leaf.title = title;
+                leaf.count = delta;
+                leaf.max = delta;
+                titles++;
+                nodes++;
+                node.children = insert(node.children, -i - 1, leaf);
+            } else {
+                Node child = node.children[i];
+                int common = commonLength(child.label, key, from);
+                if (common < child.label.length()) {
+                    if (delta < 0) {
+                        return node;
+                    }
+                    // the key leaves the edge half way : cut the edge where they part
+                    Node split = new Node(child.label.substring(0, common));
+                    child.label = child.label.substring(common);
+                    split.children = new Node[]{child};
+                    split.max = child.max;
+                    nodes++;
+                    node.children[i] = split;
+                    child = split;
+                }
+                Node updated = update(child, key, from + common, title, delta);
+                if (updated == null) {
+                    node.children = remove(node.children, i);
+                } else {
+                    node.children[i] = updated;
+                }
+            }
+        }
+
+        long max = node.count;
+        for (Node child : node.children) {
+            max = Math.max(max, child.max);
+        }
+        node.max = max;
+
+        if (node != root && node.title == null) {
+            if (node.children.length == 0) {
+                nodes--;
+                return null;
+            }
+            if (node.children.length == 1) {
+                Node only = node.children[0];
+                only.label = node.label + only.label;
+                nodes--;
+                return only;
+            }
+        }
+        return node;
+    }
+
+    private static String key(String title) {
+        return title.toLowerCase(Locale.ROOT);
+    }
+
+    // binary search on the first character of the children labels, same contract as Arrays.binarySearch
+
+    private static int indexOf(Node[] children, char c) {
+        int low = 0;
+        int high = children.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char first = children[mid].label.charAt(0);
+            if (first < c) {
+                low = mid + 1;
+            } else if (first > c) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private static int commonLength(String label, String key, int from) {
+        int length = Math.min(label.length(), key.length() - from);
+        int i = 0;
+        while (i < length && label.charAt(i) == key.charAt(from + i)) {
+            i++;
+        }
+        return i;
+    }
+
+    private static Node[] insert(Node[] children, int at, Node child) {
+        Node[] copy = new Node[children.length + 1];
+        System.arraycopy(children, 0, copy, 0, at);
+        copy[at] = child;
+        System.arraycopy(children, at, copy, at + 1, children.length - at);
+        return copy;
+    }
+
+    private static Node[] remove(Node[] children, int at) {
+        if (children.length == 1) {
+            return NO_CHILDREN;
+        }
+        Node[] copy = Arrays.copyOf(children, children.length - 1);
+        System.arraycopy(children, at + 1, copy, at, children.length - at - 1);
+        return copy;
+    }
+}
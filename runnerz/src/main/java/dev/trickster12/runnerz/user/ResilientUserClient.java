@@ -0,0 +1,28 @@
+package dev.trickster12.runnerz.user;
+
+import java.util.List;
+
+// A user client (UserHttpClient) behind UserCircuitBreaker, findById hedged by UserHedging
+// Serving stale users while the breaker is open is the job of UserDirectory, which holds them
+public class ResilientUserClient implements UserHttpClient {
+
+    private final UserHttpClient delegate;
+    private final UserCircuitBreaker circuitBreaker;
+    private final UserHedging hedging;
+
+    public ResilientUserClient(UserHttpClient delegate, UserCircuitBreaker circuitBreaker, UserHedging hedging) {
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.hedging = hedging;
+    }
+
+    @Override
+    public List<User> findAll() {
+        return circuitBreaker.call(delegate::findAll);
+    }
+
+    @Override
+    public User findById(Integer id) {
+        return circuitBreaker.call(() -> hedging.call(() -> delegate.findById(id)));
+    }
+}
@@ -0,0 +1,104 @@
+package dev.trickster12.runnerz.user;
+
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+// Users of the remote directory kept in memory, bounded in size and time
+// Filled in the background by UserWarmUp and on demand by UserDirectory
+// An entry is the future of a fetch : concurrent lookups of an id being fetched wait for that fetch instead of
+// starting their own. A fetch that fails or finds nothing leaves no entry behind
+// The last version fetched of every user is also kept past expire-after-write (bounded by maximum-size only), for
+// UserDirectory to serve while the directory is down
+@Component
+public class UserCache {
+
+    private final AsyncCache<Integer, User> users;
+    private final Cache<Integer, User> lastKnown;
+
+    public UserCache(@Value("${runnerz.users.cache.maximum-size:10000}") long maximumSize,
+                     @Value("${runnerz.users.cache.expire-after-write:1h}") Duration expireAfterWrite) {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .buildAsync();
+        this.lastKnown = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .build();
+    }
+
+    // the cached user, without waiting for a fetch in progress
+
+    public Optional<User> get(Integer id) {
+        if (id == null) {
+            return Optional.empty();
+        }
+        CompletableFuture<User> user = users.getIfPresent(id);
+        return user != null && user.isDone() && !user.isCompletedExceptionally()
+                ? Optional.ofNullable(user.join())
+                : Optional.empty();
+    }
+
+    // the cached user, or the one fetched by fetch on the calling thread ; a single fetch per id runs at a time
+
+    public User get(Integer id, Function<Integer, User> fetch) {
+        if (id == null) {
+            return null;
+        }
+        CompletableFuture<User> mine = new CompletableFuture<>();
+        CompletableFuture<User> user = users.asMap().putIfAbsent(id, mine);
+        if (user == null) {
+            user = mine;
+            try {
+                User fetched = fetch.apply(id);
+                if (fetched != null) {
+                    lastKnown.put(id, fetched);
+                }
+                mine.complete(fetched);
+            } catch (RuntimeException | Error e) {
+                mine.completeExceptionally(e);
+            }
+        }
+        try {
+            return user.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    public void putAll(List<User> fetched) {
+        for (User user : fetched) {
+            if (user != null && user.getId() != null) {
+                users.put(user.getId(), CompletableFuture.completedFuture(user));
+                lastKnown.put(user.getId(), user);
+            }
+        }
+    }
+
+    // the last version fetched, however old
+
+    public Optional<User> getStale(Integer id) {
+        return id == null ? Optional.empty() : Optional.ofNullable(lastKnown.getIfPresent(id));
+    }
+
+    public List<User> getAllStale() {
+        return List.copyOf(lastKnown.asMap().values());
+    }
+
+    public long size() {
+        users.synchronous().cleanUp();
+        return users.synchronous().estimatedSize();
+    }
+}
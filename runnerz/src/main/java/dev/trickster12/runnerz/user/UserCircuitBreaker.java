@@ -0,0 +1,204 @@
+package dev.trickster12.runnerz.user;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+// Circuit breaker in front of the user directory host, shared by every client calling it
+// CLOSED : calls go through, the outcome of the last window-size ones is kept. Once minimum-calls are known and
+// failure-rate of them failed, it opens
+// OPEN : calls fail at once with UserDirectoryUnavailableException (UserDirectory then serves stale users) until
+// open-for has passed
+// HALF_OPEN : half-open-calls trial calls go through, all of them succeeding closes it, any failure opens it again
+// A 4xx answer (an unknown user) is the directory working, only timeouts, I/O errors and 5xx count as failures
+// A call given up by its caller (the thread interrupted, e.g. a fan-out past its deadline) says nothing about the
+// directory : it is counted neither way
+@Component
+public class UserCircuitBreaker {
+
+    private static final Logger log = LoggerFactory.getLogger(UserCircuitBreaker.class);
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    // transitions are counted per "FROM->TO"
+
+    public record Metrics(State state, double failureRate, long calls, long failures, long rejected,
+                          Map<String, Long> transitions) {
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final double failureRateThreshold;
+    private final long openForNanos;
+    private final int halfOpenCalls;
+
+    // guarded by this
+    private final boolean[] window;
+    private int next;
+    private int recorded;
+    private int failuresInWindow;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int halfOpenStarted;
+    private int halfOpenSucceeded;
+    private long calls;
+    private long failures;
+    private long rejected;
+    private final Map<String, Long> transitions = new TreeMap<>();
+
+    public UserCircuitBreaker(@Value("${runnerz.users.circuit-breaker.window-size:20}") int windowSize,
+                              @Value("${runnerz.users.circuit-breaker.minimum-calls:10}") int minimumCalls,
+                              @Value("${runnerz.users.circuit-breaker.failure-rate:0.5}") double failureRateThreshold,
+                              @Value("${runnerz.users.circuit-breaker.open-for:30s}") Duration openFor,
+                              @Value("${runnerz.users.circuit-breaker.half-open-calls:3}") int halfOpenCalls) {
+        this.windowSize = Math.max(1, windowSize);
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, this.windowSize));
+        this.failureRateThreshold = failureRateThreshold;
+        this.openForNanos = openFor.toNanos();
+        this.halfOpenCalls = Math.max(1, halfOpenCalls);
+        this.window = new boolean[this.windowSize];
+    }
+
+    public <T> T call(Supplier<T> remoteCall) {
+        if (!tryAcquire()) {
+            throw new UserDirectoryUnavailableException();
+        }
+        T result;
+        try {
+            result = remoteCall.get();
+        } catch (HttpClientErrorException e) {
+            onSuccess();
+            throw e;
+        } catch (RuntimeException | Error e) {
+            if (interrupted(e)) {
+                onAbandoned();
+            } else {
+                onFailure();
+            }
+            throw e;
+        }
+        onSuccess();
+        return result;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    public synchronized Metrics metrics() {
+        return new Metrics(state, recorded == 0 ? 0 : (double) failuresInWindow / recorded, calls, failures, rejected,
+                new TreeMap<>(transitions));
+    }
+
+    private synchronized boolean tryAcquire() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openForNanos) {
+            transition(State.HALF_OPEN);
+            halfOpenStarted = 0;
+            halfOpenSucceeded = 0;
+        }
+        boolean permitted = switch (state) {
+            case CLOSED -> true;
+            case OPEN -> false;
+            case HALF_OPEN -> halfOpenStarted < halfOpenCalls;
+        };
+        if (!permitted) {
+            rejected++;
+            return false;
+        }
+        if (state == State.HALF_OPEN) {
+            halfOpenStarted++;
+        }
+        calls++;
+        return true;
+    }
+
+    private synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++halfOpenSucceeded >= halfOpenCalls) {
+                transition(State.CLOSED);
+                clearWindow();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    private synchronized void onFailure() {
+        failures++;
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= minimumCalls && (double) failuresInWindow / recorded >= failureRateThreshold) {
+                open();
+            }
+        }
+        // a call started before the breaker opened and failing after it changes nothing
+    }
+
+    // the trial slot of an abandoned half-open call goes back to the next caller
+
+    private synchronized void onAbandoned() {
+        if (state == State.HALF_OPEN && halfOpenStarted > 0) {
+            halfOpenStarted--;
+        }
+    }
+
+    // the HTTP client turns an interrupt into an IOException and sets the interrupt flag again
+
+    private static boolean interrupted(Throwable e) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == windowSize) {
+            if (window[next]) {
+                failuresInWindow--;
+            }
+        } else {
+            recorded++;
+        }
+        window[next] = failure;
+        if (failure) {
+            failuresInWindow++;
+        }
+        next = (next + 1) % windowSize;
+    }
+
+    private void open() {
+        transition(State.OPEN);
+        openedAt = System.nanoTime();
+        clearWindow();
+    }
+
+    private void clearWindow() {
+        next = 0;
+        recorded = 0;
+        failuresInWindow = 0;
+    }
+
+    private void transition(State to) {
+        transitions.merge(state + "->" + to, 1L, Long::sum);
+        if (to == State.OPEN) {
+            log.warn("User directory circuit breaker {} -> {}, calls suspended for {} ms", state, to, openForNanos / 1_000_000);
+        } else {
+            log.info("User directory circuit breaker {} -> {}", state, to);
+        }
+        state = to;
+    }
+}
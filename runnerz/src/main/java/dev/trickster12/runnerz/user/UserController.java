@@ -0,0 +1,55 @@
+package dev.trickster12.runnerz.user;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/users")
+public class UserController {
+
+    private final UserWarmUp userWarmUp;
+    private final UserCircuitBreaker userCircuitBreaker;
+    private final UserHedging userHedging;
+    private final UserDirectory userDirectory;
+    private final UserSnapshots userSnapshots;
+
+    public UserController(UserWarmUp userWarmUp, UserCircuitBreaker userCircuitBreaker, UserHedging userHedging,
+                          UserDirectory userDirectory, UserSnapshots userSnapshots) {
+        this.userWarmUp = userWarmUp;
+        this.userCircuitBreaker = userCircuitBreaker;
+        this.userHedging = userHedging;
+        this.userDirectory = userDirectory;
+        this.userSnapshots = userSnapshots;
+    }
+
+    // readiness of the user cache, separate from the one of the application
+    // 200 once warmed up (or when the warm-up is disabled), 503 while warming or after a failure
+
+    @GetMapping("/warm-up")
+    public ResponseEntity<UserWarmUp.Status> warmUp() {
+        UserWarmUp.Status status = userWarmUp.status();
+        boolean ready = status.state() == UserWarmUp.State.READY || status.state() == UserWarmUp.State.DISABLED;
+        return ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(status);
+    }
+
+    // state of the circuit breaker in front of the directory with its transitions, hedged calls, stale users served
+
+    @GetMapping("/resilience")
+    public UserResilience resilience() {
+        return new UserResilience(userCircuitBreaker.metrics(), userHedging.metrics(), userDirectory.staleServed());
+    }
+
+    // users of the current snapshot within km of a point, the nearest first
+    // e.g. /api/users/near?lat=-37.3159&lng=81.1496&km=500
+
+    @GetMapping("/near")
+    public List<User> near(@RequestParam double lat, @RequestParam double lng, @RequestParam double km) {
+        return userSnapshots.current().near(lat, lng, km);
+    }
+}
@@ -0,0 +1,149 @@
+package dev.trickster12.runnerz.user;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Read-through access to the remote user directory (the userHttpClient bean)
+// backed by UserCache : a page of runs enriched with user data costs the ids not cached yet, not one call per run
+// findByIds fetches every missing user with a single findAll once bulk-threshold or more are missing
+// Concurrent lookups of the same id, and concurrent findAll refreshes, share a single remote call
+// Remote calls go through ResilientUserClient : when the directory times out, fails or its circuit breaker is open,
+// the last known version of the users is served instead, an error only comes back for users never fetched
+@Component
+public class UserDirectory {
+
+    private final UserHttpClient remote;
+    private final UserCache userCache;
+    private final int bulkThreshold;
+    private final AtomicReference<CompletableFuture<List<User>>> refreshing = new AtomicReference<>();
+    private final AtomicLong staleServed = new AtomicLong();
+
+    @Autowired
+    public UserDirectory(UserHttpClient userHttpClient, UserCache userCache, UserCircuitBreaker userCircuitBreaker,
+                         UserHedging userHedging,
+                         @Value("${runnerz.users.directory.bulk-threshold:3}") int bulkThreshold) {
+        this(new ResilientUserClient(userHttpClient, userCircuitBreaker, userHedging), userCache, bulkThreshold);
+    }
+
+    // calls remote as it is, for tests
+
+    UserDirectory(UserHttpClient remote, UserCache userCache, int bulkThreshold) {
+        this.remote = remote;
+        this.userCache = userCache;
+        this.bulkThreshold = Math.max(1, bulkThreshold);
+    }
+
+    public User findById(Integer id) {
+        try {
+            return userCache.get(id, remote::findById);
+        } catch (HttpClientErrorException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            Optional<User> stale = userCache.getStale(id);
+            if (stale.isEmpty()) {
+                throw e;
+            }
+            staleServed.incrementAndGet();
+            return stale.get();
+        }
+    }
+
+    // only what is cached, never a remote call
+
+    public Optional<User> findCached(Integer id) {
+        return userCache.get(id);
+    }
+
+    // the users found, in the order of ids ; an id unknown to the directory is left out
+
+    public Map<Integer, User> findByIds(Collection<Integer> ids) {
+        Map<Integer, User> found = new LinkedHashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            if (id == null || found.containsKey(id)) {
+                continue;
+            }
+            userCache.get(id).ifPresentOrElse(user -> found.put(id, user), () -> missing.add(id));
+        }
+        if (missing.isEmpty()) {
+            return found;
+        }
+        if (missing.size() >= bulkThreshold) {
+            Map<Integer, User> all = new LinkedHashMap<>();
+            findAll().forEach(user -> all.put(user.getId(), user));
+            missing.forEach(id -> {
+                User user = all.get(id);
+                if (user != null) {
+                    found.put(id, user);
+                }
+            });
+        } else {
+            missing.forEach(id -> {
+                User user = findById(id);
+                if (user != null) {
+                    found.put(id, user);
+                }
+            });
+        }
+        // back in the order of ids
+        Map<Integer, User> ordered = new LinkedHashMap<>();
+        ids.forEach(id -> {
+            if (id != null && found.containsKey(id)) {
+                ordered.put(id, found.get(id));
+            }
+        });
+        return ordered;
+    }
+
+    // the whole directory, fetched again and put in the cache ; callers arriving during a refresh wait for it
+
+    public List<User> findAll() {
+        CompletableFuture<List<User>> mine = new CompletableFuture<>();
+        CompletableFuture<List<User>> refresh = refreshing.compareAndExchange(null, mine);
+        if (refresh == null) {
+            refresh = mine;
+            try {
+                List<User> users = remote.findAll();
+                users = users == null ? List.of() : users;
+                userCache.putAll(users);
+                mine.complete(users);
+            } catch (RuntimeException | Error e) {
+                mine.completeExceptionally(e);
+            } finally {
+                refreshing.set(null);
+            }
+        }
+        try {
+            return refresh.join();
+        } catch (CompletionException e) {
+            List<User> stale = userCache.getAllStale();
+            if (stale.isEmpty() || e.getCause() instanceof HttpClientErrorException) {
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+            staleServed.addAndGet(stale.size());
+            return stale;
+        }
+    }
+
+    // users served from their last known version because the directory did not answer
+
+    public long staleServed() {
+        return staleServed.get();
+    }
+}
@@ -0,0 +1,13 @@
+package dev.trickster12.runnerz.user;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class UserDirectoryUnavailableException extends RuntimeException{
+
+
+    public UserDirectoryUnavailableException(){
+        super("The user directory is failing, calls are suspended for a while (circuit breaker open)");
+    }
+}
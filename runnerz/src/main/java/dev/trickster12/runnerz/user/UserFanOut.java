@@ -0,0 +1,150 @@
+package dev.trickster12.runnerz.user;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Lookups of many distinct users at once : the ids not cached are fetched in parallel through UserDirectory.findById
+// instead of one after the other on the request thread
+// A pool of its own (runnerz.users.fan-out.threads) runs the fetches, and at most max-per-host of them call the
+// directory host at the same time, whatever the number of requests fanning out. Every lookup has a deadline :
+// what is not fetched by then is reported as unavailable and the rest is returned, never an error for the whole
+// A fetch still running at the deadline is not interrupted : it ends in the cache for the next lookup, and its
+// outcome (not the deadline of the caller) is what the circuit breaker sees
+@Component
+public class UserFanOut implements DisposableBean {
+
+    private static final int QUEUE_CAPACITY = 10_000;
+
+    // users found in the order of the ids, ids the directory does not know, ids not fetched before the deadline
+    // (or whose fetch failed)
+
+    public record Result(Map<Integer, User> users, Set<Integer> notFound, Set<Integer> unavailable) {
+
+        public boolean complete() {
+            return unavailable.isEmpty();
+        }
+    }
+
+    private final UserDirectory userDirectory;
+    private final ThreadPoolExecutor executor;
+    // every call goes to runnerz.users.base-url : a single host
+    private final Semaphore hostPermits;
+    private final Duration defaultDeadline;
+
+    public UserFanOut(UserDirectory userDirectory,
+                      @Value("${runnerz.users.fan-out.threads:32}") int threads,
+                      @Value("${runnerz.users.fan-out.max-per-host:8}") int maxPerHost,
+                      @Value("${runnerz.users.fan-out.deadline:2s}") Duration defaultDeadline) {
+        this.userDirectory = userDirectory;
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(QUEUE_CAPACITY),
+                task -> {
+                    Thread thread = new Thread(task, "user-fan-out-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        this.hostPermits = new Semaphore(Math.max(1, maxPerHost), true);
+        this.defaultDeadline = defaultDeadline;
+    }
+
+    public Result findByIds(Collection<Integer> ids) {
+        return findByIds(ids, defaultDeadline);
+    }
+
+    public Result findByIds(Collection<Integer> ids, Duration deadline) {
+        long end = System.nanoTime() + deadline.toNanos();
+        Map<Integer, User> found = new LinkedHashMap<>();
+        Set<Integer> notFound = new LinkedHashSet<>();
+        Set<Integer> unavailable = new LinkedHashSet<>();
+        Map<Integer, Future<User>> fetches = new LinkedHashMap<>();
+        for (Integer id : ids) {
+            if (id == null || found.containsKey(id) || fetches.containsKey(id)) {
+                continue;
+            }
+            userDirectory.findCached(id).ifPresentOrElse(user -> found.put(id, user), () -> {
+                try {
+                    fetches.put(id, executor.submit(() -> fetch(id, end)));
+                } catch (RejectedExecutionException e) {
+                    unavailable.add(id);
+                }
+            });
+        }
+
+        boolean interrupted = false;
+        for (Map.Entry<Integer, Future<User>> fetch : fetches.entrySet()) {
+            Integer id = fetch.getKey();
+            if (interrupted) {
+                fetch.getValue().cancel(false);
+                unavailable.add(id);
+                continue;
+            }
+            try {
+                User user = fetch.getValue().get(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (user != null) {
+                    found.put(id, user);
+                } else {
+                    notFound.add(id);
+                }
+            } catch (TimeoutException e) {
+                fetch.getValue().cancel(false);
+                unavailable.add(id);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof HttpClientErrorException.NotFound) {
+                    notFound.add(id);
+                } else {
+                    unavailable.add(id);
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+                fetch.getValue().cancel(false);
+                unavailable.add(id);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        Map<Integer, User> users = new LinkedHashMap<>();
+        ids.forEach(id -> {
+            if (id != null && found.containsKey(id)) {
+                users.put(id, found.get(id));
+            }
+        });
+        return new Result(users, notFound, unavailable);
+    }
+
+    private User fetch(Integer id, long end) throws InterruptedException, TimeoutException {
+        if (!hostPermits.tryAcquire(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+            throw new TimeoutException("No call to the user directory free before the deadline");
+        }
+        try {
+            return userDirectory.findById(id);
+        } finally {
+            hostPermits.release();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
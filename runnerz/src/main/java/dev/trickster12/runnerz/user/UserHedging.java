@@ -0,0 +1,160 @@
+package dev.trickster12.runnerz.user;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Hedged lookups : when a call has not answered after the percentile (p95 by default) of the latencies of the
+// last successful calls, a second identical call is sent and the first answer wins, the other one is cancelled
+// The few calls stuck behind a slow connection or a slow upstream instance no longer set the tail latency, for about
+// 5% more calls. Off unless runnerz.users.hedging.enabled, and only used for idempotent GETs of one user
+// Until SAMPLES latencies are known, or when its threads are all busy, a call is simply made once
+@Component
+public class UserHedging implements DisposableBean {
+
+    private static final int SAMPLES = 20;
+    private static final int WINDOW = 200;
+
+    // delayMillis is null while there are too few latencies to hedge
+
+    public record Metrics(boolean enabled, long calls, long hedged, long hedgesWon, Long delayMillis) {
+    }
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minimumDelayNanos;
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgesWon = new AtomicLong();
+
+    // guarded by this : latencies of the last WINDOW successful attempts, in nanoseconds
+    private final long[] latencies = new long[WINDOW];
+    private int next;
+    private int recorded;
+
+    public UserHedging(@Value("${runnerz.users.hedging.enabled:false}") boolean enabled,
+                       @Value("${runnerz.users.hedging.percentile:0.95}") double percentile,
+                       @Value("${runnerz.users.hedging.minimum-delay:20ms}") Duration minimumDelay,
+                       @Value("${runnerz.users.hedging.threads:64}") int threads) {
+        this.enabled = enabled;
+        this.percentile = percentile;
+        this.minimumDelayNanos = minimumDelay.toNanos();
+        AtomicInteger sequence = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(0, Math.max(2, threads), 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                task -> {
+                    Thread thread = new Thread(task, "user-hedging-" + sequence.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    public <T> T call(Supplier<T> attempt) {
+        calls.incrementAndGet();
+        Long delay = enabled ? delayNanos() : null;
+        if (delay == null) {
+            return timed(attempt);
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        Future<?> first;
+        try {
+            first = executor.submit(() -> attempt(attempt, result, pending, false));
+        } catch (RejectedExecutionException e) {
+            return timed(attempt);
+        }
+        Future<?> second = null;
+        try {
+            try {
+                return result.get(delay, TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                pending.incrementAndGet();
+                try {
+                    second = executor.submit(() -> attempt(attempt, result, pending, true));
+                    hedged.incrementAndGet();
+                } catch (RejectedExecutionException rejected) {
+                    pending.decrementAndGet();
+                }
+                return result.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the user directory", e);
+        } finally {
+            first.cancel(true);
+            if (second != null) {
+                second.cancel(true);
+            }
+        }
+    }
+
+    public Metrics metrics() {
+        Long delay = delayNanos();
+        return new Metrics(enabled, calls.get(), hedged.get(), hedgesWon.get(), delay == null ? null : delay / 1_000_000);
+    }
+
+    // the first answer completes result ; a failure only does when no other attempt is still running
+
+    private <T> void attempt(Supplier<T> attempt, CompletableFuture<T> result, AtomicInteger pending, boolean hedge) {
+        try {
+            T value = timed(attempt);
+            if (result.complete(value) && hedge) {
+                hedgesWon.incrementAndGet();
+            }
+        } catch (RuntimeException | Error e) {
+            if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private <T> T timed(Supplier<T> attempt) {
+        long start = System.nanoTime();
+        T value = attempt.get();
+        record(System.nanoTime() - start);
+        return value;
+    }
+
+    private synchronized void record(long nanos) {
+        latencies[next] = nanos;
+        next = (next + 1) % WINDOW;
+        recorded = Math.min(recorded + 1, WINDOW);
+    }
+
+    private synchronized Long delayNanos() {
+        if (recorded < SAMPLES) {
+            return null;
+        }
+        long[] sorted = Arrays.copyOf(latencies, recorded);
+        Arrays.sort(sorted);
+        int index = Math.min(recorded - 1, (int) Math.ceil(percentile * recorded) - 1);
+        return Math.max(minimumDelayNanos, sorted[Math.max(0, index)]);
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,47 @@
+package dev.trickster12.runnerz.user;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.InterceptingClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+
+// Transport of the user clients : one JDK HttpClient per factory, whose connections are kept alive and reused from
+// one call to the next. HTTP/1.1 so parallel calls spread over several pooled connections
+// Connect and read timeouts are always set : a slow directory fails the call instead of holding the thread
+public final class UserHttpTransport {
+
+    private UserHttpTransport() {
+    }
+
+    public static ClientHttpRequestFactory requestFactory(Duration connectTimeout, Duration readTimeout) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .connectTimeout(connectTimeout)
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        return new InterceptingClientHttpRequestFactory(requestFactory, List.of(UserHttpTransport::timeoutOnCancel));
+    }
+
+    // the read timeout cancels the pending response : depending on who gets there first, the JDK factory reports it
+    // as an HttpTimeoutException or lets the CancellationException through. Always an IOException here, so both
+    // reach the caller as a ResourceAccessException
+
+    private static ClientHttpResponse timeoutOnCancel(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+        try {
+            return execution.execute(request, body);
+        } catch (CancellationException e) {
+            throw new HttpTimeoutException("No response from " + request.getURI() + " within the read timeout");
+        }
+    }
+}
@@ -0,0 +1,4 @@
+package dev.trickster12.runnerz.user;
+
+public record UserResilience(UserCircuitBreaker.Metrics circuitBreaker, UserHedging.Metrics hedging, long staleServed) {
+}
@@ -1,22 +1,33 @@
 package dev.trickster12.runnerz.user;
 
 import org.springframework.core.ParameterizedTypeReference;
-import org.springframework.stereotype.Component;
 import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
 import java.util.List;
 
-@Component
-public class UserRestClient {
+// Imperative RestClient with the same contract as the declarative UserHttpClient, not a bean : the application reads
+// the directory through the userHttpClient bean only (RunnerzApplication). Kept for the tests and benchmarks, which
+// point it at a local server, and as a drop-in UserHttpClient for a UserDirectory built by hand
+public class UserRestClient implements UserHttpClient {
 
     private final RestClient restClient;
 
-    public UserRestClient(RestClient.Builder builder) {
+    // with the transport of the application, see UserHttpTransport
+
+    public UserRestClient(RestClient.Builder builder, String baseUrl, Duration connectTimeout, Duration readTimeout) {
+        this(builder.requestFactory(UserHttpTransport.requestFactory(connectTimeout, readTimeout)), baseUrl);
+    }
+
+    // over the transport already set on builder, for tests
+
+    UserRestClient(RestClient.Builder builder, String baseUrl) {
         restClient = builder
-                .baseUrl("https://jsonplaceholder.typicode.com/")
+                .baseUrl(baseUrl)
                 .build();
     }
 
+    @Override
     public List<User> findAll() {
         return restClient.get()
                 .uri("/users")
@@ -24,6 +35,7 @@ public class UserRestClient {
                 .body(new ParameterizedTypeReference<>() {});
     }
 
+    @Override
     public User findById(Integer id) {
         return restClient.get()
                 .uri("/users/{id}", id)
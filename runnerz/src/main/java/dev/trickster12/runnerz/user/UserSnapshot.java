@@ -0,0 +1,187 @@
+package dev.trickster12.runnerz.user;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+// Immutable copy of the user directory in columns : slot i of every array is the same user, slots in id order so a
+// user is found by binary search. The User / Address / Geo / Company graph costs about six objects per user, here
+// a user is a few array slots : coordinates are doubles parsed once (NaN when missing or not a number), each
+// distinct city and company is stored once and referenced by its code
+// Never modified once built, UserSnapshots swaps in a new one on refresh
+public final class UserSnapshot {
+
+    static final UserSnapshot EMPTY = of(List.of());
+
+    private static final double EARTH_RADIUS_KM = 6371.0088;
+
+    private final int[] ids;
+    private final String[] names;
+    private final String[] usernames;
+    private final String[] emails;
+    private final String[] phones;
+    private final String[] websites;
+    private final String[] streets;
+    private final String[] suites;
+    private final String[] zipcodes;
+    private final double[] lats;
+    private final double[] lngs;
+    private final int[] cityCodes;
+    private final String[] cities;
+    private final int[] companyCodes;
+    private final Company[] companies;
+
+    private UserSnapshot(List<User> users) {
+        int size = users.size();
+        ids = new int[size];
+        names = new String[size];
+        usernames = new String[size];
+        emails = new String[size];
+        phones = new String[size];
+        websites = new String[size];
+        streets = new String[size];
+        suites = new String[size];
+        zipcodes = new String[size];
+        lats = new double[size];
+        lngs = new double[size];
+        cityCodes = new int[size];
+        companyCodes = new int[size];
+        Map<String, Integer> cityDictionary = new HashMap<>();
+        Map<List<String>, Integer> companyDictionary = new HashMap<>();
+        List<String> cityList = new ArrayList<>();
+        List<Company> companyList = new ArrayList<>();
+        for (int slot = 0; slot < size; slot++) {
+            User user = users.get(slot);
+            ids[slot] = user.getId();
+            names[slot] = user.getName();
+            usernames[slot] = user.getUsername();
+            emails[slot] = user.getEmail();
+            phones[slot] = user.getPhone();
+            websites[slot] = user.getWebsite();
+            Address address = user.getAddress();
+            Geo geo = address == null ? null : address.getGeo();
+            streets[slot] = address == null ? null : address.getStreet();
+            suites[slot] = address == null ? null : address.getSuite();
+            zipcodes[slot] = address == null ? null : address.getZipcode();
+            lats[slot] = coordinate(geo == null ? null : geo.getLat());
+            lngs[slot] = coordinate(geo == null ? null : geo.getLng());
+            // code 0 is "no city" / "no company"
+            String city = address == null ? null : address.getCity();
+            cityCodes[slot] = city == null ? 0 : cityDictionary.computeIfAbsent(city, c -> {
+                cityList.add(c);
+                return cityList.size();
+            });
+            Company company = user.getCompany();
+            companyCodes[slot] = company == null ? 0 : companyDictionary.computeIfAbsent(
+                    Arrays.asList(company.getName(), company.getCatchPhrase(), company.getBs()), key -> {
+                        companyList.add(company);
+                        return companyList.size();
+                    });
+        }
+        cities = cityList.toArray(new String[0]);
+        companies = companyList.toArray(new Company[0]);
+    }
+
+    // users without an id are left out, of several users with the same id the last one is kept
+
+    public static UserSnapshot of(List<User> users) {
+        Map<Integer, User> byId = new TreeMap<>();
+        for (User user : users) {
+            if (user != null && user.getId() != null) {
+                byId.put(user.getId(), user);
+            }
+        }
+        return new UserSnapshot(new ArrayList<>(byId.values()));
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public Optional<User> findById(int id) {
+        int slot = slot(id);
+        return slot < 0 ? Optional.empty() : Optional.of(user(slot));
+    }
+
+    // users within km of (lat, lng), the nearest first ; users without coordinates are never near
+
+    public List<User> near(double lat, double lng, double km) {
+        List<double[]> found = new ArrayList<>();
+        for (int slot = 0; slot < ids.length; slot++) {
+            double distance = distanceKm(lat, lng, lats[slot], lngs[slot]);
+            if (distance <= km) {
+                found.add(new double[]{distance, slot});
+            }
+        }
+        found.sort(Comparator.comparingDouble(entry -> entry[0]));
+        List<User> users = new ArrayList<>(found.size());
+        found.forEach(entry -> users.add(user((int) entry[1])));
+        return users;
+    }
+
+    // slot of id, negative when absent
+
+    int slot(int id) {
+        return Arrays.binarySearch(ids, id);
+    }
+
+    double lat(int slot) {
+        return lats[slot];
+    }
+
+    double lng(int slot) {
+        return lngs[slot];
+    }
+
+    String city(int slot) {
+        return cityCodes[slot] == 0 ? null : cities[cityCodes[slot] - 1];
+    }
+
+    Company company(int slot) {
+        return companyCodes[slot] == 0 ? null : companies[companyCodes[slot] - 1];
+    }
+
+    int cities() {
+        return cities.length;
+    }
+
+    int companies() {
+        return companies.length;
+    }
+
+    // a User graph built again from the columns, cities and companies are the shared instances
+
+    User user(int slot) {
+        Geo geo = new Geo(Double.isNaN(lats[slot]) ? null : Double.toString(lats[slot]),
+                Double.isNaN(lngs[slot]) ? null : Double.toString(lngs[slot]));
+        Address address = new Address(streets[slot], suites[slot], city(slot), zipcodes[slot], geo);
+        return new User(ids[slot], names[slot], usernames[slot], emails[slot], address, phones[slot], websites[slot],
+                company(slot));
+    }
+
+    // great-circle distance (haversine), NaN when a coordinate is missing
+
+    static double distanceKm(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    private static double coordinate(String value) {
+        if (value == null) {
+            return Double.NaN;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+}
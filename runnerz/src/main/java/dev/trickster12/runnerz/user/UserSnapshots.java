@@ -0,0 +1,44 @@
+package dev.trickster12.runnerz.user;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+// Holds the current UserSnapshot of the directory, built from UserDirectory.findAll : the refresh goes through the
+// circuit breaker and shares its remote call with any other findAll running at the same time
+// A refresh builds a whole new snapshot aside and swaps the reference : readers keep the snapshot they started with,
+// never see half of one, and no lock is taken. While the directory is down the refresh is built from the last known
+// users, a refresh that gets no user at all fails and leaves the current snapshot in place
+// First filled by UserWarmUp, then on runnerz.users.snapshot.cron ("-" to only refresh on demand)
+@Component
+public class UserSnapshots {
+
+    private static final Logger log = LoggerFactory.getLogger(UserSnapshots.class);
+
+    private final UserDirectory userDirectory;
+    private volatile UserSnapshot current = UserSnapshot.EMPTY;
+
+    public UserSnapshots(UserDirectory userDirectory) {
+        this.userDirectory = userDirectory;
+    }
+
+    public UserSnapshot current() {
+        return current;
+    }
+
+    @Scheduled(cron = "${runnerz.users.snapshot.cron:-}")
+    public UserSnapshot refresh() {
+        return replace(userDirectory.findAll());
+    }
+
+    public UserSnapshot replace(List<User> users) {
+        UserSnapshot snapshot = UserSnapshot.of(users == null ? List.of() : users);
+        current = snapshot;
+        log.info("User snapshot replaced : {} user(s), {} cities, {} companies", snapshot.size(), snapshot.cities(),
+                snapshot.companies());
+        return snapshot;
+    }
+}
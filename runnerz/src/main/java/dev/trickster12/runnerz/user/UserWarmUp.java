@@ -0,0 +1,127 @@
+package dev.trickster12.runnerz.user;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+// Fetches the user directory into UserCache and UserSnapshots once the application is ready, on a thread of its own
+// The fetch is UserDirectory.findAll : behind the circuit breaker, and shared with a refresh running at the same time
+// Startup never waits on the remote service : a slow or failing directory only leaves the cache cold, which
+// GET /api/users/warm-up reports apart from the readiness of the application
+// The status is TIMED_OUT after runnerz.users.warm-up.timeout, READY if the fetch lands later, and
+// runnerz.users.warm-up.enabled=false skips it
+@Component
+public class UserWarmUp implements ApplicationListener<ApplicationReadyEvent>, DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(UserWarmUp.class);
+
+    public enum State {DISABLED, WARMING, READY, FAILED, TIMED_OUT}
+
+    // durationMillis and error are null while warming
+
+    public record Status(State state, long users, Long durationMillis, String error) {
+    }
+
+    private final UserDirectory userDirectory;
+    private final UserSnapshots userSnapshots;
+    private final boolean enabled;
+    private final Duration timeout;
+    private final ExecutorService executor;
+    private volatile Status status;
+
+    public UserWarmUp(UserDirectory userDirectory, UserSnapshots userSnapshots,
+                      @Value("${runnerz.users.warm-up.enabled:true}") boolean enabled,
+                      @Value("${runnerz.users.warm-up.timeout:10s}") Duration timeout) {
+        this.userDirectory = userDirectory;
+        this.userSnapshots = userSnapshots;
+        this.enabled = enabled;
+        this.timeout = timeout;
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "user-warm-up");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.status = new Status(enabled ? State.WARMING : State.DISABLED, 0, null, null);
+    }
+
+    @Override
+    public void onApplicationEvent(ApplicationReadyEvent event) {
+        if (event.getTimeTaken() != null) {
+            log.info("Ready to serve requests {} ms after startup began, user warm-up {}", event.getTimeTaken().toMillis(),
+                    enabled ? "running in the background" : "disabled");
+        }
+        start();
+    }
+
+    // returns at once, the future completes with the status at the timeout at the latest
+    // The fetch is not interrupted at the timeout, other callers may share it : if it lands later, the status moves
+    // from TIMED_OUT to READY
+
+    public CompletableFuture<Status> start() {
+        if (!enabled) {
+            return CompletableFuture.completedFuture(status);
+        }
+        long start = System.nanoTime();
+        CompletableFuture<List<User>> fetch = CompletableFuture.supplyAsync(userDirectory::findAll, executor);
+        fetch.thenAccept(users -> {
+            synchronized (this) {
+                if (status.state() == State.TIMED_OUT) {
+                    ready(users, start);
+                }
+            }
+        });
+        return fetch.copy()
+                .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
+                .handle((users, error) -> {
+                    synchronized (this) {
+                        if (error == null) {
+                            return ready(users, start);
+                        }
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                        if (cause instanceof TimeoutException && fetch.isDone() && !fetch.isCompletedExceptionally()) {
+                            return ready(fetch.join(), start);  // landed while the timeout was being handled
+                        }
+                        long millis = (System.nanoTime() - start) / 1_000_000;
+                        State state = cause instanceof TimeoutException ? State.TIMED_OUT : State.FAILED;
+                        status = new Status(state, 0, millis, cause.toString());
+                        log.warn("User warm-up {} after {} ms, the user cache stays cold{} : {}", state, millis,
+                                state == State.TIMED_OUT ? " until the fetch lands" : "", cause.toString());
+                        return status;
+                    }
+                });
+    }
+
+    // callers hold the lock
+
+    private Status ready(List<User> users, long start) {
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        // already in UserCache, put there by the directory
+        List<User> fetched = users == null ? List.of() : users;
+        userSnapshots.replace(fetched);
+        status = new Status(State.READY, fetched.size(), millis, null);
+        log.info("Warmed up the user cache with {} user(s) in {} ms", fetched.size(), millis);
+        return status;
+    }
+
+    public Status status() {
+        return status;
+    }
+
+    @Override
+    public void destroy() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,8 @@
+-- Number of runs moved out of run by RunArchiver, updated in the transaction of their DELETE : every instance adds
+-- the same number to GET /api/runs/count, whatever segments it has opened so far
+-- A single row, absent until RunArchiver has counted the segments written before this migration (RunArchive.reconcile)
+CREATE TABLE run_archive_count (
+    id BOOLEAN NOT NULL DEFAULT TRUE CHECK (id),
+    total BIGINT NOT NULL,
+    PRIMARY KEY (id)
+);
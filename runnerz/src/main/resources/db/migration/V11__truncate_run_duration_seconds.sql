@@ -0,0 +1,80 @@
+-- One definition of the duration of a run : the seconds between started_on and completed_on once both are truncated
+-- to the second. It is what RunColumns and RunQuantiles compute from epoch seconds, what RunBulkDeleter returns and
+-- what the stats queries of RunRepository compute. V8 rounded the exact difference instead, so /stats/durations could
+-- give another total for a period of whole days (the rollup) than for the same runs over any other period (run)
+CREATE OR REPLACE FUNCTION run_duration_seconds(started_on TIMESTAMP, completed_on TIMESTAMP) RETURNS BIGINT
+    LANGUAGE sql IMMUTABLE PARALLEL SAFE AS $$
+    SELECT extract(epoch FROM date_trunc('second', completed_on) - date_trunc('second', started_on))::bigint
+$$;
+
+-- the V8 bodies with run_duration_seconds in place of the rounded difference
+
+CREATE OR REPLACE FUNCTION run_rollup_inserted() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    PERFORM run_rollup_apply(ARRAY(
+        SELECT ROW(started_on::date, location, count(*), sum(miles),
+                   sum(run_duration_seconds(started_on, completed_on))::bigint, max(miles), NULL)::run_rollup_delta
+        FROM inserted GROUP BY started_on::date, location));
+    RETURN NULL;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION run_rollup_deleted() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    PERFORM run_rollup_apply(ARRAY(
+        SELECT ROW(started_on::date, location, -count(*), -sum(miles),
+                   -sum(run_duration_seconds(started_on, completed_on))::bigint, NULL, max(miles))::run_rollup_delta
+        FROM deleted GROUP BY started_on::date, location));
+    RETURN NULL;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION run_rollup_updated() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    PERFORM run_rollup_apply(ARRAY(
+        SELECT ROW(day, location, sum(runs), sum(miles), sum(duration_seconds)::bigint, max(added), max(removed))::run_rollup_delta
+        FROM (
+            SELECT started_on::date AS day, location, 1 AS runs, miles,
+                   run_duration_seconds(started_on, completed_on) AS duration_seconds, miles AS added, NULL::int AS removed
+            FROM updated_new
+            UNION ALL
+            SELECT started_on::date, location, -1, -miles,
+                   -run_duration_seconds(started_on, completed_on), NULL, miles
+            FROM updated_old
+        ) changes
+        GROUP BY day, location));
+    RETURN NULL;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION run_rollup_rebuild() RETURNS BIGINT LANGUAGE plpgsql AS $$
+DECLARE
+    groups BIGINT;
+BEGIN
+    LOCK TABLE run IN SHARE MODE;
+    DELETE FROM run_daily_rollup;
+    INSERT INTO run_daily_rollup (day, location, runs, miles, duration_seconds, max_miles)
+    SELECT started_on::date, location, count(*), sum(miles),
+           sum(run_duration_seconds(started_on, completed_on)), max(miles)
+    FROM run GROUP BY started_on::date, location;
+    GET DIAGNOSTICS groups = ROW_COUNT;
+    RETURN groups;
+END
+$$;
+
+CREATE OR REPLACE VIEW run_rollup_drift AS
+SELECT COALESCE(e.day, a.day) AS day, COALESCE(e.location, a.location) AS location,
+       e.runs AS expected_runs, a.runs AS actual_runs,
+       e.miles AS expected_miles, a.miles AS actual_miles,
+       e.duration_seconds AS expected_duration_seconds, a.duration_seconds AS actual_duration_seconds,
+       e.max_miles AS expected_max_miles, a.max_miles AS actual_max_miles
+FROM (
+    SELECT started_on::date AS day, location, count(*) AS runs, sum(miles) AS miles,
+           sum(run_duration_seconds(started_on, completed_on))::bigint AS duration_seconds, max(miles) AS max_miles
+    FROM run GROUP BY started_on::date, location
+) e
+FULL JOIN run_daily_rollup a ON a.day = e.day AND a.location = e.location
+WHERE (e.runs, e.miles, e.duration_seconds, e.max_miles) IS DISTINCT FROM (a.runs, a.miles, a.duration_seconds, a.max_miles);
+
+-- the rows written by V8 hold rounded durations
+SELECT run_rollup_rebuild();
@@ -0,0 +1,84 @@
+-- Since V7 the primary key of run is (id, started_on) : PostgreSQL only checked ids within one month, and a lookup by
+-- id alone probed the index of every partition. run_id holds one row per run with the month it lives in
+-- Its primary key makes ids unique across every partition again : a write giving a second run an existing id fails
+-- with a unique violation, whichever month it lands in
+-- The by-id statements (RunRepository.findById / existsById, RunWriteRepositoryImpl, RunPatcher) read started_on
+-- here first : the scalar subquery is an init plan, it runs before any partition is read and PostgreSQL skips every
+-- other partition (run-time pruning, "never executed" in EXPLAIN ANALYZE)
+CREATE TABLE run_id (
+    id INT NOT NULL,
+    started_on TIMESTAMP NOT NULL,
+    PRIMARY KEY (id)
+);
+
+-- fails on an id already carried by two runs : they have to be told apart before this migration can run
+INSERT INTO run_id (id, started_on) SELECT id, started_on FROM run;
+
+-- statement level triggers like run_count, fed by the transition tables of every partition
+
+CREATE OR REPLACE FUNCTION run_id_inserted() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    INSERT INTO run_id (id, started_on) SELECT id, started_on FROM inserted;
+    RETURN NULL;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION run_id_deleted() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    DELETE FROM run_id WHERE id IN (SELECT id FROM deleted);
+    RETURN NULL;
+END
+$$;
+
+-- an UPDATE may move a run to another month, and in theory give it another id : the old rows go, the new ones are
+-- inserted and checked like new runs
+CREATE OR REPLACE FUNCTION run_id_updated() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    DELETE FROM run_id WHERE id IN (SELECT id FROM updated_old);
+    INSERT INTO run_id (id, started_on) SELECT id, started_on FROM updated_new;
+    RETURN NULL;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION run_id_truncated() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    TRUNCATE run_id;
+    RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER run_id_insert AFTER INSERT ON run
+    REFERENCING NEW TABLE AS inserted FOR EACH STATEMENT EXECUTE FUNCTION run_id_inserted();
+
+CREATE TRIGGER run_id_delete AFTER DELETE ON run
+    REFERENCING OLD TABLE AS deleted FOR EACH STATEMENT EXECUTE FUNCTION run_id_deleted();
+
+CREATE TRIGGER run_id_update AFTER UPDATE ON run
+    REFERENCING OLD TABLE AS updated_old NEW TABLE AS updated_new FOR EACH STATEMENT EXECUTE FUNCTION run_id_updated();
+
+CREATE TRIGGER run_id_truncate AFTER TRUNCATE ON run
+    FOR EACH STATEMENT EXECUTE FUNCTION run_id_truncated();
+
+-- A DETACH fires no DELETE trigger : the ids of the month leave run_id with it (V9 body otherwise unchanged)
+-- run_create_partition moves rows between partitions without changing them, run_id stays right
+CREATE OR REPLACE FUNCTION run_detach_partition(month TIMESTAMP) RETURNS TEXT LANGUAGE plpgsql AS $$
+DECLARE
+    partition_name TEXT := 'run_' || to_char(date_trunc('month', month), 'YYYY_MM');
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_inherits
+                   WHERE inhrelid = to_regclass(partition_name) AND inhparent = 'run'::regclass) THEN
+        RETURN NULL;
+    END IF;
+    EXECUTE format('LOCK TABLE %I IN EXCLUSIVE MODE', partition_name);
+    EXECUTE format('INSERT INTO run_count (slot, total) '
+                   'SELECT pg_backend_pid() %% 16, -count(*) FROM %I HAVING count(*) > 0 '
+                   'ON CONFLICT (slot) DO UPDATE SET total = run_count.total + EXCLUDED.total', partition_name);
+    EXECUTE format('DELETE FROM run_id WHERE id IN (SELECT id FROM %I)', partition_name);
+    DELETE FROM run_daily_rollup
+    WHERE day >= date_trunc('month', month) AND day < date_trunc('month', month) + INTERVAL '1 month';
+    EXECUTE format('ALTER TABLE run DETACH PARTITION %I', partition_name);
+    RETURN partition_name;
+END
+$$;
+
+ANALYZE run_id;
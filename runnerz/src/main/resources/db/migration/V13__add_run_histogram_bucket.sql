@@ -0,0 +1,16 @@
+-- The bucket of a value in LogHistogram (LogHistogram.index) : values clamped to [0, 2^40 - 1], below 128 a bucket
+-- each, above that 64 buckets per power of two. RunBulkDeleter groups the deleted miles and durations by it, so its
+-- result has a row per bucket used instead of one per distinct value
+CREATE OR REPLACE FUNCTION run_histogram_bucket(value BIGINT) RETURNS INT LANGUAGE plpgsql IMMUTABLE PARALLEL SAFE AS $$
+DECLARE
+    clamped BIGINT := least(greatest(value, 0), (1::bigint << 40) - 1);
+    shift INT;
+BEGIN
+    IF clamped < 128 THEN
+        RETURN clamped;
+    END IF;
+    -- the highest bit set, found in the 64 bits as text, less the 6 bits of the sub-buckets
+    shift := 64 - position('1' IN clamped::bit(64)::text) - 6;
+    RETURN 128 + (shift - 1) * 64 + (clamped >> shift)::int - 64;
+END
+$$;
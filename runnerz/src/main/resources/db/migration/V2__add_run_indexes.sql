@@ -0,0 +1,12 @@
+-- Secondary indexes for the RunRepository finders
+-- Every listing is keyset paginated on (started_on, id), so each filter column is followed by those two :
+-- the index gives the matching rows already in page order and the next page starts with an index range scan
+-- CONCURRENTLY keeps the table writable while they are built (Flyway runs this script outside a transaction)
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS run_started_on_id_idx ON run (started_on, id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS run_location_started_on_id_idx ON run (location, started_on, id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS run_miles_started_on_id_idx ON run (miles, started_on, id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS run_title_started_on_id_idx ON run (title, started_on, id);
@@ -0,0 +1,2 @@
+-- Trigram matching, lets GIN indexes answer LIKE / ILIKE with a leading wildcard
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
@@ -0,0 +1,4 @@
+-- Substring search on titles (partial-title/{keyword}, specific-pattern/...) : a B-tree cannot serve '%keyword%',
+-- a trigram GIN index can, for LIKE and ILIKE alike, as long as the literal part has at least 3 characters
+-- Kept apart from V3 : CONCURRENTLY cannot run in the same transaction as CREATE EXTENSION
+CREATE INDEX CONCURRENTLY IF NOT EXISTS run_title_trgm_idx ON run USING gin (title gin_trgm_ops);
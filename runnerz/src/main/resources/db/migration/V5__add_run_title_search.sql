@@ -0,0 +1,4 @@
+-- Full-text search on titles (GET /api/runs/search) : stemmed English lexemes of the title, kept by PostgreSQL itself
+-- Adding a STORED generated column rewrites the table once, plan this migration outside peak hours
+ALTER TABLE run ADD COLUMN IF NOT EXISTS title_search tsvector
+    GENERATED ALWAYS AS (to_tsvector('english', title)) STORED;
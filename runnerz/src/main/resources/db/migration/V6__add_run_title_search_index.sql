@@ -0,0 +1,2 @@
+-- Lets title_search @@ query find the matching rows without reading every tsvector
+CREATE INDEX CONCURRENTLY IF NOT EXISTS run_title_search_idx ON run USING gin (title_search);
@@ -0,0 +1,143 @@
+-- run becomes a table range-partitioned by month on started_on
+-- A query on a started_on range only reads the partitions of the months it covers, and an old month leaves the
+-- table with a DETACH (a catalog change) instead of a DELETE of every row
+-- The rows are copied once into the new table : plan this migration outside peak hours
+
+ALTER TABLE run RENAME TO run_unpartitioned;
+
+-- the partition key has to be part of every unique constraint, so the primary key becomes (id, started_on)
+-- ids stay unique on their own, they all come from run_id_seq
+CREATE TABLE run (
+    id INT NOT NULL DEFAULT nextval('run_id_seq'),
+    title VARCHAR(255) NOT NULL,
+    started_on TIMESTAMP NOT NULL,
+    completed_on TIMESTAMP NOT NULL,
+    miles INT NOT NULL,
+    location VARCHAR(10) NOT NULL,
+    version INT NOT NULL,
+    title_search tsvector GENERATED ALWAYS AS (to_tsvector('english', title)) STORED
+) PARTITION BY RANGE (started_on);
+
+-- the sequence must not go away with the old table
+ALTER SEQUENCE run_id_seq OWNED BY run.id;
+
+-- rows of a month without its partition yet (a backdated import, a date far in the future) land here,
+-- run_create_partition moves them out when their month is created
+CREATE TABLE run_default PARTITION OF run DEFAULT;
+
+-- Creates the partition of the month containing the given timestamp, named run_YYYY_MM, if it does not exist
+-- PostgreSQL refuses a new partition while the default one still holds rows of its range, so those rows are
+-- moved into it. Inserting into the partition directly does not fire the triggers of run : run_count is unchanged
+CREATE OR REPLACE FUNCTION run_create_partition(month TIMESTAMP) RETURNS BOOLEAN LANGUAGE plpgsql AS $$
+DECLARE
+    lower_bound TIMESTAMP := date_trunc('month', month);
+    upper_bound TIMESTAMP := date_trunc('month', month) + INTERVAL '1 month';
+    partition_name TEXT := 'run_' || to_char(date_trunc('month', month), 'YYYY_MM');
+    moving BOOLEAN;
+BEGIN
+    IF to_regclass(partition_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+
+    moving := EXISTS (SELECT 1 FROM run_default WHERE started_on >= lower_bound AND started_on < upper_bound);
+    IF moving THEN
+        CREATE TEMPORARY TABLE run_moving (
+            id INT, title VARCHAR(255), started_on TIMESTAMP, completed_on TIMESTAMP,
+            miles INT, location VARCHAR(10), version INT
+        );
+        WITH moved AS (
+            DELETE FROM run_default WHERE started_on >= lower_bound AND started_on < upper_bound
+            RETURNING id, title, started_on, completed_on, miles, location, version
+        )
+        INSERT INTO run_moving SELECT * FROM moved;
+    END IF;
+
+    EXECUTE format('CREATE TABLE %I PARTITION OF run FOR VALUES FROM (%L) TO (%L)',
+                   partition_name, lower_bound, upper_bound);
+
+    IF moving THEN
+        EXECUTE format('INSERT INTO %I (id, title, started_on, completed_on, miles, location, version) '
+                       'SELECT id, title, started_on, completed_on, miles, location, version FROM run_moving',
+                       partition_name);
+        DROP TABLE run_moving;
+    END IF;
+    RETURN TRUE;
+END
+$$;
+
+-- Makes sure run has a partition for the current month and the next months_ahead ones, and for every month that
+-- has rows in run_default. Called at startup and every night by RunPartitionMaintainer, returns the partitions created
+CREATE OR REPLACE FUNCTION run_create_partitions(months_ahead INT) RETURNS INT LANGUAGE plpgsql AS $$
+DECLARE
+    month TIMESTAMP;
+    created INT := 0;
+BEGIN
+    FOR month IN
+        SELECT generate_series(date_trunc('month', LOCALTIMESTAMP),
+                               date_trunc('month', LOCALTIMESTAMP) + make_interval(months => months_ahead),
+                               INTERVAL '1 month')
+        UNION
+        SELECT DISTINCT date_trunc('month', started_on) FROM run_default
+        ORDER BY 1
+    LOOP
+        IF run_create_partition(month) THEN
+            created := created + 1;
+        END IF;
+    END LOOP;
+    RETURN created;
+END
+$$;
+
+-- Takes the partition of one month out of run and returns its name (NULL when there is none)
+-- The rows stay in the detached table, ready to be archived or dropped. A DETACH fires no DELETE trigger, so their
+-- count is taken out of run_count here ; writes to the partition are blocked from the count to the detach
+CREATE OR REPLACE FUNCTION run_detach_partition(month TIMESTAMP) RETURNS TEXT LANGUAGE plpgsql AS $$
+DECLARE
+    partition_name TEXT := 'run_' || to_char(date_trunc('month', month), 'YYYY_MM');
+BEGIN
+    IF to_regclass(partition_name) IS NULL THEN
+        RETURN NULL;
+    END IF;
+    EXECUTE format('LOCK TABLE %I IN EXCLUSIVE MODE', partition_name);
+    EXECUTE format('INSERT INTO run_count (slot, total) '
+                   'SELECT pg_backend_pid() %% 16, -count(*) FROM %I HAVING count(*) > 0 '
+                   'ON CONFLICT (slot) DO UPDATE SET total = run_count.total + EXCLUDED.total', partition_name);
+    EXECUTE format('ALTER TABLE run DETACH PARTITION %I', partition_name);
+    RETURN partition_name;
+END
+$$;
+
+-- one partition per month of the existing rows, up to three months from now
+SELECT run_create_partition(month)
+FROM generate_series(
+        date_trunc('month', LEAST(LOCALTIMESTAMP, (SELECT min(started_on) FROM run_unpartitioned))),
+        date_trunc('month', GREATEST(LOCALTIMESTAMP + INTERVAL '3 months', (SELECT max(started_on) FROM run_unpartitioned))),
+        INTERVAL '1 month') AS month;
+
+-- no trigger on the new table yet : the copied rows are already in run_count
+INSERT INTO run (id, title, started_on, completed_on, miles, location, version)
+SELECT id, title, started_on, completed_on, miles, location, version FROM run_unpartitioned;
+
+-- takes the old indexes and triggers with it
+DROP TABLE run_unpartitioned;
+
+-- indexes of V2, V4 and V6, now defined on run and created on every partition, current and future
+ALTER TABLE run ADD PRIMARY KEY (id, started_on);
+CREATE INDEX run_started_on_id_idx ON run (started_on, id);
+CREATE INDEX run_location_started_on_id_idx ON run (location, started_on, id);
+CREATE INDEX run_miles_started_on_id_idx ON run (miles, started_on, id);
+CREATE INDEX run_title_started_on_id_idx ON run (title, started_on, id);
+CREATE INDEX run_title_trgm_idx ON run USING gin (title gin_trgm_ops);
+CREATE INDEX run_title_search_idx ON run USING gin (title_search);
+
+-- statement level triggers of V1, on a partitioned table they see the rows of every partition
+CREATE TRIGGER run_count_insert AFTER INSERT ON run
+    REFERENCING NEW TABLE AS inserted FOR EACH STATEMENT EXECUTE FUNCTION run_count_inserted();
+
+CREATE TRIGGER run_count_delete AFTER DELETE ON run
+    REFERENCING OLD TABLE AS deleted FOR EACH STATEMENT EXECUTE FUNCTION run_count_deleted();
+
+CREATE TRIGGER run_count_truncate AFTER TRUNCATE ON run
+    FOR EACH STATEMENT EXECUTE FUNCTION run_count_truncated();
+
+ANALYZE run;
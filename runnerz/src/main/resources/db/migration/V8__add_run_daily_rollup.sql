@@ -0,0 +1,168 @@
+-- Summary of run per day and location, kept by triggers in the transaction of every write (create, update, delete,
+-- saveAll, COPY, bulk delete, archival) so the stats of a period read a few rows per day instead of the runs
+-- day is the date of started_on, duration_seconds the sum of completed_on - started_on rounded per run
+-- A per location total is the sum of its days, a per day total the sum of its locations
+CREATE TABLE run_daily_rollup (
+    day DATE NOT NULL,
+    location VARCHAR(10) NOT NULL,
+    runs BIGINT NOT NULL,
+    miles BIGINT NOT NULL,
+    duration_seconds BIGINT NOT NULL,
+    max_miles INT NOT NULL,
+    PRIMARY KEY (day, location)
+);
+
+-- What one statement changed in one (day, location) : signed sums of the runs added and removed, and the largest
+-- miles on each side. An update is the removal of its old rows plus the addition of its new ones
+CREATE TYPE run_rollup_delta AS (
+    day DATE,
+    location VARCHAR(10),
+    runs BIGINT,
+    miles BIGINT,
+    duration_seconds BIGINT,
+    max_added INT,
+    max_removed INT
+);
+
+-- Applies the deltas of a statement, groups in (day, location) order so concurrent writers lock rows in the same order
+-- A maximum cannot be decremented : when the longest run of a group goes away and nothing as long replaces it, the
+-- maximum is read again from the runs of that day. That query runs after the rollup row is locked, a concurrent
+-- writer of the same group waits for this transaction and then only raises it
+CREATE OR REPLACE FUNCTION run_rollup_apply(deltas run_rollup_delta[]) RETURNS VOID LANGUAGE plpgsql AS $$
+BEGIN
+    INSERT INTO run_daily_rollup AS r (day, location, runs, miles, duration_seconds, max_miles)
+    SELECT d.day, d.location, d.runs, d.miles, d.duration_seconds, COALESCE(d.max_added, 0)
+    FROM unnest(deltas) d
+    -- an update that left miles and dates alone (a new title) changes nothing here
+    WHERE NOT (d.runs = 0 AND d.miles = 0 AND d.duration_seconds = 0 AND d.max_added >= d.max_removed)
+    ORDER BY d.day, d.location
+    ON CONFLICT (day, location) DO UPDATE SET
+        runs = r.runs + EXCLUDED.runs,
+        miles = r.miles + EXCLUDED.miles,
+        duration_seconds = r.duration_seconds + EXCLUDED.duration_seconds,
+        max_miles = GREATEST(r.max_miles, EXCLUDED.max_miles);
+
+    DELETE FROM run_daily_rollup r
+    USING unnest(deltas) d
+    WHERE r.day = d.day AND r.location = d.location AND r.runs = 0;
+
+    UPDATE run_daily_rollup r
+    SET max_miles = COALESCE((SELECT max(miles) FROM run
+                              WHERE location = r.location AND started_on >= r.day AND started_on < r.day + 1), 0)
+    FROM unnest(deltas) d
+    WHERE r.day = d.day AND r.location = d.location
+      AND d.max_removed >= r.max_miles AND (d.max_added IS NULL OR d.max_added < d.max_removed);
+END
+$$;
+
+CREATE OR REPLACE FUNCTION run_rollup_inserted() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    PERFORM run_rollup_apply(ARRAY(
+        SELECT ROW(started_on::date, location, count(*), sum(miles),
+                   sum(extract(epoch FROM completed_on - started_on)::bigint)::bigint, max(miles), NULL)::run_rollup_delta
+        FROM inserted GROUP BY started_on::date, location));
+    RETURN NULL;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION run_rollup_deleted() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    PERFORM run_rollup_apply(ARRAY(
+        SELECT ROW(started_on::date, location, -count(*), -sum(miles),
+                   -sum(extract(epoch FROM completed_on - started_on)::bigint)::bigint, NULL, max(miles))::run_rollup_delta
+        FROM deleted GROUP BY started_on::date, location));
+    RETURN NULL;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION run_rollup_updated() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    PERFORM run_rollup_apply(ARRAY(
+        SELECT ROW(day, location, sum(runs), sum(miles), sum(duration_seconds)::bigint, max(added), max(removed))::run_rollup_delta
+        FROM (
+            SELECT started_on::date AS day, location, 1 AS runs, miles,
+                   extract(epoch FROM completed_on - started_on)::bigint AS duration_seconds, miles AS added, NULL::int AS removed
+            FROM updated_new
+            UNION ALL
+            SELECT started_on::date, location, -1, -miles,
+                   -extract(epoch FROM completed_on - started_on)::bigint, NULL, miles
+            FROM updated_old
+        ) changes
+        GROUP BY day, location));
+    RETURN NULL;
+END
+$$;
+
+CREATE OR REPLACE FUNCTION run_rollup_truncated() RETURNS trigger LANGUAGE plpgsql AS $$
+BEGIN
+    DELETE FROM run_daily_rollup;
+    RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER run_rollup_insert AFTER INSERT ON run
+    REFERENCING NEW TABLE AS inserted FOR EACH STATEMENT EXECUTE FUNCTION run_rollup_inserted();
+
+CREATE TRIGGER run_rollup_update AFTER UPDATE ON run
+    REFERENCING OLD TABLE AS updated_old NEW TABLE AS updated_new FOR EACH STATEMENT EXECUTE FUNCTION run_rollup_updated();
+
+CREATE TRIGGER run_rollup_delete AFTER DELETE ON run
+    REFERENCING OLD TABLE AS deleted FOR EACH STATEMENT EXECUTE FUNCTION run_rollup_deleted();
+
+CREATE TRIGGER run_rollup_truncate AFTER TRUNCATE ON run
+    FOR EACH STATEMENT EXECUTE FUNCTION run_rollup_truncated();
+
+-- Recomputes the whole rollup from run, returns the number of (day, location) rows
+-- Writes to run wait until the transaction of the rebuild ends, reads go on
+CREATE OR REPLACE FUNCTION run_rollup_rebuild() RETURNS BIGINT LANGUAGE plpgsql AS $$
+DECLARE
+    groups BIGINT;
+BEGIN
+    LOCK TABLE run IN SHARE MODE;
+    DELETE FROM run_daily_rollup;
+    INSERT INTO run_daily_rollup (day, location, runs, miles, duration_seconds, max_miles)
+    SELECT started_on::date, location, count(*), sum(miles),
+           sum(extract(epoch FROM completed_on - started_on)::bigint), max(miles)
+    FROM run GROUP BY started_on::date, location;
+    GET DIAGNOSTICS groups = ROW_COUNT;
+    RETURN groups;
+END
+$$;
+
+-- The (day, location) rows where the rollup and run disagree, empty when the rollup is exact
+-- expected_* is computed from run, actual_* read from the rollup, NULL when the row is missing on that side
+CREATE VIEW run_rollup_drift AS
+SELECT COALESCE(e.day, a.day) AS day, COALESCE(e.location, a.location) AS location,
+       e.runs AS expected_runs, a.runs AS actual_runs,
+       e.miles AS expected_miles, a.miles AS actual_miles,
+       e.duration_seconds AS expected_duration_seconds, a.duration_seconds AS actual_duration_seconds,
+       e.max_miles AS expected_max_miles, a.max_miles AS actual_max_miles
+FROM (
+    SELECT started_on::date AS day, location, count(*) AS runs, sum(miles) AS miles,
+           sum(extract(epoch FROM completed_on - started_on)::bigint)::bigint AS duration_seconds, max(miles) AS max_miles
+    FROM run GROUP BY started_on::date, location
+) e
+FULL JOIN run_daily_rollup a ON a.day = e.day AND a.location = e.location
+WHERE (e.runs, e.miles, e.duration_seconds, e.max_miles) IS DISTINCT FROM (a.runs, a.miles, a.duration_seconds, a.max_miles);
+
+-- A DETACH fires no DELETE trigger : the month of the partition also leaves the rollup (V7 body otherwise unchanged)
+CREATE OR REPLACE FUNCTION run_detach_partition(month TIMESTAMP) RETURNS TEXT LANGUAGE plpgsql AS $$
+DECLARE
+    partition_name TEXT := 'run_' || to_char(date_trunc('month', month), 'YYYY_MM');
+BEGIN
+    IF to_regclass(partition_name) IS NULL THEN
+        RETURN NULL;
+    END IF;
+    EXECUTE format('LOCK TABLE %I IN EXCLUSIVE MODE', partition_name);
+    EXECUTE format('INSERT INTO run_count (slot, total) '
+                   'SELECT pg_backend_pid() %% 16, -count(*) FROM %I HAVING count(*) > 0 '
+                   'ON CONFLICT (slot) DO UPDATE SET total = run_count.total + EXCLUDED.total', partition_name);
+    DELETE FROM run_daily_rollup
+    WHERE day >= date_trunc('month', month) AND day < date_trunc('month', month) + INTERVAL '1 month';
+    EXECUTE format('ALTER TABLE run DETACH PARTITION %I', partition_name);
+    RETURN partition_name;
+END
+$$;
+
+-- seeded from the existing rows, the triggers keep it exact from then on
+SELECT run_rollup_rebuild();
@@ -0,0 +1,21 @@
+-- A detached partition is still a table : to_regclass found it and a second detach of the same month failed
+-- with "not a partition of relation run" instead of returning NULL. Only attached partitions are detached now
+-- (V8 body otherwise unchanged)
+CREATE OR REPLACE FUNCTION run_detach_partition(month TIMESTAMP) RETURNS TEXT LANGUAGE plpgsql AS $$
+DECLARE
+    partition_name TEXT := 'run_' || to_char(date_trunc('month', month), 'YYYY_MM');
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_inherits
+                   WHERE inhrelid = to_regclass(partition_name) AND inhparent = 'run'::regclass) THEN
+        RETURN NULL;
+    END IF;
+    EXECUTE format('LOCK TABLE %I IN EXCLUSIVE MODE', partition_name);
+    EXECUTE format('INSERT INTO run_count (slot, total) '
+                   'SELECT pg_backend_pid() %% 16, -count(*) FROM %I HAVING count(*) > 0 '
+                   'ON CONFLICT (slot) DO UPDATE SET total = run_count.total + EXCLUDED.total', partition_name);
+    DELETE FROM run_daily_rollup
+    WHERE day >= date_trunc('month', month) AND day < date_trunc('month', month) + INTERVAL '1 month';
+    EXECUTE format('ALTER TABLE run DETACH PARTITION %I', partition_name);
+    RETURN partition_name;
+END
+$$;
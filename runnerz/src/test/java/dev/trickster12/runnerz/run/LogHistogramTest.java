@@ -0,0 +1,81 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogHistogramTest {
+
+    @Test
+    void shouldBeExactForSmallValues() {
+        LogHistogram histogram = new LogHistogram();
+        for (int miles = 1; miles <= 100; miles++) {
+            histogram.add(miles, 1);
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(50, histogram.quantile(0.5));
+        assertEquals(90, histogram.quantile(0.9));
+        assertEquals(99, histogram.quantile(0.99));
+        assertEquals(1, histogram.quantile(0));
+        assertTrue(Double.isNaN(new LogHistogram().quantile(0.5)));
+    }
+
+    @Test
+    void shouldStayWithinOnePercentOfExactQuantiles() {
+        Random random = new Random(42);
+        long[] values = new long[100_000];
+        LogHistogram histogram = new LogHistogram();
+        for (int i = 0; i < values.length; i++) {
+            // durations in seconds, from a few minutes to a day
+            values[i] = 120 + (long) (Math.abs(random.nextGaussian()) * 5_000);
+            histogram.add(values[i], 1);
+        }
+        Arrays.sort(values);
+        for (double q : new double[]{0.5, 0.9, 0.99, 0.999}) {
+            long exact = values[(int) Math.ceil(q * values.length) - 1];
+            assertEquals(exact, histogram.quantile(q), exact * 0.01, "quantile " + q);
+        }
+    }
+
+    @Test
+    void shouldTakeAwayAndMergeExactly() {
+        LogHistogram kept = new LogHistogram();
+        LogHistogram changed = new LogHistogram();
+        for (int value = 1_000; value < 2_000; value++) {
+            kept.add(value, 1);
+            changed.add(value, 1);
+        }
+        // removing what was added leaves the histogram as if it never had been
+        for (int value = 50_000; value < 60_000; value++) {
+            changed.add(value, 1);
+        }
+        for (int value = 50_000; value < 60_000; value++) {
+            changed.add(value, -1);
+        }
+        assertEquals(kept.count(), changed.count());
+        assertEquals(kept.quantile(0.99), changed.quantile(0.99));
+
+        LogHistogram low = new LogHistogram();
+        LogHistogram high = new LogHistogram();
+        for (int value = 1; value <= 50; value++) {
+            low.add(value, 1);
+            high.add(value + 50, 1);
+        }
+        low.merge(high);
+        assertEquals(100, low.count());
+        assertEquals(50, low.quantile(0.5));
+        assertEquals(99, low.quantile(0.99));
+    }
+
+    @Test
+    void shouldBoundTheRelativeErrorOfEveryBucket() {
+        for (long value = 0; value < 1_000_000; value += 7) {
+            double error = Math.abs(LogHistogram.value(LogHistogram.index(value)) - value);
+            assertTrue(error <= value / 128.0, "value " + value);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RunArchiveTest {
+
+    private static final LocalDateTime START = LocalDateTime.parse("2020-01-01T06:00:00.123456");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldFindArchivedRunsById() {
+        RunArchive archive = new RunArchive(directory);
+        // more than one block, ids with gaps like the pooled sequence leaves them
+        List<Run> runs = runs(1, 3 * RunSegment.BLOCK_ROWS, 7);
+        archive.append(runs);
+
+        Run last = runs.get(runs.size() - 1);
+        assertEquals(Optional.of(last), archive.findById(last.getId()));
+        Run middle = runs.get(RunSegment.BLOCK_ROWS + 17);
+        Run found = archive.findById(middle.getId()).orElseThrow();
+        assertEquals(middle.getTitle(), found.getTitle());
+        assertEquals(middle.getStartedOn(), found.getStartedOn());
+        assertEquals(middle.getCompletedOn(), found.getCompletedOn());
+        assertEquals(middle.getLocation(), found.getLocation());
+        assertEquals(middle.getVersion(), found.getVersion());
+        assertTrue(archive.findById(middle.getId() + 1).isEmpty());
+    }
+
+    @Test
+    void shouldReopenSegmentsAndPreferTheNewestCopy() {
+        RunArchive archive = new RunArchive(directory);
+        archive.append(runs(1, 10, 1));
+        Run updated = new Run("Updated", START, START.plusHours(1), 9, Location.INDOOR, 4);
+        updated.setId(5);
+        archive.append(List.of(updated));
+
+        RunArchive reopened = new RunArchive(directory);
+
+        assertEquals(2, reopened.segments());
+        assertEquals("Updated", reopened.findById(5).orElseThrow().getTitle());
+        assertEquals("Run 3", reopened.findById(4).orElseThrow().getTitle());
+    }
+
+    @Test
+    void shouldCountEveryArchivedRunOnceAndOnlyOutsidePostgres() {
+        RunArchive archive = new RunArchive(directory);
+        archive.append(runs(1, 10, 1));
+        // archived again after a crash between its segment and its commit : ids 5 to 10 are in both segments
+        archive.append(runs(5, 6, 1));
+        // and 11 crashed in its turn, still in PostgreSQL
+        archive.append(runs(11, 1, 1));
+        Set<Integer> inPostgres = Set.of(11);
+
+        RunArchive reopened = new RunArchive(directory);
+        long counted = reopened.reconcile(ids -> Arrays.stream(ids).filter(inPostgres::contains).count());
+
+        assertEquals(10, counted);
+    }
+
+    @Test
+    void shouldOpenSegmentsWrittenByAnotherInstance() {
+        RunArchive archive = new RunArchive(directory);
+        RunArchive other = new RunArchive(directory);
+        other.append(runs(1, 3, 1));
+
+        archive.refresh();
+
+        assertEquals(1, archive.segments());
+        assertEquals("Run 1", archive.findById(2).orElseThrow().getTitle());
+        // the next segment of this instance follows the one of the other
+        assertEquals(2, archive.append(runs(4, 3, 1)).sequence());
+    }
+
+    @Test
+    void shouldRefuseARelativeDirectory() {
+        assertThrows(IllegalStateException.class, () -> new RunArchive(false, "archive"));
+        assertThrows(IllegalStateException.class, () -> new RunArchive(true, ""));
+        assertFalse(new RunArchive(false, "").enabled());
+    }
+
+    @Test
+    void shouldPageArchivedRunsInRange() {
+        RunArchive archive = new RunArchive(directory);
+        List<Run> runs = runs(1, 100, 1);  // one run per hour
+        archive.append(runs);
+        LocalDateTime from = START.plusHours(10);
+        LocalDateTime to = START.plusHours(20);
+
+        List<Run> first = archive.findPageByStartedOnRange(from, to, null, 4);
+        assertEquals(List.of(11, 12, 13, 14), first.stream().map(Run::getId).toList());
+
+        List<Run> second = archive.findPageByStartedOnRange(from, to, RunCursor.of(first.get(3)), 100);
+        assertEquals(List.of(15, 16, 17, 18, 19, 20), second.stream().map(Run::getId).toList());
+    }
+
+    @Test
+    void shouldMergeArchivedRunsIntoTheHotPage() {
+        RunArchive archive = new RunArchive(directory);
+        archive.append(runs(1, 3, 1));
+        Run hot = new Run("Hot", START.plusMinutes(30), START.plusHours(1), 3, Location.OUTDOOR, 0);
+        hot.setId(1000);
+        Run stillHot = new Run("Still hot", START, START.plusHours(1), 3, Location.OUTDOOR, 2);
+        stillHot.setId(1);  // also archived, the copy in PostgreSQL wins
+
+        List<Run> page = archive.completeRange(List.of(stillHot, hot), START, START.plusDays(1), null, 3);
+
+        assertEquals(List.of(1, 1000, 2), page.stream().map(Run::getId).toList());
+        assertEquals("Still hot", page.get(0).getTitle());
+    }
+
+    @Test
+    void shouldForgetDiscardedSegment() throws Exception {
+        RunArchive archive = new RunArchive(directory);
+        RunSegment segment = archive.append(runs(1, 5, 1));
+
+        archive.discard(segment);
+
+        assertTrue(archive.findById(1).isEmpty());
+        assertFalse(Files.exists(segment.path()));
+    }
+
+    private static List<Run> runs(int firstId, int count, int idStep) {
+        List<Run> runs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            LocalDateTime startedOn = START.plusHours(i);
+            Run run = new Run("Run " + i, startedOn, startedOn.plusMinutes(30 + i % 60), 1 + i % 20,
+                    i % 2 == 0 ? Location.INDOOR : Location.OUTDOOR, i % 3);
+            run.setId(firstId + i * idStep);
+            runs.add(run);
+        }
+        return runs;
+    }
+}
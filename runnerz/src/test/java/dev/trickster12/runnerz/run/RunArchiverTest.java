@@ -0,0 +1,110 @@
+package dev.trickster12.runnerz.run;
+
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Runs moved to cold storage leave the run table but can still be read by id and by date range
+// The archival joins the test transaction : the rollback at the end also discards the segment it wrote and the count
+// The directory is set for every test context, see config/application.properties
+@SpringBootTest(properties = "runnerz.runs.archive.enabled=true")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@Transactional // Assure le rollback après chaque test
+public class RunArchiverTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private RunArchiver runArchiver;
+
+    @Autowired
+    private RunRepository runRepository;
+
+    @Autowired
+    private RunCache runCache;
+
+    @Autowired
+    private RunCounter runCounter;
+
+    @Autowired
+    private JdbcClient jdbcClient;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void shouldServeArchivedRuns() throws Exception {
+        Run old = new Run("Old Run", LocalDateTime.parse("2001-03-04T07:00:00"), LocalDateTime.parse("2001-03-04T08:00:00"), 5, Location.OUTDOOR, 0);
+        Run recent = new Run("Recent Run", LocalDateTime.parse("2001-03-05T07:00:00"), LocalDateTime.parse("2001-03-05T08:00:00"), 5, Location.OUTDOOR, 0);
+        // a version makes them existing entities for Spring Data : the ids are set on the merged copies
+        old = runRepository.saveAllAndFlush(List.of(old, recent)).get(0);
+        runCache.clear();
+        long archived = runCounter.archived();
+
+        assertEquals(1, runArchiver.archive(LocalDateTime.parse("2001-03-05T00:00:00")));
+        entityManager.clear();  // the rows left through JDBC, forget the managed copies
+
+        assertTrue(runRepository.findById(old.getId()).isEmpty());
+        // counted in the transaction of the DELETE
+        assertEquals(archived + 1, runCounter.archived());
+        mockMvc.perform(get("/api/runs/" + old.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title", is("Old Run")));
+        mockMvc.perform(get("/api/runs/range").param("from", "2001-03-01T00:00:00").param("to", "2001-04-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].title", is("Old Run")))
+                .andExpect(jsonPath("$[1].title", is("Recent Run")));
+    }
+
+    @Test
+    void shouldLeaveTheRunsToTheInstanceHoldingTheLock() throws Exception {
+        Run old = new Run("Old Run", LocalDateTime.parse("2001-03-04T07:00:00"), LocalDateTime.parse("2001-03-04T08:00:00"), 5, Location.OUTDOOR, 0);
+        old = runRepository.saveAndFlush(old);
+
+        // another instance archiving : it holds the lock until its transaction ends
+        CompletableFuture<Void> holder = new CompletableFuture<>();
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread otherInstance = new Thread(() -> transactionTemplate.executeWithoutResult(status -> {
+            jdbcClient.sql("SELECT pg_advisory_xact_lock(:key)").param("key", RunArchiver.ARCHIVE_LOCK).query().listOfRows();
+            locked.countDown();
+            holder.join();
+        }));
+        otherInstance.start();
+        try {
+            assertTrue(locked.await(10, TimeUnit.SECONDS));
+            assertEquals(0, runArchiver.archive(LocalDateTime.parse("2001-03-05T00:00:00")));
+        } finally {
+            holder.complete(null);
+            otherInstance.join();
+        }
+        entityManager.clear();
+        assertTrue(runRepository.findById(old.getId()).isPresent());
+    }
+}
@@ -0,0 +1,100 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+// Latency of GET and PUT by id (RunRepository.findById, updateIfVersionMatches) against the number of monthly
+// partitions of run, with the month read from run_id (V12) and with the lookup on id alone of before
+// Not part of the normal build, run it with : ./mvnw test -Dtest=RunByIdBenchmarkTest -Dbenchmark=true
+// The partitions and rows are created in the test transaction and rolled back at the end
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class RunByIdBenchmarkTest {
+
+    private static final int RUNS_PER_MONTH = 1_000;
+    private static final int WARM_UP = 200;
+    private static final int ITERATIONS = 2_000;
+
+    // both GETs go through JdbcClient : only the statement differs, the first one is the SQL of findById
+    private static final String FIND_BY_ID = """
+            SELECT id, title, started_on, completed_on, miles, location, version FROM run
+            WHERE id = :id AND started_on = (SELECT started_on FROM run_id WHERE id = :id)""";
+    private static final String FIND_BY_ID_ONLY = """
+            SELECT id, title, started_on, completed_on, miles, location, version FROM run WHERE id = :id""";
+
+    @Autowired
+    private RunRepository runRepository;
+
+    @Autowired
+    private JdbcClient jdbcClient;
+
+    @ParameterizedTest
+    @ValueSource(ints = {12, 120, 600})
+    void byIdLatency(int months) {
+        jdbcClient.sql("""
+                        SELECT run_create_partition(month)
+                        FROM generate_series(timestamp '1970-01-01', timestamp '1970-01-01' + make_interval(months => :months - 1),
+                                             interval '1 month') AS month""")
+                .param("months", months)
+                .query().listOfRows();
+        jdbcClient.sql("""
+                        INSERT INTO run (id, title, started_on, completed_on, miles, location, version)
+                        SELECT nextval('run_id_seq'), 'Bench Run',
+                               timestamp '1970-01-01' + (i % :months) * interval '1 month' + (i / :months) * interval '1 minute',
+                               timestamp '1970-01-01' + (i % :months) * interval '1 month' + (i / :months) * interval '1 minute'
+                                   + interval '45 minutes',
+                               1 + i % 20, CASE WHEN i % 2 = 0 THEN 'INDOOR' ELSE 'OUTDOOR' END, 0
+                        FROM generate_series(0, :rows - 1) AS i""")
+                .param("months", months)
+                .param("rows", months * RUNS_PER_MONTH)
+                .update();
+        jdbcClient.sql("ANALYZE run").update();
+        jdbcClient.sql("ANALYZE run_id").update();
+        List<Integer> ids = jdbcClient.sql("SELECT id FROM run WHERE title = 'Bench Run'").query(Integer.class).list();
+        long partitions = jdbcClient.sql("SELECT count(*) FROM pg_inherits WHERE inhparent = 'run'::regclass")
+                .query(Long.class).single();
+
+        Random random = new Random(42);
+        report("GET by id, month from run_id", partitions, () -> jdbcClient.sql(FIND_BY_ID)
+                .param("id", pick(ids, random)).query(Run.class).optional());
+        report("GET by id, id only       ", partitions, () -> jdbcClient.sql(FIND_BY_ID_ONLY)
+                .param("id", pick(ids, random)).query(Run.class).optional());
+        // the GET gives the current version, the PUT has to send it
+        report("GET then PUT by id       ", partitions, () -> {
+            Run run = runRepository.findById(pick(ids, random)).orElseThrow();
+            runRepository.updateIfVersionMatches(run.getId(), run);
+        });
+    }
+
+    private static Integer pick(List<Integer> ids, Random random) {
+        return ids.get(random.nextInt(ids.size()));
+    }
+
+    private static void report(String label, long partitions, Runnable call) {
+        for (int i = 0; i < WARM_UP; i++) {
+            call.run();
+        }
+        long[] timings = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long begin = System.nanoTime();
+            call.run();
+            timings[i] = System.nanoTime() - begin;
+        }
+        Arrays.sort(timings);
+        System.out.printf("%s over %,d partitions : median %.3f ms, p99 %.3f ms, max %.3f ms%n", label, partitions,
+                timings[ITERATIONS / 2] / 1_000_000.0, timings[ITERATIONS * 99 / 100] / 1_000_000.0,
+                timings[ITERATIONS - 1] / 1_000_000.0);
+    }
+}
@@ -0,0 +1,67 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class RunCacheTest {
+
+    private RunRepository runRepository;
+    private RunCache runCache;
+
+    @BeforeEach
+    void setUp() {
+        runRepository = Mockito.mock(RunRepository.class);
+        // room for 4 runs : a bulk delete of more than 4 drops everything
+        runCache = new RunCache(runRepository, Mockito.mock(RunArchive.class), 4, Duration.ofMinutes(10), 1_000);
+        IntStream.rangeClosed(1, 4).forEach(id -> when(runRepository.findById(id)).thenReturn(Optional.of(run(id, 1))));
+        IntStream.rangeClosed(1, 4).forEach(runCache::findById);
+    }
+
+    @Test
+    void shouldInvalidateASmallBulkDeleteRunByRun() {
+        assertEquals(4, runCache.maxDeletedFloors());
+        when(runRepository.findById(3)).thenReturn(Optional.empty());
+
+        runCache.invalidateDeleted(1, new int[]{3});
+
+        assertTrue(runCache.findById(3).isEmpty());
+        // the others are still cached
+        assertEquals(4, runCache.findById(4).orElseThrow().getId());
+        verify(runRepository, times(1)).findById(4);
+    }
+
+    @Test
+    void shouldDropEverythingWhenMoreRunsAreDeletedThanTheCacheHolds() {
+        // a PUT of run 1 committed : version 2 is its floor, a copy of version 1 must not be served
+        runCache.invalidate(1, 2);
+
+        // 10 runs deleted, their ids were not collected
+        IntStream.rangeClosed(2, 4).forEach(id -> when(runRepository.findById(id)).thenReturn(Optional.empty()));
+        runCache.invalidateDeleted(10, null);
+
+        assertEquals(0, runCache.size());
+        IntStream.rangeClosed(2, 4).forEach(id -> assertTrue(runCache.findById(id).isEmpty()));
+        // the floor of the PUT outlived the bulk delete
+        assertTrue(runCache.findById(1).isEmpty());
+        when(runRepository.findById(1)).thenReturn(Optional.of(run(1, 2)));
+        assertEquals(2, runCache.findById(1).orElseThrow().getVersion());
+    }
+
+    private static Run run(int id, int version) {
+        Run run = new Run("Run " + id, LocalDateTime.parse("2024-01-01T07:00:00"), LocalDateTime.parse("2024-01-01T08:00:00"), 5, Location.OUTDOOR, version);
+        run.setId(id);
+        return run;
+    }
+}
@@ -0,0 +1,103 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Heap held by 2M runs as a List<Run> and as RunColumns, and the time of the same filter + aggregate over both
+// Not part of the normal build, run it with : ./mvnw test -Dtest=RunColumnsBenchmarkTest -Dbenchmark=true
+// Heap sizes are read from Runtime after System.gc(), give the JVM room (-Xmx2g) so the numbers mean something
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class RunColumnsBenchmarkTest {
+
+    private static final int ROWS = 2_000_000;
+    private static final int TITLES = 1_000;
+    private static final int WARM_UP = 5;
+    private static final int ITERATIONS = 20;
+    private static final LocalDateTime START = LocalDateTime.parse("2020-01-01T00:00:00");
+
+    private static final RunFilter FILTER = new RunFilter(Location.OUTDOOR, 5, 15, START.plusDays(100), START.plusDays(1000));
+
+    @Test
+    void footprintAndScanTime() {
+        long empty = usedHeap();
+        List<Run> list = new ArrayList<>(ROWS);
+        for (int i = 0; i < ROWS; i++) {
+            list.add(run(i));
+        }
+        long listBytes = usedHeap() - empty;
+
+        RunColumns columns = new RunColumns(true);
+        for (int from = 0; from < ROWS; from += 10_000) {
+            columns.put(list.subList(from, Math.min(from + 10_000, ROWS)));
+        }
+        long columnsBytes = usedHeap() - empty - listBytes;
+
+        System.out.printf("List<Run>  : %,d bytes, %.1f bytes per run%n", listBytes, (double) listBytes / ROWS);
+        System.out.printf("RunColumns : %,d bytes, %.1f bytes per run (footprint() says %,d)%n",
+                columnsBytes, (double) columnsBytes / ROWS, columns.footprint());
+
+        RunTotals expected = scanList(list);
+        assertEquals(expected, columns.totals(FILTER));
+        report("List<Run>  scan", () -> scanList(list));
+        report("RunColumns scan", () -> columns.totals(FILTER));
+    }
+
+    // what a scan of materialized runs does : dereference every Run and its LocalDateTimes
+    private static RunTotals scanList(List<Run> runs) {
+        long count = 0;
+        long miles = 0;
+        long duration = 0;
+        int longest = Integer.MIN_VALUE;
+        for (Run run : runs) {
+            if (run.getLocation() != FILTER.location() || run.getMiles() < FILTER.minMiles() || run.getMiles() > FILTER.maxMiles()
+                    || run.getStartedOn().isBefore(FILTER.from()) || !run.getStartedOn().isBefore(FILTER.to())) {
+                continue;
+            }
+            count++;
+            miles += run.getMiles();
+            duration += RunColumns.epochSecond(run.getCompletedOn()) - RunColumns.epochSecond(run.getStartedOn());
+            longest = Math.max(longest, run.getMiles());
+        }
+        return new RunTotals(count, miles, count == 0 ? null : (double) miles / count, count == 0 ? null : longest, duration);
+    }
+
+    // each run gets its own title String, like rows read from JDBC
+    private static Run run(int i) {
+        LocalDateTime startedOn = START.plusMinutes(i);
+        Run run = new Run(new String("Run number " + (i % TITLES)), startedOn, startedOn.plusMinutes(20 + i % 60),
+                1 + i % 20, i % 3 == 0 ? Location.INDOOR : Location.OUTDOOR, 0);
+        run.setId(i + 1);
+        return run;
+    }
+
+    private static void report(String label, Supplier<RunTotals> scan) {
+        for (int i = 0; i < WARM_UP; i++) {
+            scan.get();
+        }
+        long[] timings = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long begin = System.nanoTime();
+            scan.get();
+            timings[i] = System.nanoTime() - begin;
+        }
+        Arrays.sort(timings);
+        System.out.printf("%s over %,d runs : median %.2f ms, max %.2f ms%n",
+                label, ROWS, timings[ITERATIONS / 2] / 1_000_000.0, timings[ITERATIONS - 1] / 1_000_000.0);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
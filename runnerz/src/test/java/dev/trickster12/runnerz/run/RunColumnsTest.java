@@ -0,0 +1,133 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class RunColumnsTest {
+
+    private static final LocalDateTime START = LocalDateTime.parse("2024-06-01T07:00:00");
+
+    @Test
+    void shouldAggregateMatchingRuns() {
+        RunColumns columns = new RunColumns(true);
+        columns.put(List.of(
+                run(1, "Morning Run", 0, 3, Location.OUTDOOR),
+                run(2, "Morning Run", 1, 10, Location.OUTDOOR),
+                run(3, "Treadmill", 2, 5, Location.INDOOR)));
+
+        RunTotals all = columns.totals(new RunFilter(null, null, null, null, null));
+        assertEquals(new RunTotals(3, 18, 6.0, 10, 3 * 3600), all);
+
+        assertEquals(2, columns.totals(new RunFilter(Location.OUTDOOR, null, null, null, null)).runs());
+        assertEquals(new RunTotals(1, 5, 5.0, 5, 3600), columns.totals(new RunFilter(null, 4, 9, null, null)));
+        // from is inclusive, to is exclusive
+        assertEquals(2, columns.totals(new RunFilter(null, null, null, START.plusDays(1), START.plusDays(3))).runs());
+        assertEquals(1, columns.totals(new RunFilter(null, null, null, START, START.plusDays(1))).runs());
+
+        RunTotals none = columns.totals(new RunFilter(Location.INDOOR, 6, null, null, null));
+        assertEquals(0, none.runs());
+        assertNull(none.averageMiles());
+        assertNull(none.longestRun());
+    }
+
+    @Test
+    void shouldReplaceAndRemoveRuns() {
+        RunColumns columns = new RunColumns(true);
+        columns.put(List.of(run(1, "First", 0, 3, Location.OUTDOOR), run(2, "Second", 0, 4, Location.OUTDOOR),
+                run(3, "Third", 0, 5, Location.OUTDOOR)));
+
+        Run updated = run(1, "First again", 0, 8, Location.INDOOR);
+        updated.setVersion(1);
+        columns.put(updated);
+        // a write older than the stored one is dropped
+        columns.put(run(1, "First", 0, 3, Location.OUTDOOR));
+        assertEquals(3, columns.size());
+        assertEquals(17, columns.totals(new RunFilter(null, null, null, null, null)).totalMiles());
+        assertEquals("First again", columns.run(0).getTitle());
+
+        // the last slot takes the place of the removed one
+        columns.remove(1);
+        assertEquals(2, columns.size());
+        assertEquals(3, columns.run(0).getId());
+        columns.remove(new int[]{2, 3, 42});
+        assertEquals(0, columns.size());
+    }
+
+    @Test
+    void shouldNotBringBackARemovedRun() {
+        RunColumns columns = new RunColumns(true);
+        columns.put(List.of(run(1, "First", 0, 3, Location.OUTDOOR), run(2, "Second", 0, 4, Location.OUTDOOR)));
+
+        // a PUT committed, then a DELETE of the same run committed and was applied first
+        Run updated = run(1, "First again", 0, 8, Location.OUTDOOR);
+        updated.setVersion(1);
+        columns.remove(1);
+        columns.put(updated);
+        assertEquals(1, columns.size());
+        assertEquals(2, columns.run(0).getId());
+
+        // only the last REMOVED_FLOORS removed ids are remembered
+        for (int id = 1_000; id < 1_000 + RunColumns.REMOVED_FLOORS; id++) {
+            columns.remove(id);
+        }
+        columns.put(updated);
+        assertEquals(2, columns.size());
+    }
+
+    @Test
+    void shouldTakeImportedBatches() {
+        RunColumns columns = new RunColumns(true);
+        RunColumns.Batch batch = new RunColumns.Batch();
+        for (int i = 1; i <= 3000; i++) {
+            batch.add(i, "Imported " + (i % 7), START, START.plusMinutes(30), 2, Location.INDOOR);
+        }
+        columns.put(batch);
+
+        assertEquals(3000, columns.size());
+        assertEquals(new RunTotals(3000, 6000, 2.0, 2, 3000 * 1800), columns.totals(new RunFilter(null, null, null, null, null)));
+    }
+
+    @Test
+    void shouldMatchMapUnderRandomWrites() {
+        IntIntHashMap map = new IntIntHashMap(4);
+        Map<Integer, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            int key = 1 + random.nextInt(5_000);
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                map.put(key, i);
+                expected.put(key, i);
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = 1; key <= 5_000; key++) {
+            assertEquals(expected.getOrDefault(key, IntIntHashMap.MISSING), map.get(key));
+        }
+    }
+
+    @Test
+    void shouldRefuseScansWhenDisabled() {
+        RunColumns columns = new RunColumns(false);
+        columns.put(run(1, "Ignored", 0, 3, Location.OUTDOOR));
+        assertThrows(RunColumnsDisabledException.class, () -> columns.totals(new RunFilter(null, null, null, null, null)));
+    }
+
+    // one hour, started day days after START
+    private static Run run(int id, String title, int day, int miles, Location location) {
+        Run run = new Run(title, START.plusDays(day), START.plusDays(day).plusHours(1), miles, location, 0);
+        run.setId(id);
+        return run;
+    }
+}
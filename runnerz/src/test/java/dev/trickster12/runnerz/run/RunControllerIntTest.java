@@ -1,18 +1,30 @@
 package dev.trickster12.runnerz.run;
 
 import jakarta.activation.DataSource;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.simple.JdbcClient;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 
 import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.jupiter.api.Assertions.*;
@@ -33,9 +45,45 @@ public class RunControllerIntTest {
     @Autowired
     private RunRepository runRepository;
 
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private RunBulkDeleter runBulkDeleter;
+
+    @Autowired
+    private RunPartitionMaintainer runPartitionMaintainer;
+
+    @Autowired
+    private RunCounter runCounter;
+
+    @Autowired
+    private JdbcClient jdbcClient;
+
+    @Autowired
+    private RunQuantiles runQuantiles;
+
     @MockitoBean // Mock the conflicting data source
     private DataSource jdbcConnectionDetailsForRunnerzAppMainPostgres1;
 
+    // The in-memory stores only follow committed writes (RunChange) : the tests checking them run without the test
+    // transaction, their rows are committed and deleted here. The stores keep them until restart, each of these tests
+    // has a period of its own
+    private static final List<String> COMMITTED_TITLES = List.of("Old Indoor", "Old Outdoor", "Recent Indoor",
+            "Scan Run", "Versioned Run", "Versioned Batch Run", "Percentile Run", "Sketch Run");
+
+    // the sketches of RunQuantiles are loaded once the application is ready, on a thread of their own
+
+    @BeforeEach
+    void waitForTheSketches() throws Exception {
+        runQuantiles.loaded().get(30, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void deleteCommittedRuns() {
+        jdbcClient.sql("DELETE FROM run WHERE title IN (:titles)").param("titles", COMMITTED_TITLES).update();
+    }
+
 
     @Test
     void shouldFetchAllRuns() throws Exception {
@@ -49,8 +97,8 @@ public class RunControllerIntTest {
                         .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$", hasSize(2)))
-                .andExpect(jsonPath("$[0].title", is("Morning Run")))
-                .andExpect(jsonPath("$[1].title", is("Evening Run")));
+                .andExpect(jsonPath("$[0].title", is("Evening Run"))) // pages are ordered by startedOn
+                .andExpect(jsonPath("$[1].title", is("Morning Run")));
     }
 
     @Test
@@ -120,6 +168,34 @@ public class RunControllerIntTest {
         assert (updatedRun.getMiles() == 10);
     }
 
+    @Test
+    void shouldPatchOnlyGivenFields() throws Exception {
+        Run run = new Run("Old Title", LocalDateTime.parse("2023-10-01T10:00:00"), LocalDateTime.parse("2023-10-01T12:00:00"), 8, Location.INDOOR, 1);
+        Run savedRun = runRepository.saveAndFlush(run);
+
+        mockMvc.perform(patch("/api/runs/" + savedRun.getId())
+                        .contentType("application/merge-patch+json")
+                        .content("""
+                                { "title": "Patched Title", "version": 1 }
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.version", is(2)));
+
+        // the UPDATE went around the persistence context, read the row again
+        entityManager.clear();
+        Run patchedRun = runRepository.findById(savedRun.getId()).orElseThrow();
+        assertEquals("Patched Title", patchedRun.getTitle());
+        assertEquals(8, patchedRun.getMiles());
+
+        // the same version cannot be used twice
+        mockMvc.perform(patch("/api/runs/" + savedRun.getId())
+                        .contentType("application/merge-patch+json")
+                        .content("""
+                                { "miles": 9, "version": 1 }
+                                """))
+                .andExpect(status().isConflict());
+    }
+
     @Test
     void shouldDeleteRun() throws Exception {
         // Préparer une course à supprimer
@@ -134,6 +210,368 @@ public class RunControllerIntTest {
         assert (runRepository.findById(savedRun.getId()).isEmpty());
     }
 
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldDeleteRunsMatchingFilters() throws Exception {
+        Run oldIndoor = new Run("Old Indoor", LocalDateTime.parse("2020-01-01T10:00:00"), LocalDateTime.parse("2020-01-01T11:00:00"), 3, Location.INDOOR, 1);
+        Run oldOutdoor = new Run("Old Outdoor", LocalDateTime.parse("2020-01-02T10:00:00"), LocalDateTime.parse("2020-01-02T11:00:00"), 3, Location.OUTDOOR, 1);
+        Run recentIndoor = new Run("Recent Indoor", LocalDateTime.parse("2024-01-01T10:00:00"), LocalDateTime.parse("2024-01-01T11:00:00"), 3, Location.INDOOR, 1);
+        // a version makes them existing entities for Spring Data : the ids are set on the merged copies
+        Integer oldIndoorId = runRepository.saveAllAndFlush(List.of(oldIndoor, oldOutdoor, recentIndoor)).get(0).getId();
+        mockMvc.perform(get("/api/runs/" + oldIndoorId))
+                .andExpect(status().isOk());  // now in RunCache
+
+        mockMvc.perform(delete("/api/runs")
+                        .param("location", "INDOOR")
+                        .param("startedBefore", "2023-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", is(1)));
+        mockMvc.perform(get("/api/runs/" + oldIndoorId))
+                .andExpect(status().isNotFound());
+
+        entityManager.clear();
+        assertEquals(List.of("Old Outdoor", "Recent Indoor"),
+                runRepository.findAll().stream().map(Run::getTitle).sorted().toList());
+    }
+
+    @Test
+    void shouldLeaveIdsOutOfBulkDeleteUnlessAsked() {
+        runRepository.saveAllAndFlush(List.of(
+                new Run("Ids Run", LocalDateTime.parse("2019-05-01T10:00:00"), LocalDateTime.parse("2019-05-01T11:00:00"), 11, Location.INDOOR, 1),
+                new Run("Ids Run", LocalDateTime.parse("2019-05-02T10:00:00"), LocalDateTime.parse("2019-05-02T11:00:00"), 11, Location.INDOOR, 1)));
+
+        // neither RunCache nor RunColumns on : only the counts come back
+        RunBulkDeleter.Result deleted = runBulkDeleter.delete(Location.INDOOR, LocalDateTime.parse("2019-06-01T00:00:00"), 11, 11, 0);
+
+        assertEquals(2, deleted.deleted());
+        assertNull(deleted.ids());
+        assertEquals(Map.of("Ids Run", 2L), deleted.titles());
+    }
+
+    @Test
+    void shouldCollectIdsOnlyUpToTheLimit() {
+        List<Run> saved = runRepository.saveAllAndFlush(List.of(
+                new Run("Ids Run", LocalDateTime.parse("2019-05-01T10:00:00"), LocalDateTime.parse("2019-05-01T11:00:00"), 11, Location.INDOOR, 1),
+                new Run("Ids Run", LocalDateTime.parse("2019-05-02T10:00:00"), LocalDateTime.parse("2019-05-02T11:00:00"), 11, Location.INDOOR, 1),
+                new Run("Ids Run", LocalDateTime.parse("2019-05-03T10:00:00"), LocalDateTime.parse("2019-05-03T11:00:00"), 12, Location.INDOOR, 1)));
+
+        // 2 runs for a limit of 2 : all of their ids
+        RunBulkDeleter.Result deleted = runBulkDeleter.delete(Location.INDOOR, LocalDateTime.parse("2019-06-01T00:00:00"), 11, 11, 2);
+        assertEquals(2, deleted.deleted());
+        assertEquals(Set.of(saved.get(0).getId(), saved.get(1).getId()),
+                Arrays.stream(deleted.ids()).boxed().collect(Collectors.toSet()));
+
+        // nothing deleted : no id, but nothing missing either
+        assertEquals(0, runBulkDeleter.delete(Location.INDOOR, LocalDateTime.parse("2019-06-01T00:00:00"), 11, 11, 2).ids().length);
+
+        runRepository.saveAllAndFlush(List.of(
+                new Run("Ids Run", LocalDateTime.parse("2019-05-04T10:00:00"), LocalDateTime.parse("2019-05-04T11:00:00"), 12, Location.INDOOR, 1)));
+        // 2 runs for a limit of 1 : the ids are left out, the rest of the result is complete
+        deleted = runBulkDeleter.delete(Location.INDOOR, LocalDateTime.parse("2019-06-01T00:00:00"), 12, 12, 1);
+        assertEquals(2, deleted.deleted());
+        assertNull(deleted.ids());
+        assertEquals(Map.of("Ids Run", 2L), deleted.titles());
+    }
+
+    @Test
+    void shouldKeepTheCounterEqualToTheTable() throws Exception {
+        // March 1997 has no partition yet : its runs wait in run_default
+        // every step runs in the test transaction, TRUNCATE and DETACH included, and is rolled back with it
+        runRepository.saveAllAndFlush(List.of(
+                new Run("Counted Run", LocalDateTime.parse("1997-03-01T10:00:00"), LocalDateTime.parse("1997-03-01T11:00:00"), 901, Location.INDOOR, 1),
+                new Run("Counted Run", LocalDateTime.parse("1997-03-02T10:00:00"), LocalDateTime.parse("1997-03-02T11:00:00"), 901, Location.INDOOR, 1),
+                new Run("Counted Run", LocalDateTime.parse("1997-03-03T10:00:00"), LocalDateTime.parse("1997-03-03T11:00:00"), 902, Location.OUTDOOR, 1),
+                new Run("Counted Run", LocalDateTime.parse("1997-03-04T10:00:00"), LocalDateTime.parse("1997-03-04T11:00:00"), 902, Location.OUTDOOR, 1)));
+        assertCountMatchesTable();
+
+        assertEquals(1, runBulkDeleter.delete(Location.INDOOR, LocalDateTime.parse("1997-03-02T00:00:00"), 901, 901, 0).deleted());
+        assertCountMatchesTable();
+
+        // V7 : the rows of the month are copied out of run_default into the new partition, without the triggers of run
+        assertEquals(Boolean.TRUE, jdbcClient.sql("SELECT run_create_partition(TIMESTAMP '1997-03-01')").query(Boolean.class).single());
+        assertEquals(3, jdbcClient.sql("SELECT count(*) FROM run_1997_03").query(Long.class).single());
+        assertCountMatchesTable();
+
+        // moved to April, back into run_default : a DELETE and an INSERT between partitions
+        assertEquals(1, jdbcClient.sql("""
+                        UPDATE run SET started_on = started_on + INTERVAL '1 month', completed_on = completed_on + INTERVAL '1 month'
+                        WHERE started_on = TIMESTAMP '1997-03-03 10:00:00' AND miles = 902""").update());
+        assertEquals(2, jdbcClient.sql("SELECT count(*) FROM run_1997_03").query(Long.class).single());
+        assertCountMatchesTable();
+
+        assertEquals(Optional.of("run_1997_03"), runPartitionMaintainer.detach(YearMonth.of(1997, 3)));
+        assertCountMatchesTable();
+
+        jdbcClient.sql("TRUNCATE run").update();
+        assertCountMatchesTable();
+    }
+
+    // GET /api/runs/count also counts the runs moved to cold storage by RunArchiver
+
+    private void assertCountMatchesTable() throws Exception {
+        long rows = jdbcClient.sql("SELECT count(*) FROM run").query(Long.class).single();
+        mockMvc.perform(get("/api/runs/count"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(String.valueOf(rows + runCounter.archived())));
+    }
+
+    @Test
+    void shouldSearchTitlesByRelevance() throws Exception {
+        Run trail = new Run("Trail running in the morning", LocalDateTime.parse("2023-10-01T07:00:00"), LocalDateTime.parse("2023-10-01T08:00:00"), 6, Location.OUTDOOR, 1);
+        Run morning = new Run("Morning run, morning sun", LocalDateTime.parse("2023-10-02T07:00:00"), LocalDateTime.parse("2023-10-02T08:00:00"), 4, Location.OUTDOOR, 1);
+        Run treadmill = new Run("Treadmill intervals", LocalDateTime.parse("2023-10-03T18:00:00"), LocalDateTime.parse("2023-10-03T19:00:00"), 3, Location.INDOOR, 1);
+        runRepository.saveAllAndFlush(List.of(trail, morning, treadmill));
+
+        // "runs" is stemmed to "run", the title with "morning" twice ranks first
+        mockMvc.perform(get("/api/runs/search").param("q", "morning runs"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].title", is("Morning run, morning sun")))
+                .andExpect(jsonPath("$[1].title", is("Trail running in the morning")));
+
+        // one hit per page, the second page continues after the first one
+        String cursor = mockMvc.perform(get("/api/runs/search").param("q", "morning runs").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andReturn().getResponse().getHeader(RunController.NEXT_CURSOR_HEADER);
+        assertNotNull(cursor);
+
+        mockMvc.perform(get("/api/runs/search").param("q", "morning runs").param("size", "1").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].title", is("Trail running in the morning")))
+                .andExpect(header().doesNotExist(RunController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void shouldFetchRunsInRange() throws Exception {
+        Run september = new Run("Last September Run", LocalDateTime.parse("2023-09-30T23:00:00"), LocalDateTime.parse("2023-09-30T23:30:00"), 3, Location.OUTDOOR, 1);
+        Run first = new Run("First October Run", LocalDateTime.parse("2023-10-01T00:00:00"), LocalDateTime.parse("2023-10-01T00:30:00"), 3, Location.OUTDOOR, 1);
+        Run last = new Run("Last October Run", LocalDateTime.parse("2023-10-31T23:00:00"), LocalDateTime.parse("2023-10-31T23:30:00"), 3, Location.INDOOR, 1);
+        Run november = new Run("First November Run", LocalDateTime.parse("2023-11-01T00:00:00"), LocalDateTime.parse("2023-11-01T00:30:00"), 3, Location.INDOOR, 1);
+        runRepository.saveAllAndFlush(List.of(september, first, last, november));
+
+        // from is inclusive, to is exclusive
+        mockMvc.perform(get("/api/runs/range").param("from", "2023-10-01T00:00:00").param("to", "2023-11-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].title", is("First October Run")))
+                .andExpect(jsonPath("$[1].title", is("Last October Run")));
+
+        mockMvc.perform(get("/api/runs/range").param("from", "2023-11-01T00:00:00").param("to", "2023-10-01T00:00:00"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldComputeStatsInDatabase() throws Exception {
+        // 2031-03-03 is a Monday, the runs of 2031 are only the ones saved here
+        runRepository.saveAllAndFlush(List.of(
+                new Run("Stats Monday Run", LocalDateTime.parse("2031-03-03T07:00:00"), LocalDateTime.parse("2031-03-03T08:00:00"), 6, Location.OUTDOOR, 1),
+                new Run("Stats Tuesday Run", LocalDateTime.parse("2031-03-04T07:00:00"), LocalDateTime.parse("2031-03-04T07:30:00"), 3, Location.INDOOR, 1),
+                new Run("Stats April Run", LocalDateTime.parse("2031-04-10T07:00:00"), LocalDateTime.parse("2031-04-10T07:45:00"), 4, Location.OUTDOOR, 1)));
+
+        mockMvc.perform(get("/api/runs/stats").param("from", "2031-01-01T00:00:00").param("to", "2032-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs", is(3)))
+                .andExpect(jsonPath("$.totalMiles", is(13)))
+                .andExpect(jsonPath("$.longestRun", is(6)))
+                .andExpect(jsonPath("$.durationSeconds", is(8100)));
+
+        mockMvc.perform(get("/api/runs/stats/locations").param("from", "2031-01-01T00:00:00").param("to", "2032-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].location", is("INDOOR")))
+                .andExpect(jsonPath("$[0].runs", is(1)))
+                .andExpect(jsonPath("$[1].location", is("OUTDOOR")))
+                .andExpect(jsonPath("$[1].totalMiles", is(10)));
+
+        mockMvc.perform(get("/api/runs/stats/durations").param("bucket", "week").param("from", "2031-01-01T00:00:00").param("to", "2032-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[0].start", is("2031-03-03T00:00:00")))
+                .andExpect(jsonPath("$[0].runs", is(2)))
+                .andExpect(jsonPath("$[0].durationSeconds", is(5400)));
+
+        // not whole days : computed from run instead of the daily rollups
+        mockMvc.perform(get("/api/runs/stats").param("from", "2031-03-03T12:00:00").param("to", "2032-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs", is(2)))
+                .andExpect(jsonPath("$.longestRun", is(4)));
+
+        // an empty period still answers, with nothing counted
+        mockMvc.perform(get("/api/runs/stats").param("from", "2031-01-01T00:00:00").param("to", "2031-02-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs", is(0)));
+
+        mockMvc.perform(get("/api/runs/stats/durations").param("bucket", "year"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/runs/stats").param("from", "2032-01-01T00:00:00").param("to", "2031-01-01T00:00:00"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldScanRunsInMemory() throws Exception {
+        // written through the API : the in-memory columns follow the committed writes, the runs of 2033 belong to
+        // this test only
+        for (int miles : new int[]{4, 8, 12}) {
+            mockMvc.perform(post("/api/runs")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("""
+                                    {
+                                        "title": "Scan Run",
+                                        "startedOn": "2033-01-10T07:00:00",
+                                        "completedOn": "2033-01-10T08:00:00",
+                                        "miles": %d,
+                                        "location": "OUTDOOR"
+                                    }
+                                    """.formatted(miles)))
+                    .andExpect(status().isCreated());
+        }
+
+        mockMvc.perform(get("/api/runs/stats/scan").param("minMiles", "5")
+                        .param("from", "2033-01-01T00:00:00").param("to", "2034-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs", is(2)))
+                .andExpect(jsonPath("$.totalMiles", is(20)))
+                .andExpect(jsonPath("$.durationSeconds", is(7200)));
+
+        mockMvc.perform(get("/api/runs/stats/scan/miles").param("width", "5")
+                        .param("from", "2033-01-01T00:00:00").param("to", "2034-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(3)))
+                .andExpect(jsonPath("$[1].fromMiles", is(5)))
+                .andExpect(jsonPath("$[1].runs", is(1)));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldIndexRunsCreatedWithAVersion() throws Exception {
+        // "version": 0 makes Spring Data merge a copy : the in-memory stores must get the saved entity, with its id
+        // the runs of 2036 belong to this test only
+        mockMvc.perform(post("/api/runs")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {
+                                    "title": "Versioned Run",
+                                    "startedOn": "2036-02-10T07:00:00",
+                                    "completedOn": "2036-02-10T08:00:00",
+                                    "miles": 6,
+                                    "location": "OUTDOOR",
+                                    "version": 0
+                                }
+                                """))
+                .andExpect(status().isCreated());
+        mockMvc.perform(post("/api/runs/saveAll")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [
+                                    {
+                                        "title": "Versioned Batch Run",
+                                        "startedOn": "2036-02-11T07:00:00",
+                                        "completedOn": "2036-02-11T08:00:00",
+                                        "miles": 4,
+                                        "location": "OUTDOOR",
+                                        "version": 0
+                                    }
+                                ]
+                                """))
+                .andExpect(status().isCreated());
+
+        mockMvc.perform(get("/api/runs/stats/scan")
+                        .param("from", "2036-01-01T00:00:00").param("to", "2037-01-01T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs", is(2)))
+                .andExpect(jsonPath("$.totalMiles", is(10)));
+        mockMvc.perform(get("/api/runs/stats/percentiles").param("month", "2036-02"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs", is(2)));
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldComputePercentilesOfAMonth() throws Exception {
+        // like the in-memory columns, the sketches outlive the test : March 2035 belongs to this test only
+        for (int miles = 1; miles <= 10; miles++) {
+            mockMvc.perform(post("/api/runs")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("""
+                                    {
+                                        "title": "Percentile Run",
+                                        "startedOn": "2035-03-%02dT07:00:00",
+                                        "completedOn": "2035-03-%02dT07:30:00",
+                                        "miles": %d,
+                                        "location": "OUTDOOR"
+                                    }
+                                    """.formatted(miles, miles, miles)))
+                    .andExpect(status().isCreated());
+        }
+
+        mockMvc.perform(get("/api/runs/stats/percentiles").param("location", "OUTDOOR").param("month", "2035-03"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs", is(10)))
+                .andExpect(jsonPath("$.miles.p50", is(5.0)))
+                .andExpect(jsonPath("$.miles.p90", is(9.0)))
+                .andExpect(jsonPath("$.miles.p99", is(10.0)));
+
+        mockMvc.perform(get("/api/runs/stats/percentiles").param("location", "INDOOR").param("month", "2035-03"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs", is(0)))
+                .andExpect(jsonPath("$.miles").doesNotExist());
+    }
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldTakeBulkDeletedRunsOutOfTheSketches() throws Exception {
+        // April 2035 belongs to this test only : 3 outdoor runs of 1, 2 and 3 hours and 2 indoor ones
+        String[][] runs = {{"OUTDOOR", "3", "08:00"}, {"OUTDOOR", "3", "09:00"}, {"OUTDOOR", "7", "10:00"},
+                {"INDOOR", "3", "08:00"}, {"INDOOR", "7", "08:00"}};
+        for (String[] run : runs) {
+            mockMvc.perform(post("/api/runs")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("""
+                                    {
+                                        "title": "Sketch Run",
+                                        "startedOn": "2035-04-02T07:00:00",
+                                        "completedOn": "2035-04-02T%s:00",
+                                        "miles": %s,
+                                        "location": "%s"
+                                    }
+                                    """.formatted(run[2], run[1], run[0])))
+                    .andExpect(status().isCreated());
+        }
+
+        // the counts come back grouped by PostgreSQL : two outdoor runs share their miles
+        mockMvc.perform(delete("/api/runs")
+                        .param("location", "OUTDOOR")
+                        .param("startedBefore", "2035-04-03T00:00:00")
+                        .param("minMiles", "3")
+                        .param("maxMiles", "3"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", is(2)));
+
+        mockMvc.perform(get("/api/runs/stats/percentiles").param("location", "OUTDOOR").param("month", "2035-04"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs", is(1)))
+                .andExpect(jsonPath("$.miles.p50", is(7.0)))
+                .andExpect(jsonPath("$.durationSeconds.p99", closeTo(10800.0, 10800 / 128.0)));
+        mockMvc.perform(get("/api/runs/stats/percentiles").param("month", "2035-04"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.runs", is(3)));
+    }
+
+    @Test
+    void shouldBucketValuesLikeLogHistogram() {
+        // RunBulkDeleter groups by run_histogram_bucket and RunQuantiles counts by LogHistogram.index : both must agree
+        long[] values = {-5, 0, 1, 127, 128, 129, 191, 192, 255, 256, 1_000, 1_800, 3_599, 3_600, 86_399, 86_400,
+                1L << 39, LogHistogram.MAX_VALUE, LogHistogram.MAX_VALUE + 1, Long.MAX_VALUE};
+        for (long value : values) {
+            assertEquals(LogHistogram.index(Math.min(Math.max(value, 0), LogHistogram.MAX_VALUE)),
+                    jdbcClient.sql("SELECT run_histogram_bucket(:value)").param("value", value).query(Integer.class).single(),
+                    "bucket of " + value);
+        }
+    }
+
     @Test
     void shouldThrowNotFoundWhenFetchingNonExistingRun() throws Exception {
         // Tenter de récupérer une course avec un ID qui n'existe pas
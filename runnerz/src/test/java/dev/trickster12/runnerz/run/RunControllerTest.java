@@ -2,19 +2,26 @@ package dev.trickster12.runnerz.run;
 
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
 import org.springframework.http.MediaType;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 
 import java.util.ArrayList;
@@ -23,8 +30,12 @@ import java.util.Optional;
 import java.util.stream.StreamSupport;
 
 import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 
@@ -44,9 +55,18 @@ public class RunControllerTest {
     @MockitoBean
     RunRepository runRepository; // Mocked repository
 
+    @MockitoBean
+    RunCounter runCounter;
+
+    @Autowired
+    RunCache runCache;
+
     private final List<Run> runs = new ArrayList<>();
     @BeforeEach
     void setUp() {
+        runCache.clear();  // the cache outlives the mocks, start every test cold
+        // the controller works on the entity returned by save, as JPA returns it
+        when(runRepository.save(Mockito.any(Run.class))).thenAnswer(invocation -> invocation.getArgument(0));
         runs.add(new Run(
                 "Monday Morning Run",
                 LocalDateTime.now(),
@@ -63,11 +83,62 @@ public class RunControllerTest {
 
     @Test
     void shouldFindAllRuns() throws Exception {
-        when(runRepository.findAll()).thenReturn(runs);
+        when(runRepository.findPage(Limit.of(RunController.DEFAULT_PAGE_SIZE + 1))).thenReturn(runs);
 
         mvc.perform(MockMvcRequestBuilders.get("/api/runs"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.size()", is(runs.size())));
+                .andExpect(jsonPath("$.size()", is(runs.size())))
+                .andExpect(header().doesNotExist(RunController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void shouldReturnCursorWhenMoreRunsExist() throws Exception {
+        runs.get(0).setId(1);
+        runs.get(1).setId(2);
+        // page size of 1 : the repository is asked for 2 rows, the second one only tells us a next page exists
+        when(runRepository.findPage(Limit.of(2))).thenReturn(runs);
+
+        String cursor = RunCursor.of(runs.get(0)).encode();
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/runs").param("size", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()", is(1)))
+                .andExpect(jsonPath("$[0].title", is(runs.get(0).getTitle())))
+                .andExpect(header().string(RunController.NEXT_CURSOR_HEADER, cursor));
+
+        when(runRepository.findPageAfter(runs.get(0).getStartedOn(), 1, Limit.of(2))).thenReturn(List.of(runs.get(1)));
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/runs").param("size", "1").param("cursor", cursor))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()", is(1)))
+                .andExpect(jsonPath("$[0].title", is(runs.get(1).getTitle())))
+                .andExpect(header().doesNotExist(RunController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    void shouldReturnBadRequestWithInvalidCursor() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.get("/api/runs").param("cursor", "not-a-cursor"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldExportRunsAsNdjson() throws Exception {
+        when(runRepository.streamAll()).thenReturn(runs.stream());
+
+        MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/api/runs/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // the export has its own timeout instead of the default of the other async requests
+        assertEquals(Duration.ofMinutes(30).toMillis(), result.getRequest().getAsyncContext().getTimeout());
+
+        String body = mvc.perform(MockMvcRequestBuilders.asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(RunController.APPLICATION_NDJSON))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(runs.size(), lines.length);
+        assertEquals(runs.get(1).getTitle(), objectMapper.readValue(lines[1], Run.class).getTitle());
     }
 
     @Test
@@ -82,6 +153,47 @@ public class RunControllerTest {
                 .andExpect(jsonPath("$.location", is(run.getLocation().toString())));
     }
 
+    @Test
+    void shouldServeRepeatedReadsFromCache() throws Exception {
+        Run run = runs.get(0);
+        run.setId(1);
+        when(runRepository.findById(1)).thenReturn(Optional.of(run));
+
+        for (int i = 0; i < 3; i++) {
+            mvc.perform(MockMvcRequestBuilders.get("/api/runs/1"))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.title", is(run.getTitle())));
+        }
+
+        // only the first read reaches the repository
+        Mockito.verify(runRepository, Mockito.times(1)).findById(1);
+    }
+
+    // RunCache hears of the update once it committed, the test transaction would hold it back
+
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldReloadRunAfterUpdate() throws Exception {
+        Run run = runs.get(0);
+        run.setId(1);
+        Run updatedRun = new Run("Updated Run", run.getStartedOn(), run.getCompletedOn(), 4, Location.OUTDOOR, 1);
+        updatedRun.setId(1);
+        when(runRepository.findById(1)).thenReturn(Optional.of(run), Optional.of(updatedRun));
+        when(runRepository.updateIfVersionMatches(Mockito.eq(1), Mockito.any(Run.class))).thenReturn(Optional.of(run));
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/runs/1")).andExpect(status().isOk());
+        mvc.perform(MockMvcRequestBuilders.put("/api/runs/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(run)))
+                .andExpect(status().isOk());
+        mvc.perform(MockMvcRequestBuilders.get("/api/runs/1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.title", is("Updated Run")));
+
+        // the update dropped the cached copy, the second read went to the repository again
+        Mockito.verify(runRepository, Mockito.times(2)).findById(1);
+    }
+
     @Test
     void shouldReturnNotFoundWithInvalidId() throws Exception {
         mvc.perform(MockMvcRequestBuilders.get("/api/runs/99"))
@@ -99,30 +211,38 @@ public class RunControllerTest {
     }
 
     @Test
-    void shouldUpdateRun() throws Exception {
-        // Create a mock existing Run entity
-        Run existingRun = new Run();
-        existingRun.setId(1);
-        existingRun.setTitle("Old Run");
-        existingRun.setStartedOn(LocalDateTime.parse("2020-01-01T06:00:00"));
-        existingRun.setCompletedOn(LocalDateTime.parse("2020-01-01T07:00:00"));
-        existingRun.setMiles(5);
-        existingRun.setLocation(Location.INDOOR);
-        existingRun.setVersion(0);  // Initial version is 0 for a new Run
-
-        // Create the updated Run object
-        Run updatedRun = new Run();
-        updatedRun.setId(1);
-        updatedRun.setTitle("Morning Run");
-        updatedRun.setStartedOn(LocalDateTime.parse("2020-01-01T06:00:00"));
-        updatedRun.setCompletedOn(LocalDateTime.parse("2020-01-01T07:00:00"));
-        updatedRun.setMiles(6);
-        updatedRun.setLocation(Location.INDOOR);
-        updatedRun.setVersion(1);  // Version will be updated
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    void shouldSuggestTitlesFromMemory() throws Exception {
+        Run run = new Run("Zanzibar Beach Run", LocalDateTime.now(), LocalDateTime.now().plusHours(1), 5, Location.OUTDOOR, 0);
+        run.setId(1);
+        mvc.perform(MockMvcRequestBuilders.post("/api/runs")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(run)))
+                .andExpect(status().isCreated());
 
-        // Mock repository methods
-        Mockito.when(runRepository.findById(1)).thenReturn(Optional.of(existingRun));  // Simulate finding the existing Run
-        Mockito.when(runRepository.save(Mockito.any(Run.class))).thenReturn(updatedRun);  // Simulate saving the updated Run
+        mvc.perform(MockMvcRequestBuilders.get("/api/runs/autocomplete").param("prefix", "zanz"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()").value(1))
+                .andExpect(jsonPath("$[0].title", is("Zanzibar Beach Run")))
+                .andExpect(jsonPath("$[0].runs", is(1)));
+
+        // the deleted row comes back from the DELETE and its title leaves the index
+        Mockito.when(runRepository.deleteRunById(1)).thenReturn(Optional.of(run));
+        mvc.perform(MockMvcRequestBuilders.delete("/api/runs/1"))
+                .andExpect(status().isNoContent());
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/runs/autocomplete").param("prefix", "zanz"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()").value(0));
+
+        // no finder was asked, suggestions never go to the database
+        Mockito.verify(runRepository, Mockito.never()).findPageByTitleContainingIgnoreCase(Mockito.anyString(), Mockito.any(Limit.class));
+    }
+
+    @Test
+    void shouldUpdateRun() throws Exception {
+        // The row is updated in place only if its version is still the one sent by the client
+        Mockito.when(runRepository.updateIfVersionMatches(Mockito.eq(1), Mockito.any(Run.class))).thenReturn(Optional.of(runs.get(0)));
 
         // Perform PUT request with the updated details
         mvc.perform(MockMvcRequestBuilders.put("/api/runs/1")
@@ -136,40 +256,161 @@ public class RunControllerTest {
                                   "location": "INDOOR",
                                   "version": 1
                                 }"""))
-                .andExpect(status().isOk());  // Expect 200 OK status
+                .andExpect(status().isOk())  // Expect 200 OK status
+                .andExpect(jsonPath("$.id", is(1)))
+                .andExpect(jsonPath("$.version", is(2)));  // the new version is sent back
+
+        // Verify that the single UPDATE was issued and the entity was never loaded
+        Mockito.verify(runRepository, Mockito.times(1)).updateIfVersionMatches(Mockito.eq(1), Mockito.argThat(run ->
+                "Morning Run".equals(run.getTitle()) && run.getMiles() == 6 && run.getVersion() == 1));
+        Mockito.verify(runRepository, Mockito.never()).findById(Mockito.anyInt());
+    }
+
+    @Test
+    void shouldRejectUpdateEndingBeforeItStarts() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.put("/api/runs/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {
+                                  "title": "Morning Run",
+                                  "startedOn": "2020-01-01T07:00:00",
+                                  "completedOn": "2020-01-01T07:00:00",
+                                  "miles": 6,
+                                  "location": "INDOOR",
+                                  "version": 1
+                                }"""))
+                .andExpect(status().isBadRequest());
+
+        // rejected before the UPDATE, the row and the caches stay as they were
+        Mockito.verify(runRepository, Mockito.never()).updateIfVersionMatches(Mockito.anyInt(), Mockito.any(Run.class));
+    }
+
+    @Test
+    void shouldRejectUpdateWithoutLocation() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.put("/api/runs/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {
+                                  "title": "Morning Run",
+                                  "startedOn": "2020-01-01T06:00:00",
+                                  "completedOn": "2020-01-01T07:00:00",
+                                  "miles": 6,
+                                  "version": 1
+                                }"""))
+                .andExpect(status().isBadRequest());
+
+        Mockito.verify(runRepository, Mockito.never()).updateIfVersionMatches(Mockito.anyInt(), Mockito.any(Run.class));
+    }
+
+    // every column of run is NOT NULL, started_on is the partition key : a body without one of them is a 400
+
+    @ParameterizedTest
+    @ValueSource(strings = {"startedOn", "completedOn", "miles"})
+    void shouldRejectUpdateWithoutField(String field) throws Exception {
+        mvc.perform(MockMvcRequestBuilders.put("/api/runs/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bodyWithout(field)))
+                .andExpect(status().isBadRequest());
 
-        // Verify that save was called exactly once with any Run object
-        Mockito.verify(runRepository, Mockito.times(1)).save(Mockito.any(Run.class));
+        Mockito.verify(runRepository, Mockito.never()).updateIfVersionMatches(Mockito.anyInt(), Mockito.any(Run.class));
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {"startedOn", "completedOn", "miles", "location"})
+    void shouldRejectCreateWithoutField(String field) throws Exception {
+        mvc.perform(MockMvcRequestBuilders.post("/api/runs")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(bodyWithout(field)))
+                .andExpect(status().isBadRequest());
 
+        Mockito.verify(runRepository, Mockito.never()).save(Mockito.any(Run.class));
+    }
 
+    private String bodyWithout(String field) throws Exception {
+        ObjectNode body = (ObjectNode) objectMapper.readTree("""
+                {
+                  "title": "Morning Run",
+                  "startedOn": "2020-01-01T06:00:00",
+                  "completedOn": "2020-01-01T07:00:00",
+                  "miles": 6,
+                  "location": "INDOOR",
+                  "version": 1
+                }""");
+        body.remove(field);
+        return objectMapper.writeValueAsString(body);
+    }
 
     @Test
-    public void shouldDeleteRun() throws Exception {  //error resolved
-        // Mock repository behavior: return a fake Run when findById() is called which will be put in an Optional
-        Run run = new Run();
-        run.setId(1);
-        run.setTitle("Test Run");
+    void shouldReturnConflictWhenVersionIsStale() throws Exception {
+        Mockito.when(runRepository.updateIfVersionMatches(Mockito.eq(1), Mockito.any(Run.class))).thenReturn(Optional.empty());
+        Mockito.when(runRepository.existsById(1)).thenReturn(true);
 
-        Mockito.when(runRepository.findById(1)).thenReturn(Optional.of(run));  // Simulate found Run : When runRepository.findById(1) is called, return an Optional containing the fake Run
-        Mockito.doNothing().when(runRepository).deleteById(1);  // Simulate successful delete : When runRepository.deleteById(1) is called, do nothing to get the no content status
+        mvc.perform(MockMvcRequestBuilders.put("/api/runs/1")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(runs.get(0))))
+                .andExpect(status().isConflict());
+    }
+
+    @Test
+    void shouldReturnNotFoundWhenUpdatingMissingRun() throws Exception {
+        Mockito.when(runRepository.updateIfVersionMatches(Mockito.eq(99), Mockito.any(Run.class))).thenReturn(Optional.empty());
+        Mockito.when(runRepository.existsById(99)).thenReturn(false);
+
+        mvc.perform(MockMvcRequestBuilders.put("/api/runs/99")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(objectMapper.writeValueAsString(runs.get(0))))
+                .andExpect(status().isNotFound());
+    }
+
+
+
+
+    @Test
+    void shouldRejectMergePatchWithoutVersion() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.patch("/api/runs/1")
+                        .contentType("application/merge-patch+json")
+                        .content("""
+                                { "title": "Evening Run" }"""))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldRejectMergePatchOnUnknownField() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.patch("/api/runs/1")
+                        .contentType("application/merge-patch+json")
+                        .content("""
+                                { "distance": 12, "version": 0 }"""))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void shouldDeleteRun() throws Exception {
+        // Mock repository behavior: one row deleted by the single DELETE statement
+        Mockito.when(runRepository.deleteRunById(1)).thenReturn(Optional.of(runs.get(0)));
 
         // Perform DELETE request
         mvc.perform(MockMvcRequestBuilders.delete("/api/runs/1"))
                 .andExpect(status().isNoContent());
 
-        // Verify that deleteById() was actually called
-        Mockito.verify(runRepository, Mockito.times(1)).deleteById(1); // Verify that runRepository.deleteById(1) was called exactly once
+        // Verify that the delete was issued without loading the run first
+        Mockito.verify(runRepository, Mockito.times(1)).deleteRunById(1);
+        Mockito.verify(runRepository, Mockito.never()).findById(Mockito.anyInt());
     }
 
-    /*
-        Here's what happens in the mocked execution:
-            runRepository.findById(1) is called → Mockito returns Optional.of(run).
-            Since run exists, runRepository.deleteById(1) is called → Mockito does nothing.
-            The controller returns HTTP 204 No Content.
-            The test checks if the status is 204, so it passes.
-   */
+    @Test
+    public void shouldReturnNotFoundWhenDeletingMissingRun() throws Exception {
+        // no row deleted means the run did not exist
+        Mockito.when(runRepository.deleteRunById(99)).thenReturn(Optional.empty());
+
+        mvc.perform(MockMvcRequestBuilders.delete("/api/runs/99"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void shouldRefuseBulkDeleteWithoutFilter() throws Exception {
+        mvc.perform(MockMvcRequestBuilders.delete("/api/runs"))
+                .andExpect(status().isBadRequest());
+    }
 
     @Test
     void shouldReturnRunsWhenKeywordExists() throws Exception{
@@ -178,7 +419,7 @@ public class RunControllerTest {
 
         List<Run> mockRuns = List.of(run);
 
-        Mockito.when(runRepository.findByTitleContaining("Test")).thenReturn(mockRuns);
+        Mockito.when(runRepository.findPageByTitleContaining(Mockito.eq("Test"), Mockito.any(Limit.class))).thenReturn(mockRuns);
 
         mvc.perform(MockMvcRequestBuilders.get("/api/runs/partial-title/Test"))
                 .andExpect(status().isOk())
@@ -186,10 +427,25 @@ public class RunControllerTest {
                 .andExpect(jsonPath("$[0].id").value(1))
                 .andExpect(jsonPath("$[0].title").value("Test Run"));
 
-        Mockito.verify(runRepository).findByTitleContaining("Test");
+        Mockito.verify(runRepository).findPageByTitleContaining(Mockito.eq("Test"), Mockito.any(Limit.class));
 
     }
 
+    @Test
+    void shouldReturnRunsWhenKeywordExistsIgnoringCase() throws Exception{
+        Run run = new Run("Test Run", LocalDateTime.now(), LocalDateTime.now().plusHours(30), 1, Location.INDOOR, 0);
+        run.setId(1);  // Manually setting the ID for testing
+
+        Mockito.when(runRepository.findPageByTitleContainingIgnoreCase(Mockito.eq("test"), Mockito.any(Limit.class))).thenReturn(List.of(run));
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/runs/partial-title/test").param("ignoreCase", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.size()").value(1))
+                .andExpect(jsonPath("$[0].title").value("Test Run"));
+
+        Mockito.verify(runRepository, Mockito.never()).findPageByTitleContaining(Mockito.anyString(), Mockito.any(Limit.class));
+    }
+
     @Test
     void shouldReturnRunsWhenPatternExists() throws Exception{
         Run run = new Run("a l hds", LocalDateTime.now(), LocalDateTime.now().plusHours(30), 1, Location.INDOOR, 0);
@@ -226,19 +482,27 @@ public class RunControllerTest {
 
     @Test
     void shouldCountRuns() throws Exception {
-        Run run = new Run("Test Run", LocalDateTime.now(), LocalDateTime.now().plusHours(30), 1, Location.INDOOR, 0);
-        run.setId(1);  // Manually setting the ID for testing
-
-        List<Run> mockRuns = List.of(run);
-
-        Mockito.when(runRepository.count()).thenReturn((long) mockRuns.size());
+        Mockito.when(runCounter.exact()).thenReturn(1L);
 
         mvc.perform(MockMvcRequestBuilders.get("/api/runs/count"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$").value(1));
 
-        Mockito.verify(runRepository).count();
+        // the counter is read, the table is never counted
+        Mockito.verify(runCounter).exact();
+        Mockito.verify(runRepository, Mockito.never()).count();
+
+    }
+
+    @Test
+    void shouldCountRunsApproximately() throws Exception {
+        Mockito.when(runCounter.approximate()).thenReturn(1000L);
+
+        mvc.perform(MockMvcRequestBuilders.get("/api/runs/count").param("approximate", "true"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$").value(1000));
 
+        Mockito.verify(runCounter).approximate();
     }
 
     @Test
@@ -270,7 +534,7 @@ public class RunControllerTest {
 
         List<Run> mockRuns = List.of(run);
 
-        Mockito.when(runRepository.findByLocation(Location.INDOOR)).thenReturn(mockRuns);
+        Mockito.when(runRepository.findPageByLocation(Mockito.eq(Location.INDOOR), Mockito.any(Limit.class))).thenReturn(mockRuns);
 
         mvc.perform(MockMvcRequestBuilders.get("/api/runs/location/INDOOR"))
                 .andExpect(status().isOk())
@@ -278,7 +542,7 @@ public class RunControllerTest {
                 .andExpect(jsonPath("$[0].id").value(1))
                 .andExpect(jsonPath("$[0].title").value("Test Run"));
 
-        Mockito.verify(runRepository).findByLocation(Location.INDOOR);
+        Mockito.verify(runRepository).findPageByLocation(Mockito.eq(Location.INDOOR), Mockito.any(Limit.class));
 
     }
 
@@ -289,7 +553,7 @@ public class RunControllerTest {
 
         List<Run> mockRuns = List.of(run);
 
-        Mockito.when(runRepository.findByMiles(7)).thenReturn(mockRuns);
+        Mockito.when(runRepository.findPageByMiles(Mockito.eq(7), Mockito.any(Limit.class))).thenReturn(mockRuns);
 
         mvc.perform(MockMvcRequestBuilders.get("/api/runs/miles/7"))
                 .andExpect(status().isOk())
@@ -297,7 +561,7 @@ public class RunControllerTest {
                 .andExpect(jsonPath("$[0].id").value(1))
                 .andExpect(jsonPath("$[0].title").value("Test Run"));
 
-        Mockito.verify(runRepository).findByMiles(7);
+        Mockito.verify(runRepository).findPageByMiles(Mockito.eq(7), Mockito.any(Limit.class));
 
     }
 
@@ -308,7 +572,7 @@ public class RunControllerTest {
 
         List<Run> mockRuns = List.of(run);
 
-        Mockito.when(runRepository.findByTitle("Test%20Run")).thenReturn(mockRuns);
+        Mockito.when(runRepository.findPageByTitle(Mockito.eq("Test%20Run"), Mockito.any(Limit.class))).thenReturn(mockRuns);
 
         mvc.perform(MockMvcRequestBuilders.get("/api/runs/title/Test%20Run"))
                 .andExpect(status().isOk())
@@ -316,7 +580,7 @@ public class RunControllerTest {
                 .andExpect(jsonPath("$[0].id").value(1))
                 .andExpect(jsonPath("$[0].title").value("Test Run"));
 
-        Mockito.verify(runRepository).findByTitle("Test%20Run");
+        Mockito.verify(runRepository).findPageByTitle(Mockito.eq("Test%20Run"), Mockito.any(Limit.class));
 
     }
 
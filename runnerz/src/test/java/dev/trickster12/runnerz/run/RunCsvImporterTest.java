@@ -0,0 +1,33 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class RunCsvImporterTest {
+
+    @Test
+    void shouldSplitPlainLine() {
+        assertEquals(List.of("Morning Run", "2024-01-01T06:00", "2024-01-01T07:00", "5", "OUTDOOR"),
+                RunCsvImporter.parseLine("Morning Run,2024-01-01T06:00,2024-01-01T07:00,5,OUTDOOR"));
+    }
+
+    @Test
+    void shouldKeepCommasAndQuotesInsideQuotedField() {
+        assertEquals(List.of("Run, \"fast\"", "x"),
+                RunCsvImporter.parseLine("\"Run, \"\"fast\"\"\",x"));
+    }
+
+    @Test
+    void shouldKeepEmptyFields() {
+        assertEquals(List.of("", "", ""), RunCsvImporter.parseLine(",,"));
+    }
+
+    @Test
+    void shouldRejectUnclosedQuote() {
+        assertNull(RunCsvImporter.parseLine("\"Morning Run,2024-01-01T06:00"));
+    }
+}
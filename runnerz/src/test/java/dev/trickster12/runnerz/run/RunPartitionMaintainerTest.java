@@ -0,0 +1,126 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Monthly partitions of run (V7 migration) : rows of a month without partition wait in run_default
+// until RunPartitionMaintainer creates it, and a detached month leaves the counter with its rows
+// run_id (V12 migration) keeps ids unique across the months and sends the statements by id to one partition
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional // Assure le rollback après chaque test
+public class RunPartitionMaintainerTest {
+
+    @Autowired
+    private RunPartitionMaintainer runPartitionMaintainer;
+
+    @Autowired
+    private RunRepository runRepository;
+
+    @Autowired
+    private RunCounter runCounter;
+
+    @Autowired
+    private JdbcClient jdbcClient;
+
+    @Test
+    void shouldMoveRowsOutOfDefaultPartition() {
+        long before = runCounter.exact();
+        Run run = new Run("Backdated Run", LocalDateTime.parse("1999-12-31T10:00:00"), LocalDateTime.parse("1999-12-31T11:00:00"), 5, Location.OUTDOOR, 0);
+        // a version makes it an existing entity for Spring Data : the id is set on the merged copy
+        run = runRepository.saveAndFlush(run);
+        assertEquals("run_default", partitionOf(run));
+
+        runPartitionMaintainer.createPartitions();
+
+        assertEquals("run_1999_12", partitionOf(run));
+        assertEquals(before + 1, runCounter.exact());
+        assertEquals(List.of(run.getId()), runRepository.findPageByStartedOnRange(
+                LocalDateTime.parse("1999-12-01T00:00:00"), LocalDateTime.parse("2000-01-01T00:00:00"),
+                Limit.of(10)).stream().map(Run::getId).toList());
+    }
+
+    @Test
+    void shouldTakeDetachedRowsOutOfCounter() {
+        runRepository.saveAndFlush(new Run("Old Run", LocalDateTime.parse("1998-06-01T10:00:00"), LocalDateTime.parse("1998-06-01T11:00:00"), 5, Location.OUTDOOR, 0));
+        runPartitionMaintainer.createPartitions();
+        long before = runCounter.exact();
+
+        assertEquals(Optional.of("run_1998_06"), runPartitionMaintainer.detach(YearMonth.of(1998, 6)));
+
+        assertEquals(before - 1, runCounter.exact());
+        assertEquals(Optional.empty(), runPartitionMaintainer.detach(YearMonth.of(1998, 6)));
+    }
+
+    @Test
+    void shouldRefuseAnIdAlreadyUsedInAnotherMonth() {
+        Run run = runRepository.saveAndFlush(new Run("First Run", LocalDateTime.parse("2024-05-10T10:00:00"), LocalDateTime.parse("2024-05-10T11:00:00"), 5, Location.OUTDOOR, 0));
+        runPartitionMaintainer.createPartitions();
+
+        // the primary key of run is (id, started_on) : only run_id sees the two months
+        assertThrows(DuplicateKeyException.class, () -> jdbcClient.sql("""
+                        INSERT INTO run (id, title, started_on, completed_on, miles, location, version)
+                        VALUES (:id, 'Second Run', timestamp '2024-06-10 10:00', timestamp '2024-06-10 11:00', 5, 'OUTDOOR', 0)""")
+                .param("id", run.getId())
+                .update());
+    }
+
+    @Test
+    void shouldFollowARunMovedToAnotherMonth() {
+        Run run = runRepository.saveAndFlush(new Run("Moved Run", LocalDateTime.parse("2024-05-10T10:00:00"), LocalDateTime.parse("2024-05-10T11:00:00"), 5, Location.OUTDOOR, 0));
+        runPartitionMaintainer.createPartitions();
+        run.setStartedOn(LocalDateTime.parse("2024-06-10T10:00:00"));
+        run.setCompletedOn(LocalDateTime.parse("2024-06-10T11:00:00"));
+
+        assertTrue(runRepository.updateIfVersionMatches(run.getId(), run).isPresent());
+
+        assertEquals(LocalDateTime.parse("2024-06-10T10:00:00"), runRepository.findById(run.getId()).orElseThrow().getStartedOn());
+        assertTrue(runRepository.deleteRunById(run.getId()).isPresent());
+        assertEquals(Optional.empty(), runRepository.findById(run.getId()));
+        assertFalse(runRepository.existsById(run.getId()));
+    }
+
+    @Test
+    void shouldReadOnlyThePartitionOfTheRunById() {
+        Run run = runRepository.saveAndFlush(new Run("Pruned Run", LocalDateTime.parse("2024-05-10T10:00:00"), LocalDateTime.parse("2024-05-10T11:00:00"), 5, Location.OUTDOOR, 0));
+        runPartitionMaintainer.createPartitions();
+
+        // every other month is skipped at run time, once run_id gave the month
+        for (String sql : List.of(RunWriteRepositoryImpl.UPDATE_SQL, RunWriteRepositoryImpl.DELETE_SQL)) {
+            String plan = String.join("\n", jdbcClient.sql("EXPLAIN (ANALYZE, COSTS OFF, TIMING OFF) " + sql)
+                    .param("id", run.getId())
+                    .param("version", 0)
+                    .param("title", "Pruned Run")
+                    .param("startedOn", run.getStartedOn())
+                    .param("completedOn", run.getCompletedOn())
+                    .param("miles", 6)
+                    .param("location", "OUTDOOR")
+                    .query(String.class)
+                    .list());
+            assertTrue(plan.contains("(never executed)"), () -> "No partition pruned: " + sql + "\n" + plan);
+        }
+    }
+
+    private String partitionOf(Run run) {
+        return jdbcClient.sql("SELECT tableoid::regclass::text FROM run WHERE id = :id")
+                .param("id", run.getId())
+                .query(String.class)
+                .single();
+    }
+}
@@ -0,0 +1,109 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// The load of RunQuantiles against writes committing while it runs : each run is counted once, by the scan when its
+// snapshot saw the write, by the change kept aside otherwise
+// Each test loads an instance of its own and hands it the change of its write as the event would, in the writing
+// transaction. The writes are committed, the rows are deleted after each test
+@SpringBootTest
+@ActiveProfiles("test")
+public class RunQuantilesLoadTest {
+
+    private static final String TITLE = "Loading Run";
+    private static final YearMonth MONTH = YearMonth.of(2038, 5);
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private JdbcClient jdbcClient;
+
+    @AfterEach
+    void deleteCommittedRuns() {
+        jdbcClient.sql("DELETE FROM run WHERE title = :title").param("title", TITLE).update();
+    }
+
+    @Test
+    void shouldCountAWriteCommittedDuringTheScanOnce() {
+        RunQuantiles quantiles = new RunQuantiles(dataSource, transactionManager, true);
+
+        // committed after the snapshot : the scan does not see it, its change is replayed
+        quantiles.load(() -> CompletableFuture.runAsync(() -> write(quantiles, null)).join());
+
+        assertEquals(1, quantiles.percentiles(Location.OUTDOOR, MONTH).runs());
+    }
+
+    @Test
+    void shouldNotCountTwiceAWriteTheScanSawWhoseChangeArrivesLate() throws Exception {
+        RunQuantiles quantiles = new RunQuantiles(dataSource, transactionManager, true);
+        CountDownLatch committed = new CountDownLatch(1);
+        CountDownLatch loaded = new CountDownLatch(1);
+        // registered before the one of RunQuantiles, it holds its change back until the load is done
+        TransactionSynchronization holdBack = new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                committed.countDown();
+                try {
+                    loaded.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        CompletableFuture<Void> write = CompletableFuture.runAsync(() -> write(quantiles, holdBack));
+        assertTrue(committed.await(30, TimeUnit.SECONDS));
+
+        quantiles.load(() -> {
+        });
+        loaded.countDown();
+        write.get(30, TimeUnit.SECONDS);
+
+        assertEquals(1, quantiles.percentiles(Location.OUTDOOR, MONTH).runs());
+    }
+
+    // one run of MONTH in a transaction of its own, first (when given) is called back before RunQuantiles
+
+    private void write(RunQuantiles quantiles, TransactionSynchronization first) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            if (first != null) {
+                TransactionSynchronizationManager.registerSynchronization(first);
+            }
+            LocalDateTime startedOn = MONTH.atDay(3).atTime(7, 0);
+            Run run = new Run(TITLE, startedOn, startedOn.plusMinutes(30), 5, Location.OUTDOOR, 0);
+            jdbcClient.sql("""
+                            INSERT INTO run (title, started_on, completed_on, miles, location, version)
+                            VALUES (:title, :startedOn, :completedOn, :miles, :location, 0)""")
+                    .param("title", run.getTitle())
+                    .param("startedOn", run.getStartedOn())
+                    .param("completedOn", run.getCompletedOn())
+                    .param("miles", run.getMiles())
+                    .param("location", run.getLocation().name())
+                    .update();
+            quantiles.onSaved(new RunChange.Saved(List.of(run)));
+        });
+    }
+}
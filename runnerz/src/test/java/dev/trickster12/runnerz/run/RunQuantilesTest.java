@@ -0,0 +1,82 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class RunQuantilesTest {
+
+    @Test
+    void shouldAnswerPerLocationAndPerMonth() {
+        RunQuantiles quantiles = new RunQuantiles();
+        quantiles.add(List.of(
+                run("2024-06-01T07:00:00", 30, 3, Location.OUTDOOR),
+                run("2024-06-02T07:00:00", 60, 6, Location.OUTDOOR),
+                run("2024-06-03T07:00:00", 90, 9, Location.INDOOR),
+                run("2024-07-01T07:00:00", 120, 12, Location.OUTDOOR)));
+
+        RunPercentiles all = quantiles.percentiles(null, null);
+        assertEquals(4, all.runs());
+        assertEquals(6, all.miles().p50());
+        assertEquals(12, all.miles().p99());
+
+        RunPercentiles june = quantiles.percentiles(Location.OUTDOOR, YearMonth.of(2024, 6));
+        assertEquals(2, june.runs());
+        assertEquals(3, june.miles().p50());
+        assertEquals(3600, june.durationSeconds().p99(), 3600 / 128.0);
+
+        RunPercentiles empty = quantiles.percentiles(Location.INDOOR, YearMonth.of(2024, 7));
+        assertEquals(0, empty.runs());
+        assertNull(empty.miles());
+    }
+
+    @Test
+    void shouldFollowUpdatesAndDeletes() {
+        RunQuantiles quantiles = new RunQuantiles();
+        Run first = run("2024-06-01T07:00:00", 30, 3, Location.OUTDOOR);
+        Run second = run("2024-06-02T07:00:00", 60, 6, Location.OUTDOOR);
+        quantiles.add(List.of(first, second));
+
+        // moved to another month and location
+        Run moved = run("2024-08-01T07:00:00", 30, 20, Location.INDOOR);
+        quantiles.replace(first, moved);
+        assertEquals(1, quantiles.percentiles(null, YearMonth.of(2024, 6)).runs());
+        assertEquals(20, quantiles.percentiles(Location.INDOOR, null).miles().p50());
+
+        RunQuantiles.Changes deleted = new RunQuantiles.Changes();
+        deleted.remove(second);
+        deleted.remove(moved);
+        quantiles.apply(deleted);
+        assertEquals(0, quantiles.percentiles(null, null).runs());
+    }
+
+    @Test
+    void shouldTakeAwayCountsGroupedByTheDatabase() {
+        RunQuantiles quantiles = new RunQuantiles();
+        Run first = run("2024-06-01T07:00:00", 30, 3, Location.OUTDOOR);
+        Run second = run("2024-06-02T07:00:00", 30, 3, Location.OUTDOOR);
+        Run kept = run("2024-06-03T07:00:00", 90, 9, Location.OUTDOOR);
+        quantiles.add(List.of(first, second, kept));
+
+        // as RunBulkDeleter reads them : 2 runs of 3 miles, 2 runs of 1800 seconds
+        RunQuantiles.Changes deleted = new RunQuantiles.Changes();
+        deleted.removeMiles(Location.OUTDOOR, YearMonth.of(2024, 6), 3, 2);
+        deleted.removeDurations(Location.OUTDOOR, YearMonth.of(2024, 6), 1800, 2);
+        quantiles.apply(deleted);
+
+        RunPercentiles june = quantiles.percentiles(Location.OUTDOOR, YearMonth.of(2024, 6));
+        assertEquals(1, june.runs());
+        assertEquals(9, june.miles().p50());
+        assertEquals(5400, june.durationSeconds().p50(), 5400 / 128.0);
+    }
+
+    private static Run run(String startedOn, int minutes, int miles, Location location) {
+        LocalDateTime start = LocalDateTime.parse(startedOn);
+        return new Run("Run", start, start.plusMinutes(minutes), miles, location, 0);
+    }
+}
@@ -0,0 +1,81 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Scan time of RunQueryEngine over 5M in-memory runs with 1, 2, 4 ... threads up to the number of cores
+// Not part of the normal build, run it with : ./mvnw test -Dtest=RunQueryEngineBenchmarkTest -Dbenchmark=true -DargLine=-Xmx2g
+// The speedup is against the 1 thread run of the same query, it flattens once memory bandwidth is the limit
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class RunQueryEngineBenchmarkTest {
+
+    private static final int ROWS = 5_000_000;
+    private static final int THRESHOLD = 100_000;
+    private static final int WARM_UP = 5;
+    private static final int ITERATIONS = 20;
+    private static final LocalDateTime START = LocalDateTime.parse("2020-01-01T00:00:00");
+
+    private static final RunFilter FILTER = new RunFilter(Location.OUTDOOR, 2, null, START.plusDays(30), null);
+
+    @Test
+    void scaling() {
+        RunColumns columns = new RunColumns(true);
+        List<Run> chunk = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            LocalDateTime startedOn = START.plusMinutes(i);
+            Run run = new Run("Run " + (i % 1_000), startedOn, startedOn.plusMinutes(20 + i % 60),
+                    1 + i % 20, i % 3 == 0 ? Location.INDOOR : Location.OUTDOOR, 0);
+            run.setId(i + 1);
+            chunk.add(run);
+            if (chunk.size() == 10_000) {
+                columns.put(chunk);
+                chunk.clear();
+            }
+        }
+
+        int cores = Runtime.getRuntime().availableProcessors();
+        double[] single = new double[4];
+        for (int threads = 1; threads <= cores; threads = threads < cores && threads * 2 > cores ? cores : threads * 2) {
+            RunQueryEngine engine = new RunQueryEngine(columns, threads, THRESHOLD);
+            try {
+                double[] medians = {
+                        median(engine, e -> e.totals(FILTER)),
+                        median(engine, e -> e.byLocation(FILTER)),
+                        median(engine, e -> e.milesHistogram(FILTER, 5)),
+                        median(engine, e -> e.durations(FILTER, RunStatsBucket.DAY))};
+                if (threads == 1) {
+                    single = medians;
+                }
+                System.out.printf("%2d thread(s) over %,d runs : totals %.2f ms (x%.1f), locations %.2f ms (x%.1f), "
+                                + "miles histogram %.2f ms (x%.1f), days %.2f ms (x%.1f)%n", threads, ROWS,
+                        medians[0], single[0] / medians[0], medians[1], single[1] / medians[1],
+                        medians[2], single[2] / medians[2], medians[3], single[3] / medians[3]);
+            } finally {
+                engine.destroy();
+            }
+            if (threads == cores) {
+                break;
+            }
+        }
+    }
+
+    private static double median(RunQueryEngine engine, Consumer<RunQueryEngine> query) {
+        for (int i = 0; i < WARM_UP; i++) {
+            query.accept(engine);
+        }
+        long[] timings = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long begin = System.nanoTime();
+            query.accept(engine);
+            timings[i] = System.nanoTime() - begin;
+        }
+        Arrays.sort(timings);
+        return timings[ITERATIONS / 2] / 1_000_000.0;
+    }
+}
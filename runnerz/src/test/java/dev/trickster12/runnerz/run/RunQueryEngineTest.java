@@ -0,0 +1,93 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class RunQueryEngineTest {
+
+    private static final LocalDateTime START = LocalDateTime.parse("2023-12-20T06:00:00");
+    private static final RunFilter ALL = new RunFilter(null, null, null, null, null);
+
+    @Test
+    void shouldGiveTheSameAnswerSplitOrNot() {
+        RunColumns columns = randomColumns(50_000);
+        // threshold above the size : one scan on the calling thread
+        RunQueryEngine sequential = new RunQueryEngine(columns, 1, Integer.MAX_VALUE);
+        // pieces of 997 runs over 4 threads
+        RunQueryEngine parallel = new RunQueryEngine(columns, 4, 997);
+        try {
+            RunFilter filter = new RunFilter(Location.OUTDOOR, 3, 17, START.plusDays(10), START.plusDays(300));
+            for (RunFilter f : List.of(ALL, filter)) {
+                assertEquals(sequential.totals(f), parallel.totals(f));
+                assertEquals(columns.totals(f), parallel.totals(f));
+                assertEquals(sequential.byLocation(f), parallel.byLocation(f));
+                assertEquals(sequential.milesHistogram(f, 4), parallel.milesHistogram(f, 4));
+                for (RunStatsBucket bucket : RunStatsBucket.values()) {
+                    assertEquals(sequential.durations(f, bucket), parallel.durations(f, bucket));
+                }
+            }
+        } finally {
+            sequential.destroy();
+            parallel.destroy();
+        }
+    }
+
+    @Test
+    void shouldGroupByCalendarPeriods() {
+        RunColumns columns = new RunColumns(true);
+        // Sunday 2023-12-31 and Monday 2024-01-01 : same month for neither, same week for neither
+        columns.put(List.of(run(1, LocalDateTime.parse("2023-12-31T23:00:00"), 3), run(2, LocalDateTime.parse("2024-01-01T07:00:00"), 5),
+                run(3, LocalDateTime.parse("2024-01-07T07:00:00"), 7)));
+        RunQueryEngine engine = new RunQueryEngine(columns, 2, 1);
+        try {
+            assertEquals(List.of(
+                    new RunDurationBucket(LocalDateTime.parse("2023-12-25T00:00:00"), 1, 3, 1800),
+                    new RunDurationBucket(LocalDateTime.parse("2024-01-01T00:00:00"), 2, 12, 3600)), engine.durations(ALL, RunStatsBucket.WEEK));
+            assertEquals(List.of(
+                    new RunDurationBucket(LocalDateTime.parse("2023-12-01T00:00:00"), 1, 3, 1800),
+                    new RunDurationBucket(LocalDateTime.parse("2024-01-01T00:00:00"), 2, 12, 3600)), engine.durations(ALL, RunStatsBucket.MONTH));
+            assertEquals(List.of(new RunMilesBucket(0, 5, 1, 1800), new RunMilesBucket(5, 10, 2, 3600)), engine.milesHistogram(ALL, 5));
+        } finally {
+            engine.destroy();
+        }
+    }
+
+    @Test
+    void shouldComputeMonthsAndWeeksLikeJavaTime() {
+        for (long day = LocalDate.of(1899, 12, 1).toEpochDay(); day < LocalDate.of(2101, 3, 1).toEpochDay(); day++) {
+            LocalDate date = LocalDate.ofEpochDay(day);
+            assertEquals(date.getYear() * 12 + date.getMonthValue() - 1, RunScan.month(day));
+            assertEquals(DayOfWeek.MONDAY, LocalDate.ofEpochDay(7 * Math.floorDiv(day + 3, 7) - 3).getDayOfWeek());
+        }
+    }
+
+    private static RunColumns randomColumns(int runs) {
+        Random random = new Random(7);
+        List<Run> list = new ArrayList<>();
+        for (int i = 1; i <= runs; i++) {
+            LocalDateTime startedOn = START.plusMinutes(random.nextInt(600 * 24 * 60));
+            Run run = new Run("Run " + random.nextInt(100), startedOn, startedOn.plusMinutes(10 + random.nextInt(120)),
+                    1 + random.nextInt(25), random.nextBoolean() ? Location.INDOOR : Location.OUTDOOR, 0);
+            run.setId(i);
+            list.add(run);
+        }
+        RunColumns columns = new RunColumns(true);
+        columns.put(list);
+        return columns;
+    }
+
+    // thirty minutes
+    private static Run run(int id, LocalDateTime startedOn, int miles) {
+        Run run = new Run("Calendar Run", startedOn, startedOn.plusMinutes(30), miles, Location.OUTDOOR, 0);
+        run.setId(id);
+        return run;
+    }
+}
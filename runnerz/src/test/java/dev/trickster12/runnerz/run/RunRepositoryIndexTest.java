@@ -0,0 +1,174 @@
+package dev.trickster12.runnerz.run;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Checks with EXPLAIN that the SQL behind each RunRepository finder can be answered from an index
+// Each finder is called and the SQL Hibernate sends for it is captured by a StatementInspector, then explained as a
+// generic plan : prepared, then executed with NULL parameters under force_generic_plan, so the plan does not depend on
+// their values. The JDBC writes are explained from their SQL
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+        + "dev.trickster12.runnerz.run.RunRepositoryIndexTest$CapturedStatements")
+@ActiveProfiles("test")
+@Transactional // Assure le rollback après chaque test
+public class RunRepositoryIndexTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.parse("2024-06-01T00:00:00");
+    private static final LocalDateTime TO = LocalDateTime.parse("2024-07-01T00:00:00");
+    private static final Limit PAGE = Limit.of(51);
+
+    // every statement prepared by Hibernate, in order
+    public static class CapturedStatements implements StatementInspector {
+
+        static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    @Autowired
+    private RunRepository runRepository;
+
+    @Autowired
+    private JdbcClient jdbcClient;
+
+    @BeforeEach
+    void setUp() {
+        // on a near empty table a sequential scan is always cheapest, forbid it to see whether an index can be used
+        jdbcClient.sql("SET LOCAL enable_seqscan = off").update();
+        jdbcClient.sql("SET LOCAL plan_cache_mode = force_generic_plan").update();
+        // NULL parameters would prune every partition when the plan starts, keep them all in the plan
+        jdbcClient.sql("SET LOCAL enable_partition_pruning = off").update();
+        CapturedStatements.STATEMENTS.clear();
+    }
+
+    static Stream<Arguments> finders() {
+        Map<String, Consumer<RunRepository>> finders = new LinkedHashMap<>();
+        finders.put("findById", repository -> repository.findById(1));
+        finders.put("findPage", repository -> repository.findPage(PAGE));
+        finders.put("findPageAfter", repository -> repository.findPageAfter(FROM, 10, PAGE));
+        finders.put("findPageByStartedOnRange", repository -> repository.findPageByStartedOnRange(FROM, TO, PAGE));
+        finders.put("findPageByStartedOnRangeAfter", repository -> repository.findPageByStartedOnRangeAfter(FROM, TO, FROM, 10, PAGE));
+        finders.put("findByLocation", repository -> repository.findByLocation(Location.INDOOR));
+        finders.put("findPageByLocation", repository -> repository.findPageByLocation(Location.INDOOR, PAGE));
+        finders.put("findPageByLocationAfter", repository -> repository.findPageByLocationAfter(Location.INDOOR, FROM, 10, PAGE));
+        finders.put("findByMiles", repository -> repository.findByMiles(5));
+        finders.put("findPageByMiles", repository -> repository.findPageByMiles(5, PAGE));
+        finders.put("findPageByMilesAfter", repository -> repository.findPageByMilesAfter(5, FROM, 10, PAGE));
+        finders.put("findByTitle", repository -> repository.findByTitle("Morning Run"));
+        finders.put("findPageByTitle", repository -> repository.findPageByTitle("Morning Run", PAGE));
+        finders.put("findPageByTitleAfter", repository -> repository.findPageByTitleAfter("Morning Run", FROM, 10, PAGE));
+        // trigram index
+        finders.put("findByTitleContaining", repository -> repository.findByTitleContaining("Morning"));
+        finders.put("findByPattern", repository -> repository.findByPattern("Morning"));
+        finders.put("findPageByTitleContaining", repository -> repository.findPageByTitleContaining("Morning", PAGE));
+        finders.put("findPageByTitleContainingAfter", repository -> repository.findPageByTitleContainingAfter("Morning", FROM, 10, PAGE));
+        finders.put("findPageByTitleContainingIgnoreCase", repository -> repository.findPageByTitleContainingIgnoreCase("morning", PAGE));
+        finders.put("findPageByTitleContainingIgnoreCaseAfter", repository -> repository.findPageByTitleContainingIgnoreCaseAfter("morning", FROM, 10, PAGE));
+        finders.put("streamAll", repository -> {
+            try (Stream<Run> runs = repository.streamAll()) {
+                runs.count();
+            }
+        });
+        finders.put("streamByLocation", repository -> {
+            try (Stream<Run> runs = repository.streamByLocation(Location.INDOOR)) {
+                runs.count();
+            }
+        });
+        finders.put("streamTitleCounts", repository -> {
+            try (Stream<TitleSuggestion> titles = repository.streamTitleCounts()) {
+                titles.count();
+            }
+        });
+        return finders.entrySet().stream().map(finder -> Arguments.of(finder.getKey(), finder.getValue()));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("finders")
+    void shouldUseIndex(String finder, Consumer<RunRepository> call) {
+        call.accept(runRepository);
+
+        List<String> statements = List.copyOf(CapturedStatements.STATEMENTS);
+        assertFalse(statements.isEmpty(), () -> finder + " sent no SQL");
+        statements.forEach(sql -> assertIndexOnly(finder, numberPlaceholders(sql)));
+    }
+
+    @Test
+    void shouldUseIndexForTheSqlWrites() {
+        // updateIfVersionMatches, deleteRunById
+        assertIndexOnly("updateIfVersionMatches", numberNamedParameters(RunWriteRepositoryImpl.UPDATE_SQL));
+        assertIndexOnly("deleteRunById", numberNamedParameters(RunWriteRepositoryImpl.DELETE_SQL));
+    }
+
+    private void assertIndexOnly(String finder, String sql) {
+        int parameters = (int) Pattern.compile("\\$\\d+").matcher(sql).results().map(MatchResult::group).distinct().count();
+        String nulls = parameters == 0 ? "" : "(" + String.join(", ", Collections.nCopies(parameters, "NULL")) + ")";
+        jdbcClient.sql("PREPARE explained AS " + sql).update();
+        String plan;
+        try {
+            plan = String.join("\n", jdbcClient.sql("EXPLAIN EXECUTE explained" + nulls).query(String.class).list());
+        } finally {
+            jdbcClient.sql("DEALLOCATE explained").update();
+        }
+
+        assertTrue(plan.contains("Index"), () -> "No index used by " + finder + ": " + sql + "\n" + plan);
+        assertFalse(plan.contains("Seq Scan"), () -> "Sequential scan in " + finder + ": " + sql + "\n" + plan);
+    }
+
+    // JDBC ? placeholders as $1, $2 ... : PREPARE takes numbered parameters only
+
+    private static String numberPlaceholders(String sql) {
+        StringBuilder numbered = new StringBuilder();
+        int parameter = 0;
+        for (char c : sql.toCharArray()) {
+            if (c == '?') {
+                numbered.append('$').append(++parameter);
+            } else {
+                numbered.append(c);
+            }
+        }
+        return numbered.toString();
+    }
+
+    // :name as $n, the same name keeps its number
+
+    private static String numberNamedParameters(String sql) {
+        Map<String, Integer> numbers = new LinkedHashMap<>();
+        Matcher matcher = Pattern.compile("(?<!:):(\\w+)").matcher(sql);
+        StringBuilder numbered = new StringBuilder();
+        while (matcher.find()) {
+            int number = numbers.computeIfAbsent(matcher.group(1), name -> numbers.size() + 1);
+            matcher.appendReplacement(numbered, "\\$" + number);
+        }
+        matcher.appendTail(numbered);
+        return numbered.toString();
+    }
+}
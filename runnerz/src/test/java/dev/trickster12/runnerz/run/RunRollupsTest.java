@@ -0,0 +1,103 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// run_daily_rollup (V8 migration) follows every write to run in the same transaction, and stays equal to
+// what a GROUP BY over run gives
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional // Assure le rollback après chaque test
+public class RunRollupsTest {
+
+    private static final LocalDate DAY = LocalDate.of(2032, 5, 10);
+
+    @Autowired
+    private RunRollups runRollups;
+
+    @Autowired
+    private RunRepository runRepository;
+
+    @Autowired
+    private JdbcClient jdbcClient;
+
+    @Test
+    void shouldFollowInsertsUpdatesAndDeletes() {
+        Run short1 = run("Rollup Short Run", 3, Location.OUTDOOR);
+        Run long1 = run("Rollup Long Run", 9, Location.OUTDOOR);
+        runRepository.saveAllAndFlush(List.of(short1, long1, run("Rollup Indoor Run", 4, Location.INDOOR)));
+
+        RunTotals totals = runRollups.totals(DAY, DAY.plusDays(1));
+        assertEquals(3, totals.runs());
+        assertEquals(16, totals.totalMiles());
+        assertEquals(9, totals.longestRun());
+        assertEquals(3 * 3600, totals.durationSeconds());
+
+        // the old values leave the day, the new ones enter the next one : the longest run of DAY is read again
+        Run moved = new Run(long1.getTitle(), long1.getStartedOn().plusDays(1), long1.getCompletedOn().plusDays(1), 7, Location.OUTDOOR, long1.getVersion());
+        assertTrue(runRepository.updateIfVersionMatches(long1.getId(), moved).isPresent());
+        assertEquals(4, runRollups.totals(DAY, DAY.plusDays(1)).longestRun());
+        assertEquals(7, runRollups.totals(DAY.plusDays(1), DAY.plusDays(2)).longestRun());
+
+        // a group left without runs disappears
+        runRepository.deleteRunById(long1.getId());
+        assertEquals(0, runRollups.totals(DAY.plusDays(1), DAY.plusDays(2)).runs());
+        runRepository.deleteRunById(short1.getId());
+
+        List<RunLocationStats> locations = runRollups.byLocation(DAY, DAY.plusDays(2));
+        assertEquals(List.of(new RunLocationStats(Location.INDOOR, 1, 4, 4.0, 4)), locations);
+        assertEquals(List.of(), runRollups.check());
+    }
+
+    @Test
+    void shouldReportAndRepairDrift() {
+        runRepository.saveAndFlush(run("Rollup Drift Run", 5, Location.INDOOR));
+        jdbcClient.sql("UPDATE run_daily_rollup SET miles = miles + 1 WHERE day = :day").param("day", DAY).update();
+
+        List<RunRollupDrift> drifts = runRollups.check();
+        assertEquals(1, drifts.size());
+        assertEquals(5L, drifts.get(0).expectedMiles());
+        assertEquals(6L, drifts.get(0).actualMiles());
+
+        assertTrue(runRollups.rebuild() > 0);
+        assertEquals(List.of(), runRollups.check());
+        assertEquals(5, runRollups.totals(DAY, DAY.plusDays(1)).totalMiles());
+    }
+
+    @Test
+    void shouldBucketDurationsByMonth() {
+        runRepository.saveAllAndFlush(List.of(run("Rollup May Run", 5, Location.OUTDOOR), run("Rollup Other May Run", 2, Location.INDOOR)));
+
+        List<RunDurationBucket> months = runRollups.durations(RunStatsBucket.MONTH, DAY.withDayOfMonth(1), DAY.withDayOfMonth(1).plusMonths(1));
+        assertEquals(List.of(new RunDurationBucket(LocalDateTime.of(2032, 5, 1, 0, 0), 2, 7, 2 * 3600)), months);
+    }
+
+    @Test
+    void shouldGiveTheSameDurationsAsTheQueriesOnRun() {
+        // 07:00:00.900 to 07:00:02.100 : 1.2 s apart, 2 s once both ends are truncated to the second
+        LocalDateTime start = DAY.atTime(7, 0).plusNanos(900_000_000);
+        Run run = new Run("Rollup Fractional Run", start, start.plusNanos(1_200_000_000), 3, Location.OUTDOOR, null);
+        runRepository.saveAndFlush(run);
+
+        assertEquals(2, runRollups.totals(DAY, DAY.plusDays(1)).durationSeconds());
+        assertEquals(2, runRepository.totals(DAY.atStartOfDay(), DAY.atTime(12, 0)).durationSeconds());
+        assertEquals(2, runRepository.durationsByDay(DAY.atStartOfDay(), DAY.atTime(12, 0)).get(0).durationSeconds());
+    }
+
+    // one hour on DAY, the only runs of that period
+    private static Run run(String title, int miles, Location location) {
+        LocalDateTime start = DAY.atTime(7, 0);
+        return new Run(title, start, start.plusHours(1), miles, location, null);
+    }
+}
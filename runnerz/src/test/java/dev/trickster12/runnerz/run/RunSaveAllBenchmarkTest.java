@@ -0,0 +1,84 @@
+package dev.trickster12.runnerz.run;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+// Throughput of POST /api/runs/saveAll against the test database
+// Not part of the normal build, run it with : ./mvnw test -Dtest=RunSaveAllBenchmarkTest -Dbenchmark=true
+// It only goes through the HTTP endpoint, so the same class can be run on an older commit to compare
+// Every size is posted once to warm up, then REPEATS times : the spread between the slowest and the fastest round is
+// the noise a comparison has to beat, a difference within it is not a result
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class RunSaveAllBenchmarkTest {
+
+    private static final int REPEATS = 5;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private RunRepository runRepository;
+
+    @AfterEach
+    void cleanUp() {
+        runRepository.deleteAllInBatch();
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {10_000, 100_000})
+    void saveAllThroughput(int rows) throws Exception {
+        LocalDateTime start = LocalDateTime.of(2024, 1, 1, 6, 0);
+        List<Run> runs = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            runs.add(new Run("Bench Run " + i, start.plusMinutes(i), start.plusMinutes(i + 30),
+                    1 + i % 20, i % 2 == 0 ? Location.INDOOR : Location.OUTDOOR, 0));
+        }
+        byte[] payload = objectMapper.writeValueAsBytes(runs);
+
+        timedPost(payload);
+        double[] throughputs = new double[REPEATS];
+        for (int i = 0; i < REPEATS; i++) {
+            runRepository.deleteAllInBatch();
+            throughputs[i] = rows / (timedPost(payload) / 1_000_000_000.0);
+        }
+        Arrays.sort(throughputs);
+
+        System.out.printf("saveAll %,d rows, %d rounds : median %,.0f rows/s, min %,.0f, max %,.0f (spread %.1f%%)%n",
+                rows, REPEATS, throughputs[REPEATS / 2], throughputs[0], throughputs[REPEATS - 1],
+                100 * (throughputs[REPEATS - 1] - throughputs[0]) / throughputs[REPEATS / 2]);
+    }
+
+    // nanoseconds taken by one POST
+
+    private long timedPost(byte[] payload) throws Exception {
+        long begin = System.nanoTime();
+        mockMvc.perform(post("/api/runs/saveAll")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content(payload))
+                .andExpect(status().isCreated());
+        return System.nanoTime() - begin;
+    }
+}
@@ -0,0 +1,102 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.simple.JdbcClient;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Latency of the substring finders over 5M synthetic runs, with the trigram index and with index scans disabled
+// Not part of the normal build, run it with : ./mvnw test -Dtest=RunTitleSearchBenchmarkTest -Dbenchmark=true
+// The rows are inserted in the test transaction and rolled back at the end
+// Each case is checked before it is timed : a figure labelled "trigram index" comes from a bitmap scan of that index,
+// one labelled "sequential scan" from a plan without any index
+@SpringBootTest
+@ActiveProfiles("test")
+@Transactional
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class RunTitleSearchBenchmarkTest {
+
+    private static final int ROWS = 5_000_000;
+    private static final int WARM_UP = 3;
+    private static final int ITERATIONS = 10;
+
+    @Autowired
+    private RunRepository runRepository;
+
+    @Autowired
+    private JdbcClient jdbcClient;
+
+    @Test
+    void titleSearchLatency() {
+        jdbcClient.sql("""
+                        INSERT INTO run (id, title, started_on, completed_on, miles, location, version)
+                        SELECT nextval('run_id_seq'), 'Run ' || md5(i::text),
+                               timestamp '2020-01-01' + i * interval '1 minute',
+                               timestamp '2020-01-01' + i * interval '1 minute' + interval '45 minutes',
+                               1 + i % 20, CASE WHEN i % 2 = 0 THEN 'INDOOR' ELSE 'OUTDOOR' END, 0
+                        FROM generate_series(1, :rows) AS i""")
+                .param("rows", ROWS)
+                .update();
+        jdbcClient.sql("ANALYZE run").update();
+
+        // 8 characters of one row's title : a single match among 5M rows, the worst case for a scan
+        String keyword = jdbcClient.sql("SELECT substr(md5('4242424'), 5, 8)").query(String.class).single();
+
+        assertPlan("LIKE", keyword, true);
+        assertPlan("ILIKE", keyword.toUpperCase(), true);
+        report("LIKE  (trigram index)", () -> runRepository.findPageByTitleContaining(keyword, Limit.of(51)));
+        report("ILIKE (trigram index)", () -> runRepository.findPageByTitleContainingIgnoreCase(keyword.toUpperCase(), Limit.of(51)));
+
+        jdbcClient.sql("SET LOCAL enable_indexscan = off").update();
+        jdbcClient.sql("SET LOCAL enable_bitmapscan = off").update();
+
+        assertPlan("LIKE", keyword, false);
+        assertPlan("ILIKE", keyword.toUpperCase(), false);
+        report("LIKE  (sequential scan)", () -> runRepository.findPageByTitleContaining(keyword, Limit.of(51)));
+        report("ILIKE (sequential scan)", () -> runRepository.findPageByTitleContainingIgnoreCase(keyword.toUpperCase(), Limit.of(51)));
+    }
+
+    // The plan of the statement the finders send (without Hibernate's aliases, the keyword is hex and needs no
+    // escaping) has to match the label, and the finder has to return the one run holding the keyword
+    private void assertPlan(String operator, String keyword, boolean trigramIndex) {
+        String plan = String.join("\n", jdbcClient.sql(
+                        "EXPLAIN SELECT * FROM run WHERE title " + operator + " :pattern ORDER BY started_on, id LIMIT 51")
+                .param("pattern", "%" + keyword + "%")
+                .query(String.class).list());
+        if (trigramIndex) {
+            assertTrue(plan.contains("Bitmap Index Scan") && plan.contains("title"), plan);
+        } else {
+            assertFalse(plan.contains("Index Scan") || plan.contains("Index Only Scan"), plan);
+        }
+        List<Run> runs = operator.equals("LIKE")
+                ? runRepository.findPageByTitleContaining(keyword, Limit.of(51))
+                : runRepository.findPageByTitleContainingIgnoreCase(keyword, Limit.of(51));
+        assertEquals(1, runs.size());
+    }
+
+    private static void report(String label, Runnable query) {
+        for (int i = 0; i < WARM_UP; i++) {
+            query.run();
+        }
+        long[] timings = new long[ITERATIONS];
+        for (int i = 0; i < ITERATIONS; i++) {
+            long begin = System.nanoTime();
+            query.run();
+            timings[i] = System.nanoTime() - begin;
+        }
+        Arrays.sort(timings);
+        System.out.printf("%s over %,d runs : median %.2f ms, max %.2f ms%n",
+                label, ROWS, timings[ITERATIONS / 2] / 1_000_000.0, timings[ITERATIONS - 1] / 1_000_000.0);
+    }
+}
@@ -0,0 +1,72 @@
+package dev.trickster12.runnerz.run;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TitleTrieTest {
+
+    @Test
+    void shouldSuggestMostFrequentTitlesFirst() {
+        TitleTrie trie = new TitleTrie();
+        trie.add("Morning Run", 3);
+        trie.add("Morning Ride", 5);
+        trie.add("Mountain Trail", 1);
+        trie.add("Evening Run", 10);
+
+        assertEquals(List.of(
+                new TitleSuggestion("Morning Ride", 5),
+                new TitleSuggestion("Morning Run", 3),
+                new TitleSuggestion("Mountain Trail", 1)), trie.suggest("mo", 10));
+        assertEquals(List.of(new TitleSuggestion("Morning Ride", 5)), trie.suggest("MORNING", 1));
+        // the prefix may stop in the middle of an edge
+        assertEquals(List.of(new TitleSuggestion("Mountain Trail", 1)), trie.suggest("moun", 10));
+        assertTrue(trie.suggest("x", 10).isEmpty());
+        assertEquals(4, trie.suggest("", 10).size());
+    }
+
+    @Test
+    void shouldCountTitlesIgnoringCase() {
+        TitleTrie trie = new TitleTrie();
+        trie.add("Morning Run", 1);
+        trie.add("morning run", 1);
+
+        assertEquals(List.of(new TitleSuggestion("Morning Run", 2)), trie.suggest("morn", 10));
+        assertEquals(1, trie.titles());
+    }
+
+    @Test
+    void shouldRemoveTitlesAndCompactTheTree() {
+        TitleTrie trie = new TitleTrie();
+        trie.add("Morning Run", 1);
+        int nodes = trie.nodes();
+        trie.add("Morning Ride", 2);
+        trie.add("Morning", 1);
+
+        trie.add("Morning Ride", -2);
+        trie.add("Morning", -1);
+
+        assertEquals(List.of(new TitleSuggestion("Morning Run", 1)), trie.suggest("morning r", 10));
+        assertEquals(1, trie.titles());
+        // the split edges were merged back
+        assertEquals(nodes, trie.nodes());
+
+        trie.add("Morning Run", -1);
+        assertTrue(trie.suggest("", 10).isEmpty());
+        assertEquals(1, trie.nodes());
+    }
+
+    @Test
+    void shouldIgnoreRemovalOfUnknownTitle() {
+        TitleTrie trie = new TitleTrie();
+        trie.add("Morning Run", 1);
+
+        trie.add("Morning Ride", -1);
+        trie.add("Morn", -1);
+
+        assertEquals(List.of(new TitleSuggestion("Morning Run", 1)), trie.suggest("m", 10));
+    }
+}
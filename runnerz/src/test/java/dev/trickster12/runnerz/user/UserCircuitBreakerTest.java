@@ -0,0 +1,89 @@
+package dev.trickster12.runnerz.user;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class UserCircuitBreakerTest {
+
+    @Test
+    void shouldOpenOnFailuresAndCloseAfterTrialCalls() throws Exception {
+        UserCircuitBreaker breaker = new UserCircuitBreaker(10, 4, 0.5, Duration.ofMillis(100), 2);
+
+        succeed(breaker);
+        succeed(breaker);
+        fail(breaker);
+        assertEquals(UserCircuitBreaker.State.CLOSED, breaker.state());
+        // 2 failures out of 4 calls
+        fail(breaker);
+        assertEquals(UserCircuitBreaker.State.OPEN, breaker.state());
+
+        // fails fast, the call is not made
+        assertThrows(UserDirectoryUnavailableException.class, () -> breaker.call(() -> {
+            throw new AssertionError("no call expected while open");
+        }));
+
+        Thread.sleep(150);
+        succeed(breaker);
+        assertEquals(UserCircuitBreaker.State.HALF_OPEN, breaker.state());
+        succeed(breaker);
+        assertEquals(UserCircuitBreaker.State.CLOSED, breaker.state());
+
+        UserCircuitBreaker.Metrics metrics = breaker.metrics();
+        assertEquals(Map.of("CLOSED->OPEN", 1L, "OPEN->HALF_OPEN", 1L, "HALF_OPEN->CLOSED", 1L), metrics.transitions());
+        assertEquals(1, metrics.rejected());
+        assertEquals(2, metrics.failures());
+    }
+
+    @Test
+    void shouldOpenAgainWhenATrialCallFails() throws Exception {
+        UserCircuitBreaker breaker = new UserCircuitBreaker(10, 1, 0.5, Duration.ofMillis(50), 3);
+        fail(breaker);
+        Thread.sleep(80);
+        fail(breaker);
+        assertEquals(UserCircuitBreaker.State.OPEN, breaker.state());
+        assertEquals(1L, breaker.metrics().transitions().get("HALF_OPEN->OPEN"));
+    }
+
+    @Test
+    void shouldNotCountClientErrorsAsFailures() {
+        UserCircuitBreaker breaker = new UserCircuitBreaker(10, 1, 0.5, Duration.ofSeconds(30), 1);
+        for (int i = 0; i < 5; i++) {
+            assertThrows(HttpClientErrorException.class, () -> breaker.call(() -> {
+                throw HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", null, null, null);
+            }));
+        }
+        assertEquals(UserCircuitBreaker.State.CLOSED, breaker.state());
+    }
+
+    @Test
+    void shouldNotCountInterruptedCallsAsFailures() {
+        UserCircuitBreaker breaker = new UserCircuitBreaker(10, 1, 0.5, Duration.ofSeconds(30), 1);
+        for (int i = 0; i < 5; i++) {
+            // what the HTTP client throws when the calling thread is interrupted
+            assertThrows(ResourceAccessException.class, () -> breaker.call(() -> {
+                throw new ResourceAccessException("I/O error", new IOException("Request was interrupted", new InterruptedException()));
+            }));
+        }
+        assertEquals(UserCircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(0, breaker.metrics().failures());
+    }
+
+    private static void succeed(UserCircuitBreaker breaker) {
+        assertEquals("ok", breaker.call(() -> "ok"));
+    }
+
+    private static void fail(UserCircuitBreaker breaker) {
+        assertThrows(IllegalStateException.class, () -> breaker.call(() -> {
+            throw new IllegalStateException("directory down");
+        }));
+    }
+}
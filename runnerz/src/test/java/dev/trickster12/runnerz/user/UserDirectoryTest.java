@@ -0,0 +1,111 @@
+package dev.trickster12.runnerz.user;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.support.RestClientAdapter;
+import org.springframework.web.service.invoker.HttpServiceProxyFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+// UserDirectory in front of both clients, against a local stub of the directory counting the remote calls
+public class UserDirectoryTest {
+
+    private static final int USERS = 200;
+
+    private UserStubServer server;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new UserStubServer(USERS, Duration.ZERO);
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"http", "rest"})
+    void shouldFetchEachUserOnce(String client) {
+        UserDirectory directory = directory(client);
+        Random random = new Random(7);
+        for (int i = 0; i < 1_000; i++) {
+            int id = 1 + random.nextInt(100);
+            assertEquals(id, directory.findById(id).getId());
+        }
+        // 1,000 lookups of 100 distinct users
+        assertEquals(100, server.requests());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"http", "rest"})
+    void shouldCoalesceConcurrentLookups(String client) throws Exception {
+        server.latency(Duration.ofMillis(200));
+        UserDirectory directory = directory(client);
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Callable<User>> lookups = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                lookups.add(() -> directory.findById(7));
+            }
+            for (Future<User> user : executor.invokeAll(lookups)) {
+                assertEquals(7, user.get().getId());
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(1, server.requests());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"http", "rest"})
+    void shouldFetchManyIdsWithOneCall(String client) {
+        UserDirectory directory = directory(client);
+        List<Integer> page = IntStream.rangeClosed(1, 50).boxed().toList();
+
+        Map<Integer, User> users = directory.findByIds(page);
+        assertEquals(page, List.copyOf(users.keySet()));
+        assertEquals(1, server.requests());
+
+        // every user came with the first page
+        directory.findByIds(IntStream.rangeClosed(100, 150).boxed().toList());
+        assertEquals(1, server.requests());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"http", "rest"})
+    void shouldLeaveUnknownUsersOut(String client) {
+        UserDirectory directory = directory(client);
+        assertThrows(HttpClientErrorException.NotFound.class, () -> directory.findById(USERS + 1));
+        // a failed fetch is not cached
+        assertThrows(HttpClientErrorException.NotFound.class, () -> directory.findById(USERS + 1));
+        assertEquals(2, server.requests());
+
+        Map<Integer, User> users = directory.findByIds(List.of(3, USERS + 1, 4, USERS + 2));
+        assertEquals(List.of(3, 4), List.copyOf(users.keySet()));
+    }
+
+    private UserDirectory directory(String client) {
+        UserHttpClient remote = client.equals("http")
+                ? HttpServiceProxyFactory.builderFor(RestClientAdapter.create(RestClient.create(server.url()))).build()
+                        .createClient(UserHttpClient.class)
+                : new UserRestClient(RestClient.builder(), server.url());
+        return new UserDirectory(remote, new UserCache(1_000, Duration.ofMinutes(10)), 3);
+    }
+}
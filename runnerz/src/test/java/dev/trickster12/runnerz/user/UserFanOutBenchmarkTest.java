@@ -0,0 +1,74 @@
+package dev.trickster12.runnerz.user;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Time to look up USERS distinct users against a stub directory answering after LATENCY : one by one on the
+// calling thread, then fanned out by UserFanOut, over a fresh connection per call and over pooled keep-alive ones
+// Not part of the normal build, run it with : ./mvnw test -Dtest=UserFanOutBenchmarkTest -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class UserFanOutBenchmarkTest {
+
+    private static final int USERS = 500;
+    private static final Duration LATENCY = Duration.ofMillis(20);
+    private static final int THREADS = 32;
+    private static final int MAX_PER_HOST = 16;
+
+    @Test
+    void lookupTime() throws Exception {
+        List<Integer> ids = IntStream.rangeClosed(1, USERS).boxed().toList();
+        try (UserStubServer server = new UserStubServer(USERS, LATENCY)) {
+            System.out.printf("%d users, remote latency %d ms, %d threads, %d calls per host%n",
+                    USERS, LATENCY.toMillis(), THREADS, MAX_PER_HOST);
+
+            UserDirectory sequential = directory(server, jdk());
+            long start = System.nanoTime();
+            ids.forEach(sequential::findById);
+            System.out.printf("one by one, keep-alive       : %7.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+            for (String transport : List.of("connection per call", "keep-alive")) {
+                RestClient.Builder builder = transport.equals("keep-alive")
+                        ? jdk()
+                        : RestClient.builder().requestFactory(new SimpleClientHttpRequestFactory() {
+                            {
+                                setConnectTimeout(Duration.ofSeconds(5));
+                            }
+
+                            @Override
+                            protected void prepareConnection(HttpURLConnection connection, String method)
+                                    throws IOException {
+                                super.prepareConnection(connection, method);
+                                connection.setRequestProperty("Connection", "close");
+                            }
+                        });
+                UserFanOut fanOut = new UserFanOut(directory(server, builder), THREADS, MAX_PER_HOST, Duration.ofSeconds(30));
+                start = System.nanoTime();
+                UserFanOut.Result result = fanOut.findByIds(ids);
+                System.out.printf("fan-out, %-20s: %7.1f ms%n", transport, (System.nanoTime() - start) / 1e6);
+                assertEquals(USERS, result.users().size());
+                fanOut.destroy();
+            }
+        }
+    }
+
+    private static RestClient.Builder jdk() {
+        return RestClient.builder().requestFactory(new JdkClientHttpRequestFactory(
+                HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()));
+    }
+
+    private static UserDirectory directory(UserStubServer server, RestClient.Builder builder) {
+        return new UserDirectory(new UserRestClient(builder, server.url()), new UserCache(10_000, Duration.ofMinutes(10)), 3);
+    }
+}
@@ -0,0 +1,77 @@
+package dev.trickster12.runnerz.user;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UserFanOutTest {
+
+    private UserStubServer server;
+    private UserFanOut fanOut;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new UserStubServer(100, Duration.ofMillis(50));
+        UserDirectory directory = new UserDirectory(new UserRestClient(RestClient.builder(), server.url()),
+                new UserCache(1_000, Duration.ofMinutes(10)), 3);
+        fanOut = new UserFanOut(directory, 16, 4, Duration.ofSeconds(5));
+    }
+
+    @AfterEach
+    void stop() {
+        fanOut.destroy();
+        server.close();
+    }
+
+    @Test
+    void shouldFetchInParallelWithinThePerHostCap() {
+        List<Integer> ids = IntStream.rangeClosed(1, 40).boxed().toList();
+        long start = System.nanoTime();
+        UserFanOut.Result result = fanOut.findByIds(ids);
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertTrue(result.complete());
+        assertEquals(ids, List.copyOf(result.users().keySet()));
+        assertEquals(40, server.requests());
+        assertTrue(server.maxInFlight() <= 4, "at most 4 calls at once, saw " + server.maxInFlight());
+        // 40 calls of 50 ms one after the other would take 2 s
+        assertTrue(millis < 1_500, "took " + millis + " ms");
+
+        // cached now : no call, no thread
+        fanOut.findByIds(ids);
+        assertEquals(40, server.requests());
+    }
+
+    @Test
+    void shouldReturnWhatItHasAtTheDeadline() {
+        fanOut.findByIds(List.of(1, 2));
+        server.latency(Duration.ofMillis(1_000));
+
+        long start = System.nanoTime();
+        UserFanOut.Result result = fanOut.findByIds(List.of(1, 2, 3, 4), Duration.ofMillis(200));
+        long millis = (System.nanoTime() - start) / 1_000_000;
+
+        assertFalse(result.complete());
+        assertEquals(List.of(1, 2), List.copyOf(result.users().keySet()));
+        assertEquals(Set.of(3, 4), result.unavailable());
+        assertTrue(millis < 800, "took " + millis + " ms");
+    }
+
+    @Test
+    void shouldReportUnknownUsers() {
+        UserFanOut.Result result = fanOut.findByIds(List.of(5, 101, 6));
+        assertTrue(result.complete());
+        assertEquals(List.of(5, 6), List.copyOf(result.users().keySet()));
+        assertEquals(Set.of(101), result.notFound());
+    }
+}
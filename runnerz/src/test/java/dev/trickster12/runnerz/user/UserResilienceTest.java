@@ -0,0 +1,130 @@
+package dev.trickster12.runnerz.user;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Timeouts, circuit breaker with stale users and hedging against a stub directory injecting faults
+public class UserResilienceTest {
+
+    private UserStubServer server;
+    private UserHedging hedging;
+
+    @BeforeEach
+    void startServer() throws Exception {
+        server = new UserStubServer(100, Duration.ZERO);
+    }
+
+    @AfterEach
+    void stop() {
+        if (hedging != null) {
+            hedging.destroy();
+        }
+        server.close();
+    }
+
+    @Test
+    void shouldTimeOutASlowDirectory() {
+        server.latency(Duration.ofSeconds(3));
+        UserRestClient client = new UserRestClient(RestClient.builder(), server.url(), Duration.ofSeconds(1), Duration.ofMillis(200));
+
+        long start = System.nanoTime();
+        assertThrows(ResourceAccessException.class, () -> client.findById(1));
+        assertTrue((System.nanoTime() - start) / 1_000_000 < 1_500);
+    }
+
+    @Test
+    void shouldServeStaleUsersWhileOpen() throws Exception {
+        UserCircuitBreaker breaker = new UserCircuitBreaker(10, 4, 0.5, Duration.ofMillis(300), 1);
+        UserDirectory directory = directory(breaker, new UserHedging(false, 0.95, Duration.ofMillis(20), 4));
+        directory.findById(1);
+        directory.findById(2);
+
+        server.failWith(503);
+        for (int id = 10; id < 14; id++) {
+            int unknown = id;
+            assertThrows(RuntimeException.class, () -> directory.findById(unknown));
+        }
+        assertEquals(UserCircuitBreaker.State.OPEN, breaker.state());
+
+        int requests = server.requests();
+        // expired from the cache (expire-after-write of 0) but still known : served stale without a call
+        assertEquals(1, directory.findById(1).getId());
+        assertThrows(UserDirectoryUnavailableException.class, () -> directory.findById(50));
+        assertEquals(requests, server.requests());
+        assertEquals(1, directory.staleServed());
+
+        server.failWith(0);
+        Thread.sleep(350);
+        assertEquals(50, directory.findById(50).getId());
+        assertEquals(UserCircuitBreaker.State.CLOSED, breaker.state());
+        assertEquals(1L, breaker.metrics().transitions().get("CLOSED->OPEN"));
+        assertEquals(1L, breaker.metrics().transitions().get("HALF_OPEN->CLOSED"));
+    }
+
+    @Test
+    void shouldHedgeSlowCalls() {
+        server.latency(Duration.ofMillis(5));
+        hedging = new UserHedging(true, 0.95, Duration.ofMillis(20), 16);
+        UserDirectory directory = directory(new UserCircuitBreaker(20, 10, 0.5, Duration.ofSeconds(30), 1), hedging);
+        // latencies to hedge on
+        for (int id = 1; id <= 30; id++) {
+            directory.findById(id);
+        }
+
+        server.slowEvery(5, Duration.ofSeconds(2));
+        long slowest = 0;
+        for (int id = 31; id <= 90; id++) {
+            long start = System.nanoTime();
+            assertEquals(id, directory.findById(id).getId());
+            slowest = Math.max(slowest, System.nanoTime() - start);
+        }
+        // every 5th request takes 2 s, its hedge answers instead
+        assertTrue(slowest / 1_000_000 < 1_000, "slowest lookup took " + slowest / 1_000_000 + " ms");
+        assertTrue(hedging.metrics().hedgesWon() >= 10, hedging.metrics().toString());
+    }
+
+    @Test
+    void shouldLetFetchesPastTheFanOutDeadlineFinish() throws Exception {
+        // slower than the deadline of the fan-out, well within the read timeout of the client
+        server.latency(Duration.ofMillis(300));
+        UserCircuitBreaker breaker = new UserCircuitBreaker(20, 4, 0.5, Duration.ofSeconds(30), 1);
+        UserRestClient client = new UserRestClient(RestClient.builder(), server.url(), Duration.ofSeconds(1), Duration.ofSeconds(5));
+        UserDirectory directory = new UserDirectory(client, new UserCache(1_000, Duration.ofMinutes(10)), breaker,
+                new UserHedging(false, 0.95, Duration.ofMillis(20), 4), 3);
+        UserFanOut fanOut = new UserFanOut(directory, 16, 8, Duration.ofMillis(100));
+        try {
+            List<Integer> ids = IntStream.rangeClosed(1, 8).boxed().toList();
+            assertEquals(Set.copyOf(ids), fanOut.findByIds(ids).unavailable());
+            assertEquals(Set.copyOf(ids), fanOut.findByIds(ids).unavailable());
+
+            // the fetches given up by the callers went on : the directory answered, nothing counts as a failure
+            Thread.sleep(500);
+            assertEquals(UserCircuitBreaker.State.CLOSED, breaker.state());
+            assertEquals(0, breaker.metrics().failures());
+            int requests = server.requests();
+            UserFanOut.Result result = fanOut.findByIds(ids);
+            assertTrue(result.complete());
+            assertEquals(ids, List.copyOf(result.users().keySet()));
+            assertEquals(requests, server.requests());
+        } finally {
+            fanOut.destroy();
+        }
+    }
+
+    private UserDirectory directory(UserCircuitBreaker breaker, UserHedging hedging) {
+        UserRestClient client = new UserRestClient(RestClient.builder(), server.url(), Duration.ofSeconds(1), Duration.ofSeconds(5));
+        return new UserDirectory(client, new UserCache(1_000, Duration.ZERO), breaker, hedging, 3);
+    }
+}
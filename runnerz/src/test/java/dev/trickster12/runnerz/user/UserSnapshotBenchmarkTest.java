@@ -0,0 +1,83 @@
+package dev.trickster12.runnerz.user;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Heap held by USERS users as the List<User> graph read from JSON and as a UserSnapshot, and the time of the same
+// "users within 100 km" search over both (parsing the String coordinates against reading the doubles)
+// Every String of the graph is its own instance, as after JSON deserialization, cities and companies repeat
+// Not part of the normal build, run it with : ./mvnw test -Dtest=UserSnapshotBenchmarkTest -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class UserSnapshotBenchmarkTest {
+
+    private static final int USERS = 500_000;
+    private static final int CITIES = 2_000;
+    private static final int COMPANIES = 5_000;
+    private static final int ITERATIONS = 10;
+
+    @Test
+    void footprintAndSearchTime() {
+        long empty = usedHeap();
+        List<User> users = new ArrayList<>(USERS);
+        for (int i = 1; i <= USERS; i++) {
+            users.add(user(i));
+        }
+        long graphBytes = usedHeap() - empty;
+
+        int fromGraph = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            fromGraph = 0;
+            for (User user : users) {
+                Geo geo = user.getAddress().getGeo();
+                if (UserSnapshot.distanceKm(45, 5, Double.parseDouble(geo.getLat()), Double.parseDouble(geo.getLng())) <= 100) {
+                    fromGraph++;
+                }
+            }
+        }
+        long graphNanos = (System.nanoTime() - start) / ITERATIONS;
+
+        UserSnapshot snapshot = UserSnapshot.of(users);
+        int fromSnapshot = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            fromSnapshot = snapshot.near(45, 5, 100).size();
+        }
+        long snapshotNanos = (System.nanoTime() - start) / ITERATIONS;
+        assertEquals(fromGraph, fromSnapshot);
+
+        // the snapshot alone, holding the strings it shares with the graph (names, emails...)
+        users = null;
+        long snapshotBytes = usedHeap() - empty;
+
+        System.out.printf("%d users, %d cities, %d companies%n", USERS, CITIES, COMPANIES);
+        System.out.printf("List<User>   : %8.1f MB (%4d B/user), search %7.1f ms%n",
+                graphBytes / 1e6, graphBytes / USERS, graphNanos / 1e6);
+        System.out.printf("UserSnapshot : %8.1f MB (%4d B/user), search %7.1f ms%n",
+                snapshotBytes / 1e6, snapshotBytes / USERS, snapshotNanos / 1e6);
+        assertEquals(USERS, snapshot.size());
+    }
+
+    private static User user(int id) {
+        int city = id % CITIES;
+        int company = id % COMPANIES;
+        return new User(id, "User " + id, "user" + id, "user" + id + "@example.com",
+                new Address("Street " + id, "Apt. " + id, new String("City " + city), String.format("%05d", id % 100_000),
+                        new Geo(Double.toString(-80 + (city * 0.08) % 160), Double.toString(-170 + (city * 0.17) % 340))),
+                "555-" + id, "user" + id + ".example.com",
+                new Company(new String("Company " + company), new String("Catch phrase " + company), new String("bs " + company)));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
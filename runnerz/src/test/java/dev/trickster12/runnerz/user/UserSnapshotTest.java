@@ -0,0 +1,103 @@
+package dev.trickster12.runnerz.user;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UserSnapshotTest {
+
+    @Test
+    void shouldKeepEveryFieldAndShareCitiesAndCompanies() {
+        UserSnapshot snapshot = UserSnapshot.of(List.of(
+                user(3, "Paris", "48.8566", "2.3522", "Acme"),
+                user(1, new String("Paris"), "48.8606", "2.3376", new String("Acme")),
+                user(2, "Lyon", "45.7640", "4.8357", "Globex")));
+
+        assertEquals(3, snapshot.size());
+        assertEquals(2, snapshot.cities());
+        assertEquals(2, snapshot.companies());
+        User first = snapshot.findById(1).orElseThrow();
+        User third = snapshot.findById(3).orElseThrow();
+        assertEquals("User 1", first.getName());
+        assertEquals("Street 1", first.getAddress().getStreet());
+        assertEquals("48.8606", first.getAddress().getGeo().getLat());
+        assertSame(first.getAddress().getCity(), third.getAddress().getCity());
+        assertSame(first.getCompany(), third.getCompany());
+        assertTrue(snapshot.findById(4).isEmpty());
+    }
+
+    @Test
+    void shouldFindUsersNearAPoint() {
+        UserSnapshot snapshot = UserSnapshot.of(List.of(
+                user(1, "Paris", "48.8566", "2.3522", "Acme"),
+                user(2, "Lyon", "45.7640", "4.8357", "Acme"),
+                user(3, "Versailles", "48.8049", "2.1204", "Acme"),
+                user(4, "Nowhere", "not a number", null, "Acme")));
+
+        List<User> near = snapshot.near(48.8566, 2.3522, 50);
+        assertEquals(List.of(1, 3), near.stream().map(User::getId).toList());
+        // Paris - Lyon is about 392 km
+        assertEquals(392, UserSnapshot.distanceKm(48.8566, 2.3522, 45.7640, 4.8357), 2);
+        assertEquals(4, snapshot.near(48.8566, 2.3522, 20_000).size() + 1);
+        assertTrue(Double.isNaN(snapshot.lat(snapshot.slot(4))));
+        assertNull(snapshot.findById(4).orElseThrow().getAddress().getGeo().getLng());
+    }
+
+    @Test
+    void shouldSwapTheWholeSnapshotOnRefresh() {
+        List<List<User>> answers = List.of(List.of(user(1, "Paris", "1", "1", "Acme")),
+                List.of(user(1, "Lyon", "1", "1", "Acme"), user(2, "Lyon", "1", "1", "Acme")));
+        int[] calls = {0};
+        UserSnapshots snapshots = new UserSnapshots(directory(() -> {
+            if (calls[0] == answers.size()) {
+                throw new IllegalStateException("directory down");
+            }
+            return answers.get(calls[0]++);
+        }));
+
+        UserSnapshot before = snapshots.refresh();
+        UserSnapshot after = snapshots.refresh();
+        assertEquals(1, before.size());
+        assertEquals("Paris", before.findById(1).orElseThrow().getAddress().getCity());
+        assertEquals(2, after.size());
+        assertSame(after, snapshots.current());
+
+        // the directory down : UserDirectory serves the last known users
+        assertEquals(2, snapshots.refresh().size());
+
+        // a refresh without any user known fails and keeps the current snapshot
+        UserSnapshots cold = new UserSnapshots(directory(() -> {
+            throw new IllegalStateException("directory down");
+        }));
+        assertThrows(IllegalStateException.class, cold::refresh);
+        assertSame(UserSnapshot.EMPTY, cold.current());
+    }
+
+    private static UserDirectory directory(Supplier<List<User>> findAll) {
+        return new UserDirectory(new UserHttpClient() {
+            @Override
+            public List<User> findAll() {
+                return findAll.get();
+            }
+
+            @Override
+            public User findById(Integer id) {
+                throw new UnsupportedOperationException();
+            }
+        }, new UserCache(100, Duration.ofMinutes(1)), 3);
+    }
+
+    static User user(int id, String city, String lat, String lng, String company) {
+        return new User(id, "User " + id, "user" + id, "user" + id + "@example.com",
+                new Address("Street " + id, "Apt. " + id, city, "0000" + id, new Geo(lat, lng)),
+                "555-000" + id, "user" + id + ".example.com", new Company(company, "Catch phrase", "bs"));
+    }
+}
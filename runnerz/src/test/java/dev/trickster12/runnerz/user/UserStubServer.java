@@ -0,0 +1,137 @@
+package dev.trickster12.runnerz.user;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+// Stand-in for the remote user directory on a free local port : GET /users and GET /users/{id} for ids 1..users,
+// answered after latency. Counts the requests it receives and the most it had in flight at once
+// Faults are injected with failWith (every request answered with that status) and slowEvery (every n-th request
+// takes extra time on top of latency)
+class UserStubServer implements AutoCloseable {
+
+    static {
+        // read once by the JDK server : without it, Nagle and delayed ACKs add ~40 ms to every call on a kept-alive
+        // connection and the latency measured is not the one injected
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final HttpServer server;
+    private final int users;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile Duration latency;
+    private volatile int failureStatus;
+    private volatile int slowEvery;
+    private volatile Duration slowExtra = Duration.ZERO;
+
+    UserStubServer(int users, Duration latency) throws IOException {
+        this.users = users;
+        this.latency = latency;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.server.createContext("/users", this::handle);
+        this.server.setExecutor(Executors.newCachedThreadPool());
+        this.server.start();
+    }
+
+    String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+    }
+
+    int requests() {
+        return requests.get();
+    }
+
+    int maxInFlight() {
+        return maxInFlight.get();
+    }
+
+    void latency(Duration latency) {
+        this.latency = latency;
+    }
+
+    // 0 to answer normally again
+
+    void failWith(int status) {
+        this.failureStatus = status;
+    }
+
+    // 0 to stop slowing requests down
+
+    void slowEvery(int every, Duration extra) {
+        this.slowExtra = extra;
+        this.slowEvery = every;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int request = requests.incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        respond(exchange, request);
+    }
+
+    private void respond(HttpExchange exchange, int request) throws IOException {
+        int every = slowEvery;
+        long sleep = latency.toMillis() + (every > 0 && request % every == 0 ? slowExtra.toMillis() : 0);
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // no longer in flight once the answer is on its way : the client may call again before it is fully written
+        inFlight.decrementAndGet();
+        if (failureStatus != 0) {
+            exchange.sendResponseHeaders(failureStatus, -1);
+            exchange.close();
+            return;
+        }
+        String path = exchange.getRequestURI().getPath();
+        String body;
+        if (path.equals("/users") || path.equals("/users/")) {
+            body = IntStream.rangeClosed(1, users).mapToObj(UserStubServer::json).collect(Collectors.joining(",", "[", "]"));
+        } else {
+            int id;
+            try {
+                id = Integer.parseInt(path.substring("/users/".length()));
+            } catch (NumberFormatException e) {
+                id = -1;
+            }
+            body = id >= 1 && id <= users ? json(id) : null;
+        }
+        try (OutputStream out = exchange.getResponseBody()) {
+            if (body == null) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    static String json(int id) {
+        return """
+                {"id": %d, "name": "User %d", "username": "user%d", "email": "user%d@example.com",
+                 "address": {"street": "Street %d", "suite": "Apt. %d", "city": "City %d", "zipcode": "%05d",
+                             "geo": {"lat": "%.4f", "lng": "%.4f"}},
+                 "phone": "555-%04d", "website": "user%d.example.com",
+                 "company": {"name": "Company %d", "catchPhrase": "Catch phrase", "bs": "harness e-markets"}}
+                """.formatted(id, id, id, id, id, id, id % 50, id, (id % 180) - 90.0 + 0.5, (id % 360) - 180.0 + 0.25,
+                id % 10_000, id, id % 20);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
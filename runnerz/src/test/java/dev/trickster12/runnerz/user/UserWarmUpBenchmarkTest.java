@@ -0,0 +1,52 @@
+package dev.trickster12.runnerz.user;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.support.RestClientAdapter;
+import org.springframework.web.service.invoker.HttpServiceProxyFactory;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Time startup spends on the user directory : the four blocking calls of the former CommandLineRunners against
+// UserWarmUp.start, with a stub directory answering every request after LATENCY
+// Not part of the normal build, run it with : ./mvnw test -Dtest=UserWarmUpBenchmarkTest -Dbenchmark=true
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+public class UserWarmUpBenchmarkTest {
+
+    private static final Duration LATENCY = Duration.ofMillis(500);
+
+    @Test
+    void startupTime() throws Exception {
+        try (UserStubServer server = new UserStubServer(10, LATENCY)) {
+            UserHttpClient httpClient = HttpServiceProxyFactory
+                    .builderFor(RestClientAdapter.create(RestClient.create(server.url()))).build()
+                    .createClient(UserHttpClient.class);
+            UserRestClient restClient = new UserRestClient(RestClient.builder(), server.url());
+
+            long start = System.nanoTime();
+            httpClient.findAll();
+            httpClient.findById(2);
+            restClient.findAll();
+            restClient.findById(2);
+            long blocking = System.nanoTime() - start;
+
+            UserDirectory directory = new UserDirectory(httpClient, new UserCache(100, Duration.ofMinutes(1)), 3);
+            UserWarmUp warmUp = new UserWarmUp(directory, new UserSnapshots(directory), true, Duration.ofSeconds(10));
+            start = System.nanoTime();
+            var done = warmUp.start();
+            long returned = System.nanoTime() - start;
+            UserWarmUp.Status status = done.get();
+            long warm = System.nanoTime() - start;
+            warmUp.destroy();
+
+            assertEquals(UserWarmUp.State.READY, status.state());
+            System.out.printf("remote latency %d ms%n", LATENCY.toMillis());
+            System.out.printf("blocking runners : startup delayed by %6.1f ms%n", blocking / 1e6);
+            System.out.printf("UserWarmUp       : startup delayed by %6.1f ms, cache warm after %6.1f ms%n",
+                    returned / 1e6, warm / 1e6);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package dev.trickster12.runnerz.user;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UserWarmUpTest {
+
+    @Test
+    void shouldFillTheCacheInTheBackground() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        UserCache cache = new UserCache(100, Duration.ofMinutes(1));
+        UserSnapshots snapshots = new UserSnapshots(null);
+        UserWarmUp warmUp = new UserWarmUp(directory(() -> {
+            await(release);
+            return List.of(user(1), user(2));
+        }, cache), snapshots, true, Duration.ofSeconds(10));
+
+        // start does not wait for the remote directory
+        CompletableFuture<UserWarmUp.Status> done = warmUp.start();
+        assertFalse(done.isDone());
+        assertEquals(UserWarmUp.State.WARMING, warmUp.status().state());
+
+        release.countDown();
+        UserWarmUp.Status status = done.get();
+        assertEquals(UserWarmUp.State.READY, status.state());
+        assertEquals(2, status.users());
+        assertEquals(status, warmUp.status());
+        assertTrue(cache.get(2).isPresent());
+        assertEquals(2, snapshots.current().size());
+        warmUp.destroy();
+    }
+
+    @Test
+    void shouldGiveUpAfterTheTimeout() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        UserCache cache = new UserCache(100, Duration.ofMinutes(1));
+        UserSnapshots snapshots = new UserSnapshots(null);
+        UserWarmUp warmUp = new UserWarmUp(directory(() -> {
+            await(release);
+            return List.of(user(1));
+        }, cache), snapshots, true, Duration.ofMillis(100));
+
+        assertEquals(UserWarmUp.State.TIMED_OUT, warmUp.start().get().state());
+        assertEquals(0, cache.size());
+
+        // the slow fetch lands after all : the cache is warm and so is the status
+        release.countDown();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (warmUp.status().state() != UserWarmUp.State.READY && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(UserWarmUp.State.READY, warmUp.status().state());
+        assertEquals(1, warmUp.status().users());
+        assertTrue(cache.get(1).isPresent());
+        assertEquals(1, snapshots.current().size());
+        warmUp.destroy();
+    }
+
+    @Test
+    void shouldReportAFailedFetch() throws Exception {
+        UserWarmUp warmUp = new UserWarmUp(directory(() -> {
+            throw new IllegalStateException("directory down");
+        }, new UserCache(100, Duration.ofMinutes(1))), new UserSnapshots(null), true, Duration.ofSeconds(10));
+
+        UserWarmUp.Status status = warmUp.start().get();
+        assertEquals(UserWarmUp.State.FAILED, status.state());
+        assertTrue(status.error().contains("directory down"));
+        warmUp.destroy();
+    }
+
+    @Test
+    void shouldDoNothingWhenDisabled() throws Exception {
+        UserWarmUp warmUp = new UserWarmUp(directory(() -> {
+            throw new AssertionError("no fetch expected");
+        }, new UserCache(100, Duration.ofMinutes(1))), new UserSnapshots(null), false, Duration.ofSeconds(10));
+
+        assertEquals(UserWarmUp.State.DISABLED, warmUp.start().get().state());
+        warmUp.destroy();
+    }
+
+    static User user(int id) {
+        return new User(id, "User " + id, "user" + id, null, null, null, null, null);
+    }
+
+    // the warm-up fetches through UserDirectory, in front of a fake remote directory
+
+    private static UserDirectory directory(Supplier<List<User>> findAll, UserCache cache) {
+        return new UserDirectory(new UserHttpClient() {
+            @Override
+            public List<User> findAll() {
+                return findAll.get();
+            }
+
+            @Override
+            public User findById(Integer id) {
+                throw new UnsupportedOperationException();
+            }
+        }, cache, 3);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}